@@ -0,0 +1,103 @@
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 媒体循环的稳态内存分配检查：在同一进程中建立几路带音频的通话，预热后统计所有媒体线程
+ * （采集、发送、接收、播放，线程名以 media- 开头）在测量期间分配的字节数，折算到每帧必须为0
+ *
+ * 两端都使用按讲话/停顿交替的合成输入和空输出，讲话段走完编码、RTP、接收、抖动缓冲、解码、
+ * 漂移补偿和播放的完整路径，停顿段走静音抑制、舒适噪声和抖动缓冲的静音处理；
+ * 预热期内的分配（类加载，讲话/停顿切换引起的JIT反优化和重新编译，反优化时会重新分配被标量替换的对象）不计入
+ * 循环中任何一处新增的分配（包括JDK内部的，例如套接字适配器为对方地址分配的 InetSocketAddress）
+ * 都会使检查失败，并打印各线程的分配量便于定位
+ *
+ * 媒体线程必须是平台线程（默认，见 CallExecutors），虚拟线程不支持按线程统计分配量
+ *
+ * 用法：java AllocationCheck [通话数，默认4] [测量秒数，默认20] [编解码器，默认PCMU] [fec]
+ */
+public class AllocationCheck {
+    private static final int WARMUP_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String codec = args.length > 2 ? args[2].toUpperCase() : G711Codec.PCMU;
+        boolean fec = args.length > 3 && "fec".equalsIgnoreCase(args[3]);
+
+        AudioDevices devices = AudioDevices.of(
+                session -> new NoiseSource(4000, AudioDevices.NOISE_TALK_MILLIS, AudioDevices.NOISE_PAUSE_MILLIS),
+                session -> new NullSink());
+        CallManager server = new CallManager(codec, AudioThread.DEFAULT_FRAME_MILLIS, null);
+        CallManager client = new CallManager(codec, AudioThread.DEFAULT_FRAME_MILLIS, null);
+        for (CallManager manager : new CallManager[]{server, client}) {
+            manager.setLocalAudio(true);
+            manager.setAudioDevices(devices);
+            manager.setFec(fec);
+        }
+        server.listen(0);
+
+        System.out.printf("分配检查: %d路通话 预热%d秒 测量%d秒 %s%s%n", calls, WARMUP_SECONDS, seconds, codec,
+                fec ? " FEC" : "");
+        List<CallSession> sessions = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            sessions.add(client.dial("127.0.0.1", server.getListenPort()));
+        }
+        Thread.sleep(WARMUP_SECONDS * 1000L);
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<ThreadInfo> media = new ArrayList<>();
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith("media-")) {
+                media.add(info);
+            }
+        }
+        long[] before = new long[media.size()];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = threads.getThreadAllocatedBytes(media.get(i).getThreadId());
+        }
+        long framesBefore = frames(sessions);
+        Thread.sleep(seconds * 1000L);
+        long frames = frames(sessions) - framesBefore;
+
+        long total = 0;
+        for (int i = 0; i < before.length; i++) {
+            long allocated = threads.getThreadAllocatedBytes(media.get(i).getThreadId()) - before[i];
+            if (allocated > 0) {
+                System.out.printf("  %s 分配%dB%n", media.get(i).getThreadName(), allocated);
+                total += allocated;
+            }
+        }
+        boolean active = true;
+        for (CallSession session : sessions) {
+            active &= session.getState() == CallSession.State.ACTIVE;
+        }
+        client.close();
+        server.close();
+
+        double perFrame = frames == 0 ? Double.NaN : (double) total / frames;
+        System.out.printf("媒体线程=%d 收发帧=%d 分配=%dB 每帧=%.2fB%n", media.size(), frames, total, perFrame);
+        boolean ok = active && !media.isEmpty() && frames > 0 && total == 0;
+        System.out.println(ok ? "通过" : active ? "失败" : "失败: 有通话在测量期间结束");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 所有通话两个方向累计收发的数据包数
+     */
+    private static long frames(List<CallSession> sessions) {
+        long total = 0;
+        for (CallSession session : sessions) {
+            CallMetrics m = session.getMetrics();
+            if (m != null) {
+                total += m.getPacketsSent() + m.getPacketsReceived();
+            }
+        }
+        return total;
+    }
+}
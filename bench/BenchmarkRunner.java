@@ -0,0 +1,92 @@
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+/**
+ * 简单的基准测试运行器
+ * 预热后分多轮测量，输出每次操作的平均耗时（纳秒）、轮间误差和每次操作的分配字节数
+ *
+ * 被测操作返回一个int并累加到结果中，防止JIT把没有副作用的计算整体消除
+ */
+public class BenchmarkRunner {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final long ROUND_NANOS = 200_000_000L;
+    private static final int BATCH = 64;
+
+    private final String filter;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private volatile int sink;
+    private boolean headerPrinted = false;
+
+    /**
+     * 构造函数
+     * @param filter 只运行名称包含该字符串的测试，null或空表示全部运行
+     */
+    public BenchmarkRunner(String filter) {
+        this.filter = filter == null ? "" : filter;
+    }
+
+    /**
+     * 运行一个基准测试并打印结果
+     * @param name 测试名称
+     * @param op 被测操作
+     */
+    public void run(String name, IntSupplier op) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        if (!headerPrinted) {
+            System.out.printf("%-40s %12s %10s %12s%n", "Benchmark", "ns/op", "error", "B/op");
+            headerPrinted = true;
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round(op);
+        }
+
+        double[] results = new double[MEASURE_ROUNDS];
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long totalOps = 0;
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long[] round = round(op);
+            results[i] = round[0] / (double) round[1];
+            totalOps += round[1];
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        double mean = 0;
+        for (double r : results) {
+            mean += r;
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (double r : results) {
+            variance += (r - mean) * (r - mean);
+        }
+        double error = Math.sqrt(variance / (results.length - 1));
+
+        System.out.printf("%-40s %12.1f %10.1f %12.2f%n", name, mean, error, allocated / (double) totalOps);
+    }
+
+    /**
+     * 运行一轮，返回 {耗时纳秒, 操作次数}
+     */
+    private long[] round(IntSupplier op) {
+        int acc = 0;
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + ROUND_NANOS;
+        long now;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                acc += op.getAsInt();
+            }
+            ops += BATCH;
+            now = System.nanoTime();
+        } while (now < end);
+        sink += acc;
+        return new long[]{now - start, ops};
+    }
+}
@@ -0,0 +1,159 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 音频热路径基准测试
+ * 覆盖语音活动检测、RTP封装/解析、编解码、阶段间环形缓冲区、抖动缓冲区和混音，按 10/20/30 毫秒帧分别测量
+ * 所有测试的一次操作都是处理一帧，因此 ns/op 即每帧耗时，B/op 即每帧分配的字节数
+ *
+ * 用法：mvn -Pbench verify [-Dbench.filter=名称片段]
+ *   或：java -cp target/classes Benchmarks [名称片段]
+ */
+public class Benchmarks {
+    public static void main(String[] args) {
+        BenchmarkRunner runner = new BenchmarkRunner(args.length > 0 ? args[0] : null);
+        for (int frameMillis : AudioThread.FRAME_MILLIS_OPTIONS) {
+            benchVad(runner, frameMillis);
+            benchFraming(runner, frameMillis);
+            for (String codecName : Codecs.supported()) {
+                benchCodec(runner, codecName, frameMillis);
+            }
+            benchRing(runner, frameMillis);
+            benchFramePool(runner, frameMillis);
+            benchJitterBuffer(runner, frameMillis);
+            benchMixer(runner, frameMillis, 5);
+            benchMixer(runner, frameMillis, 50);
+            benchMixerFrame(runner, frameMillis, 5);
+        }
+    }
+
+    private static void benchVad(BenchmarkRunner runner, int frameMillis) {
+        byte[] pcm = randomPcm(8000, frameMillis);
+        VoiceActivityDetector vad = new VoiceActivityDetector(frameMillis);
+        runner.run("vad/" + frameMillis + "ms", () -> vad.process(pcm, 0, pcm.length) ? 1 : 0);
+    }
+
+    private static void benchFraming(BenchmarkRunner runner, int frameMillis) {
+        int payload = 8000 * frameMillis / 1000; // G.711负载长度
+        byte[] packet = new byte[RtpHeader.SIZE + payload];
+        RtpHeader header = new RtpHeader();
+        int[] seq = {0};
+        runner.run("rtp.writeParse/" + frameMillis + "ms", () -> {
+            RtpHeader.write(packet, 0, false, 0, seq[0]++ & 0xFFFF, seq[0] * 160L, 0x12345678);
+            header.parse(packet, 0, packet.length);
+            return header.getSequence() + header.getPayloadLength();
+        });
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(packet.length);
+        direct.put(packet).flip();
+        runner.run("rtp.parseDirect/" + frameMillis + "ms", () -> {
+            header.parse(direct);
+            return header.getPayloadLength();
+        });
+    }
+
+    private static void benchCodec(BenchmarkRunner runner, String codecName, int frameMillis) {
+        Codec encoder = Codecs.create(codecName);
+        Codec decoder = Codecs.create(codecName);
+        byte[] pcm = randomPcm(encoder.sampleRate(), frameMillis);
+        byte[] encoded = new byte[pcm.length];
+        byte[] decoded = new byte[pcm.length];
+        int length = encoder.encode(pcm, 0, pcm.length, encoded, 0);
+
+        runner.run("codec.encode/" + codecName + "/" + frameMillis + "ms",
+                () -> encoder.encode(pcm, 0, pcm.length, encoded, 0));
+        runner.run("codec.decode/" + codecName + "/" + frameMillis + "ms",
+                () -> decoder.decode(encoded, 0, length, decoded, 0));
+    }
+
+    private static void benchRing(BenchmarkRunner runner, int frameMillis) {
+        byte[] pcm = randomPcm(8000, frameMillis);
+        FrameRing ring = new FrameRing(16, pcm.length);
+        // 每次操作由生产者写入一帧、消费者取出一帧（同一线程，测量不含线程交接的开销）
+        runner.run("ring.publishPeek/" + frameMillis + "ms", () -> {
+            byte[] slot = ring.claim();
+            System.arraycopy(pcm, 0, slot, 0, pcm.length);
+            ring.publish(pcm.length, 0);
+            byte[] data = ring.peek();
+            int length = ring.length();
+            ring.release();
+            return data[0] + length;
+        });
+    }
+
+    private static void benchFramePool(BenchmarkRunner runner, int frameMillis) {
+        FramePool pool = new FramePool(64, 2048);
+        FrameQueue queue = new FrameQueue(32);
+        int payload = 8000 * frameMillis / 1000;
+        // 每次操作模拟反应器收到一个包并转交一个处理方：取出、持有、入队、出队、两次释放
+        runner.run("framePool.handoff/" + frameMillis + "ms", () -> {
+            Frame frame = pool.acquire();
+            frame.buffer().limit(RtpHeader.SIZE + payload);
+            queue.offer(frame.retain());
+            frame.release();
+            Frame received = queue.poll();
+            int length = received.buffer().remaining();
+            received.release();
+            return length;
+        });
+    }
+
+    private static void benchJitterBuffer(BenchmarkRunner runner, int frameMillis) {
+        byte[] pcm = randomPcm(8000, frameMillis);
+        byte[] out = new byte[pcm.length];
+        int samples = pcm.length / 2;
+        JitterBuffer buffer = new JitterBuffer(pcm.length, frameMillis, 8000);
+        long frameNanos = frameMillis * 1_000_000L;
+        int[] seq = {0};
+        // 每次操作写入一帧并取出一帧；每8帧交换一次顺序模拟乱序到达
+        runner.run("jitter.putPoll/" + frameMillis + "ms", () -> {
+            int s = seq[0]++;
+            int wire = (s & 7) == 6 ? s + 1 : (s & 7) == 7 ? s - 1 : s;
+            buffer.put(wire & 0xFFFF, (long) wire * samples, pcm, 0, pcm.length, s * frameNanos);
+            return buffer.poll(out);
+        });
+    }
+
+    private static void benchMixer(BenchmarkRunner runner, int frameMillis, int participants) {
+        int samples = 8000 * frameMillis / 1000;
+        short[][] inputs = new short[participants][samples];
+        short[][] outputs = new short[participants][samples];
+        int[] sum = new int[samples];
+        Random random = new Random(42);
+        for (short[] input : inputs) {
+            for (int i = 0; i < samples; i++) {
+                input[i] = (short) random.nextInt(1 << 16);
+            }
+        }
+        runner.run("mixer.mix/" + participants + "p/" + frameMillis + "ms", () -> {
+            ConferenceMixer.mix(inputs, participants, samples, sum, outputs);
+            return outputs[0][0];
+        });
+    }
+
+    private static void benchMixerFrame(BenchmarkRunner runner, int frameMillis, int participants) {
+        ConferenceMixer mixer = new ConferenceMixer(8000, frameMillis);
+        for (int i = 0; i < participants; i++) {
+            mixer.join(L16Codec.NAME);
+        }
+        // 参与者未绑定媒体流，不包含编码和发送
+        runner.run("mixer.frame/" + participants + "p/" + frameMillis + "ms", () -> {
+            mixer.mixFrame();
+            return 0;
+        });
+    }
+
+    /**
+     * 生成一帧随机的16位大端序PCM（中等音量的噪声）
+     */
+    private static byte[] randomPcm(int sampleRate, int frameMillis) {
+        byte[] pcm = new byte[sampleRate * frameMillis / 1000 * 2];
+        Random random = new Random(frameMillis);
+        for (int i = 0; i < pcm.length; i += 2) {
+            int sample = (int) (random.nextGaussian() * 3000);
+            pcm[i] = (byte) (sample >> 8);
+            pcm[i + 1] = (byte) sample;
+        }
+        return pcm;
+    }
+}
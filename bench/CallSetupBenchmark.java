@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 呼叫建立基准测试：比较文本信令（每路通话一条TCP连接）和二进制信令（持久连接、多路复用）
+ *
+ * 用法：java CallSetupBenchmark [通话数，默认2000] [text|binary|both，默认both]
+ * 顺序拨号：逐个拨号并等待接听，输出建立时延的p50/p99；
+ * 流水线拨号：连续发出全部拨号后再等待应答，输出每秒建立的通话数（文本信令由信令执行器并发拨号）
+ *
+ * 两端都不开音频，测量的只是信令往返、媒体端口分配和会话创建；每轮结束后挂断所有通话
+ */
+public class CallSetupBenchmark {
+    private static final int WARMUP_CALLS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String mode = args.length > 1 ? args[1] : "both";
+
+        CallManager server = new CallManager(G711Codec.PCMU, AudioThread.DEFAULT_FRAME_MILLIS, null);
+        server.listen(0);
+        int port = server.getListenPort();
+
+        System.out.printf("%-8s %8s %10s %10s %14s%n", "信令", "通话数", "p50(ms)", "p99(ms)", "流水线(路/秒)");
+        for (String signaling : new String[]{"text", "binary"}) {
+            if (!"both".equals(mode) && !signaling.equals(mode)) {
+                continue;
+            }
+            CallManager client = new CallManager(G711Codec.PCMU, AudioThread.DEFAULT_FRAME_MILLIS, null);
+            client.setBinarySignaling("binary".equals(signaling));
+
+            sequential(client, port, WARMUP_CALLS);
+            long[] latencies = sequential(client, port, calls);
+            pipelined(client, port, WARMUP_CALLS);
+            double rate = pipelined(client, port, calls);
+
+            Arrays.sort(latencies);
+            System.out.printf("%-8s %8d %10.3f %10.3f %14.0f%n", signaling, calls,
+                    latencies[calls / 2] / 1e6, latencies[Math.min(calls - 1, calls * 99 / 100)] / 1e6, rate);
+            client.close();
+        }
+        server.close();
+    }
+
+    /**
+     * 逐个拨号，返回每路通话的建立时延（纳秒）
+     */
+    private static long[] sequential(CallManager client, int port, int calls) throws Exception {
+        long[] latencies = new long[calls];
+        List<CallSession> sessions = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            sessions.add(client.dial("127.0.0.1", port));
+            latencies[i] = System.nanoTime() - start;
+        }
+        hangup(sessions);
+        return latencies;
+    }
+
+    /**
+     * 连续发出全部拨号再等待应答，返回每秒建立的通话数
+     */
+    private static double pipelined(CallManager client, int port, int calls) throws Exception {
+        List<CompletableFuture<CallSession>> futures = new ArrayList<>(calls);
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            futures.add(client.dialAsync("127.0.0.1", port));
+        }
+        List<CallSession> sessions = new ArrayList<>(calls);
+        for (CompletableFuture<CallSession> future : futures) {
+            sessions.add(future.get());
+        }
+        long elapsed = System.nanoTime() - start;
+        hangup(sessions);
+        return calls / (elapsed / 1e9);
+    }
+
+    private static void hangup(List<CallSession> sessions) throws InterruptedException {
+        for (CallSession session : sessions) {
+            session.hangup();
+        }
+        // 等待服务端处理完挂断，下一轮不受积压影响
+        Thread.sleep(500);
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Random;
+
+/**
+ * 会议混音开销基准测试：参与者数量 × 帧时长
+ *
+ * 用法：java MixerBenchmark
+ * 输出每帧混音耗时（纳秒）以及占帧时间预算的百分比：
+ *   kernel - 只有N减自己的混音核心
+ *   frame  - 完整的一帧（抖动缓冲区取帧、格式转换、混音），不含编码和发送
+ */
+public class MixerBenchmark {
+    private static final int[] PARTICIPANTS = {2, 5, 10, 20, 50, 100};
+    private static final int SAMPLE_RATE = 8000;
+    private static final long WARMUP_NANOS = 300_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        System.out.printf("%-6s %-8s %14s %14s %10s%n", "帧(ms)", "参与者", "kernel(ns)", "frame(ns)", "预算占比");
+        for (int frameMillis : AudioThread.FRAME_MILLIS_OPTIONS) {
+            for (int count : PARTICIPANTS) {
+                double kernel = benchKernel(count, SAMPLE_RATE * frameMillis / 1000);
+                double frame = benchFrame(count, frameMillis);
+                System.out.printf("%-6d %-8d %14.0f %14.0f %9.3f%%%n",
+                        frameMillis, count, kernel, frame, frame / (frameMillis * 1e6) * 100);
+            }
+        }
+    }
+
+    /**
+     * 混音核心的每帧耗时
+     */
+    private static double benchKernel(int count, int samples) {
+        short[][] inputs = new short[count][samples];
+        short[][] outputs = new short[count][samples];
+        int[] sum = new int[samples];
+        Random random = new Random(42);
+        for (short[] input : inputs) {
+            for (int i = 0; i < samples; i++) {
+                input[i] = (short) random.nextInt(1 << 16);
+            }
+        }
+        Runnable task = () -> ConferenceMixer.mix(inputs, count, samples, sum, outputs);
+        run(task, WARMUP_NANOS);
+        return run(task, MEASURE_NANOS);
+    }
+
+    /**
+     * 完整一帧的耗时：参与者未绑定媒体流，因此不包含编码和发送
+     */
+    private static double benchFrame(int count, int frameMillis) {
+        ConferenceMixer mixer = new ConferenceMixer(SAMPLE_RATE, frameMillis);
+        for (int i = 0; i < count; i++) {
+            mixer.join(L16Codec.NAME);
+        }
+        Runnable task = mixer::mixFrame;
+        run(task, WARMUP_NANOS);
+        return run(task, MEASURE_NANOS);
+    }
+
+    /**
+     * 在给定时间内反复运行任务，返回每次的平均耗时（纳秒）
+     */
+    private static double run(Runnable task, long durationNanos) {
+        long iterations = 0;
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                task.run();
+            }
+            iterations += 100;
+            now = System.nanoTime();
+        } while (now < end);
+        return (now - start) / (double) iterations;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * 会议混音的分帧检查：参与者使用与会议不同的帧长（10/20/30毫秒，其中一路在通话中从20毫秒改为30毫秒，
+ * 与码率控制器的行为相同）时，混音线程取到的每路输入样本必须连续，既不截断也不重复
+ *
+ * 每路参与者发送一个L16编码的递增锯齿波，按模拟时钟准时到达（不依赖真实时间，结果可重复）；
+ * 预热期（预缓冲、抖动缓冲收缩到稳定深度时整帧丢弃）过后逐个样本检查是否与上一个样本相接，
+ * 出现任何不连续即以非零状态退出
+ *
+ * 用法：java MixerFramingCheck [秒数，默认20]
+ */
+public class MixerFramingCheck {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int ROOM_FRAME_MILLIS = 20;
+    private static final int RAMP_BASE = 1000;
+    private static final int RAMP_LENGTH = 20000;
+    private static final int WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) {
+        int seconds = Math.max(WARMUP_SECONDS + 1, args.length > 0 ? Integer.parseInt(args[0]) : 20);
+        int ticks = seconds * 1000 / ROOM_FRAME_MILLIS;
+
+        // 各路参与者的帧长；最后一路在中途改变帧长
+        int[] frameMillis = {10, 20, 30, 20};
+        int warmupTicks = WARMUP_SECONDS * 1000 / ROOM_FRAME_MILLIS;
+        int switchTick = warmupTicks + (ticks - warmupTicks) / 2;
+        int switchTo = 30;
+
+        ConferenceMixer mixer = new ConferenceMixer(SAMPLE_RATE, ROOM_FRAME_MILLIS);
+        FramePool pool = new FramePool(64, 2048);
+        Codec codec = Codecs.create(L16Codec.NAME);
+        RtpHeader header = new RtpHeader();
+        int count = frameMillis.length;
+        ConferenceMixer.Participant[] participants = new ConferenceMixer.Participant[count];
+        long[] nextSendNanos = new long[count];
+        long[] sentSamples = new long[count];
+        int[] seqs = new int[count];
+        for (int p = 0; p < count; p++) {
+            participants[p] = mixer.join(L16Codec.NAME);
+        }
+
+        int frameSamples = SAMPLE_RATE * ROOM_FRAME_MILLIS / 1000;
+        short[] input = new short[frameSamples];
+        byte[] scratch = new byte[AudioThread.maxFrameBytes(SAMPLE_RATE) + 2];
+        byte[] pcm = new byte[AudioThread.maxFrameBytes(SAMPLE_RATE)];
+        byte[] packet = new byte[RtpHeader.SIZE + pcm.length];
+
+        int[] last = new int[count];
+        long[] checked = new long[count];
+        long[] breaks = new long[count];
+        for (int tick = 0; tick < ticks; tick++) {
+            long now = tick * ROOM_FRAME_MILLIS * 1_000_000L;
+            for (int p = 0; p < count; p++) {
+                int millis = p == count - 1 && tick >= switchTick ? switchTo : frameMillis[p];
+                // 发出所有到期的包，到达时间比发送晚1毫秒
+                while (nextSendNanos[p] + 1_000_000L <= now) {
+                    int samples = SAMPLE_RATE * millis / 1000;
+                    for (int i = 0; i < samples; i++) {
+                        int value = RAMP_BASE + (int) ((sentSamples[p] + i) % RAMP_LENGTH);
+                        pcm[i * 2] = (byte) (value >> 8);
+                        pcm[i * 2 + 1] = (byte) value;
+                    }
+                    int payload = codec.encode(pcm, 0, samples * 2, packet, RtpHeader.SIZE);
+                    RtpHeader.write(packet, 0, false, codec.payloadType(), seqs[p]++ & 0xFFFF,
+                            sentSamples[p], 0x1000 + p);
+                    Frame frame = pool.acquire();
+                    frame.buffer().clear();
+                    frame.buffer().put(packet, 0, RtpHeader.SIZE + payload).flip();
+                    frame.setTime(nextSendNanos[p] + 1_000_000L);
+                    header.parse(frame.buffer());
+                    participants[p].onFrame(null, frame, header);
+                    frame.release();
+                    sentSamples[p] += samples;
+                    nextSendNanos[p] += millis * 1_000_000L;
+                }
+
+                participants[p].drain();
+                participants[p].nextFrame(scratch, input, frameSamples, now);
+                for (int i = 0; i < frameSamples; i++) {
+                    int value = input[i];
+                    if (tick >= warmupTicks) {
+                        int expected = last[p] + 1 == RAMP_BASE + RAMP_LENGTH ? RAMP_BASE : last[p] + 1;
+                        if (value != expected) {
+                            breaks[p]++;
+                        }
+                        checked[p]++;
+                    }
+                    last[p] = value;
+                }
+            }
+        }
+
+        boolean ok = true;
+        for (int p = 0; p < count; p++) {
+            String framing = p == count - 1 ? frameMillis[p] + "→" + switchTo + "ms" : frameMillis[p] + "ms";
+            System.out.printf("参与者%d 帧长=%s 检查样本=%d 不连续=%d %s%n", p, framing, checked[p], breaks[p],
+                    participants[p]);
+            ok &= breaks[p] == 0 && checked[p] > 0;
+        }
+        System.out.println(ok ? "通过" : "失败");
+        if (pool.inUse() != 0) {
+            System.out.println("帧池泄漏: " + pool.inUse());
+            ok = false;
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
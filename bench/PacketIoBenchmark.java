@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 媒体包收发基准测试：比较每路通话独立套接字和线程的模型与批量收发模型的每核包速率
+ *
+ * 用法：java PacketIoBenchmark [通话数，默认500] [秒数，默认10] [刻长微秒，默认2000] [socket|batch|both，默认both]
+ *
+ * socket：与 AudioThread 相同，每路通话一对套接字，发送线程每20毫秒睡眠唤醒一次发送一个包，接收线程阻塞在 receive 上
+ * batch：两个共享端口（MediaReactor 的一个事件循环接收，按SSRC分流），BatchSender 按刻把所有通话到期的包集中发出
+ *
+ * 两种模型都在本机回环上收发，每路通话每秒50个172字节的包（G.711 20毫秒帧），各路通话的发送时刻均匀错开。
+ * 输出收到的包速率、进程CPU占用和每核每秒能处理的包数（收到的包数 / CPU秒数，收发两端都算在内）
+ */
+public class PacketIoBenchmark {
+    private static final int PACKET_SIZE = RtpHeader.SIZE + 160;
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int tickMicros = args.length > 2 ? Integer.parseInt(args[2]) : BatchSender.DEFAULT_TICK_MICROS;
+        String mode = args.length > 3 ? args[3] : "both";
+
+        System.out.printf("%-8s %6s %10s %10s %8s %8s %12s%n",
+                "模型", "通话数", "期望包/秒", "收到包/秒", "线程", "CPU", "每核包/秒");
+        if (!"batch".equals(mode)) {
+            perSocket(calls, seconds);
+        }
+        if (!"socket".equals(mode)) {
+            batched(calls, seconds, tickMicros);
+        }
+    }
+
+    /**
+     * 每路通话独立套接字和收发线程
+     */
+    private static void perSocket(int calls, int seconds) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        LongAdder received = new LongAdder();
+        List<DatagramSocket> sockets = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            DatagramSocket server = new DatagramSocket(0, loopback);
+            DatagramSocket client = new DatagramSocket(0, loopback);
+            sockets.add(server);
+            sockets.add(client);
+            CallExecutors.media().execute(() -> {
+                DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+                try {
+                    while (true) {
+                        server.receive(packet);
+                        received.increment();
+                    }
+                } catch (IOException ex) {
+                    // 套接字关闭，结束
+                }
+            });
+            byte[] data = packet(i);
+            InetSocketAddress target = new InetSocketAddress(loopback, server.getLocalPort());
+            long first = start + PERIOD_NANOS * i / calls;
+            CallExecutors.media().execute(() -> {
+                DatagramPacket packet = new DatagramPacket(data, data.length, target);
+                long due = first;
+                try {
+                    while (!client.isClosed()) {
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                            continue;
+                        }
+                        client.send(packet);
+                        due += PERIOD_NANOS;
+                    }
+                } catch (IOException ex) {
+                    // 套接字关闭，结束
+                }
+            });
+        }
+        measure("socket", calls, seconds, received);
+        for (DatagramSocket socket : sockets) {
+            socket.close();
+        }
+        Thread.sleep(200);
+    }
+
+    /**
+     * 共享端口 + 事件循环接收 + 按刻批量发送
+     */
+    private static void batched(int calls, int seconds, int tickMicros) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        LongAdder received = new LongAdder();
+        try (MediaReactor reactor = new MediaReactor(1); BatchSender sender = new BatchSender(tickMicros)) {
+            MediaReactor.SharedPort server = reactor.openSharedPort(new InetSocketAddress(loopback, 0));
+            MediaReactor.SharedPort client = reactor.openSharedPort(new InetSocketAddress(loopback, 0));
+            InetSocketAddress target = new InetSocketAddress(loopback, server.getLocalPort());
+            MediaStreamHandler count = (stream, packet, header) -> received.increment();
+            for (int i = 0; i < calls; i++) {
+                server.addStream(i, null, count);
+                MediaStream stream = client.addStream(~i, target, count);
+                byte[] data = packet(i);
+                sender.schedule(stream, buffer -> {
+                    buffer.put(data);
+                    return true;
+                }, PERIOD_NANOS, PERIOD_NANOS * i / calls);
+            }
+            measure("batch", calls, seconds, received);
+            System.out.println("  " + sender);
+        }
+        Thread.sleep(200);
+    }
+
+    private static void measure(String name, int calls, int seconds, LongAdder received) throws InterruptedException {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        Thread.sleep(1000); // 预热
+        long packetsStart = received.sum();
+        long cpuStart = processCpuNanos(os);
+        long wallStart = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long packets = received.sum() - packetsStart;
+        long cpu = processCpuNanos(os) - cpuStart;
+        double wall = (System.nanoTime() - wallStart) / 1e9;
+        System.out.printf("%-8s %6d %10d %10.0f %8d %7.1f%% %12.0f%n", name, calls, calls * 50, packets / wall,
+                ManagementFactory.getThreadMXBean().getThreadCount(), cpu / 1e7 / wall,
+                cpu <= 0 ? 0.0 : packets / (cpu / 1e9));
+    }
+
+    private static byte[] packet(int ssrc) {
+        byte[] data = new byte[PACKET_SIZE];
+        RtpHeader.write(data, 0, false, 0, 0, 0, ssrc);
+        return data;
+    }
+
+    /**
+     * 进程累计CPU时间（纳秒），平台不支持时返回-1
+     */
+    private static long processCpuNanos(OperatingSystemMXBean os) {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 媒体端口分配器的正确性检查，任何一项失败即以非零状态退出
+ *
+ * - 并发：多个线程同时反复分配和归还（每个线程同时持有若干端口），同一端口不会同时分给两方，
+ *   范围内没有其他程序时也不会出现绑定失败（位图出错会表现为重复绑定），结束时全部归还
+ * - 用尽：范围内有一个端口被其他程序占用时跳过它，其余端口分完后报告用尽，占用方释放后可以再分配
+ * - 反应器关闭通道后归还：MediaReactor 关闭时会关闭接管的通道，按分配时记下的端口归还仍然有效
+ * - 整字跳过：范围跨越几个64位字且最后一个字不满时，从随机位置开始能分出每个端口各一次，
+ *   归还任意一个（字的首尾、不满的最后一个字）后下一次分配正好找到它
+ *
+ * 用法：java PortAllocatorCheck [线程数，默认8] [每线程分配次数，默认2000]
+ * 使用 20000-32767 之间当前空闲的端口
+ */
+public class PortAllocatorCheck {
+    private static final int SEARCH_FROM = 20000;
+    private static final int SEARCH_TO = 32767;
+    // 并发检查中每个线程最多同时持有的端口数
+    private static final int HELD_PER_THREAD = 8;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        boolean ok = true;
+        ok &= report("并发分配", concurrent(threads, iterations));
+        ok &= report("用尽与被占用的端口", exhaustion());
+        ok &= report("反应器关闭通道后归还", releaseAfterReactor());
+        ok &= report("整字跳过", wordSkip());
+        System.out.println(ok ? "通过" : "失败");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean report(String name, String failure) {
+        System.out.println(name + ": " + (failure == null ? "通过" : "失败 - " + failure));
+        return failure == null;
+    }
+
+    /**
+     * 多个线程并发分配和归还
+     * @return 失败原因，通过时返回null
+     */
+    private static String concurrent(int threads, int iterations) throws Exception {
+        int capacity = 256;
+        int base = freeRange(capacity);
+        MediaPortAllocator ports = new MediaPortAllocator(base, base + capacity - 1);
+        AtomicIntegerArray held = new AtomicIntegerArray(capacity);
+        AtomicLong duplicates = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                List<DatagramSocket> mine = new ArrayList<>();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        DatagramSocket socket = ports.open();
+                        if (!held.compareAndSet(socket.getLocalPort() - base, 0, 1)) {
+                            duplicates.incrementAndGet();
+                        }
+                        mine.add(socket);
+                        if (mine.size() >= HELD_PER_THREAD || random.nextBoolean()) {
+                            release(ports, held, base, mine.remove(random.nextInt(mine.size())));
+                        }
+                    }
+                } catch (Exception ex) {
+                    errors.incrementAndGet();
+                    System.err.println("分配失败: " + ex.getMessage());
+                } finally {
+                    for (DatagramSocket socket : mine) {
+                        release(ports, held, base, socket);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("  %d线程 x %d次 范围%d-%d 重复=%d 绑定失败=%d 错误=%d 未归还=%d%n", threads, iterations,
+                base, base + capacity - 1, duplicates.get(), ports.getBindFailures(), errors.get(), ports.getInUse());
+        if (duplicates.get() > 0) {
+            return "同一端口同时分给了两方";
+        }
+        if (errors.get() > 0 || ports.getBindFailures() > 0) {
+            return "范围内没有其他程序，却出现了分配或绑定失败";
+        }
+        return ports.getInUse() == 0 ? null : "结束时仍有端口未归还";
+    }
+
+    private static void release(MediaPortAllocator ports, AtomicIntegerArray held, int base, DatagramSocket socket) {
+        int port = socket.getLocalPort();
+        // 先清除持有标记再归还，归还后其他线程可能立即分到这个端口
+        held.set(port - base, 0);
+        ports.close(socket, port);
+    }
+
+    /**
+     * 范围内一个端口被其他程序占用
+     * @return 失败原因，通过时返回null
+     */
+    private static String exhaustion() throws Exception {
+        int base = freeRange(4);
+        MediaPortAllocator ports = new MediaPortAllocator(base, base + 3);
+        int foreignPort = base + 1;
+        List<DatagramSocket> sockets = new ArrayList<>();
+        try (DatagramSocket foreign = new DatagramSocket(foreignPort)) {
+            for (int i = 0; i < 3; i++) {
+                DatagramSocket socket = ports.open();
+                sockets.add(socket);
+                if (socket.getLocalPort() == foreignPort) {
+                    return "分到了被其他程序占用的端口";
+                }
+            }
+            try {
+                sockets.add(ports.open());
+                return "范围已满仍然分配成功";
+            } catch (IOException expected) {
+                // 已用尽
+            }
+            try {
+                sockets.add(ports.open(foreignPort));
+                return "指定被占用的端口仍然绑定成功";
+            } catch (BindException expected) {
+                // 被占用
+            }
+            System.out.printf("  范围%d-%d 占用%d 已分配=%d 绑定失败=%d%n", base, base + 3, foreign.getLocalPort(),
+                    ports.getInUse(), ports.getBindFailures());
+            if (ports.getInUse() != 3) {
+                return "绑定失败的端口没有归还（已分配=" + ports.getInUse() + "）";
+            }
+            if (ports.getBindFailures() == 0) {
+                return "没有记录绑定失败";
+            }
+        }
+        // 占用方释放后可以再分配
+        DatagramSocket socket = ports.open();
+        sockets.add(socket);
+        if (socket.getLocalPort() != foreignPort) {
+            return "占用方释放后没有分到该端口";
+        }
+        for (DatagramSocket s : sockets) {
+            ports.close(s);
+        }
+        return ports.getInUse() == 0 ? null : "结束时仍有端口未归还";
+    }
+
+    /**
+     * 通道交给 MediaReactor 后由反应器关闭
+     * @return 失败原因，通过时返回null
+     */
+    private static String releaseAfterReactor() throws Exception {
+        int base = freeRange(2);
+        MediaPortAllocator ports = new MediaPortAllocator(base, base + 1);
+        DatagramSocket socket = ports.open();
+        int port = socket.getLocalPort();
+        try (MediaReactor reactor = new MediaReactor(1)) {
+            reactor.register(socket.getChannel(), null, (stream, packet, header) -> { });
+        }
+        // 事件循环退出时关闭接管的通道
+        for (int i = 0; i < 200 && !socket.isClosed(); i++) {
+            Thread.sleep(10);
+        }
+        if (!socket.isClosed()) {
+            return "反应器关闭后通道仍未关闭";
+        }
+        ports.close(socket, port);
+        if (ports.getInUse() != 0) {
+            return "端口没有归还";
+        }
+        // 端口可以再次指定绑定
+        DatagramSocket again = ports.open(port);
+        ports.close(again);
+        System.out.printf("  端口%d 反应器关闭后归还并重新绑定%n", port);
+        return ports.getInUse() == 0 ? null : "重新绑定后未归还";
+    }
+
+    /**
+     * 跨越几个64位字、最后一个字不满的范围
+     * @return 失败原因，通过时返回null
+     */
+    private static String wordSkip() throws Exception {
+        int capacity = 3 * 64 + 8;
+        int base = freeRange(capacity);
+        MediaPortAllocator ports = new MediaPortAllocator(base, base + capacity - 1);
+        DatagramSocket[] sockets = new DatagramSocket[capacity];
+        try {
+            Set<Integer> seen = new HashSet<>();
+            for (int i = 0; i < capacity; i++) {
+                DatagramSocket socket = ports.open();
+                int port = socket.getLocalPort();
+                if (port < base || port >= base + capacity || !seen.add(port)) {
+                    return "分配了范围外或重复的端口 " + port;
+                }
+                sockets[port - base] = socket;
+            }
+            try {
+                ports.open();
+                return "范围已满仍然分配成功";
+            } catch (IOException expected) {
+                // 已用尽
+            }
+            // 只空出一个端口，其他字都是满的，分配必须跳过满字找到它
+            int[] holes = {0, 63, 64, 130, 191, 192, capacity - 1};
+            for (int hole : holes) {
+                ports.close(sockets[hole]);
+                sockets[hole] = null;
+                DatagramSocket socket = ports.open();
+                int index = socket.getLocalPort() - base;
+                sockets[index] = socket;
+                if (index != hole) {
+                    return "空出第" + hole + "个端口后分到了第" + index + "个";
+                }
+            }
+            System.out.printf("  范围%d-%d（%d个端口）逐个分配并逐个空出%d处%n", base, base + capacity - 1,
+                    capacity, holes.length);
+        } finally {
+            for (DatagramSocket socket : sockets) {
+                if (socket != null) {
+                    ports.close(socket);
+                }
+            }
+        }
+        if (ports.getBindFailures() > 0) {
+            return "范围内没有其他程序，却出现了绑定失败";
+        }
+        return ports.getInUse() == 0 ? null : "结束时仍有端口未归还";
+    }
+
+    /**
+     * 找一段当前全部空闲的连续端口（逐个试绑定后立即关闭）
+     */
+    private static int freeRange(int count) throws IOException {
+        for (int base = SEARCH_FROM; base + count - 1 <= SEARCH_TO; base += count) {
+            List<DatagramChannel> probes = new ArrayList<>();
+            boolean free = true;
+            try {
+                for (int port = base; port < base + count && free; port++) {
+                    DatagramChannel channel = DatagramChannel.open();
+                    probes.add(channel);
+                    try {
+                        channel.bind(new InetSocketAddress(port));
+                    } catch (IOException ex) {
+                        free = false;
+                    }
+                }
+            } finally {
+                for (DatagramChannel channel : probes) {
+                    channel.close();
+                }
+            }
+            if (free) {
+                return base;
+            }
+        }
+        throw new IOException("找不到" + count + "个连续的空闲端口");
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 信令负载测试：建立大量空闲通话，统计线程数和内存占用
+ *
+ * 用法：java SignalingLoadTest [会话数，默认10000]
+ * 对比线程模型：java -Dipphone.signalingThreads=platform SignalingLoadTest 10000
+ *
+ * 每路通话在服务端占用一个TCP连接和一个UDP套接字，客户端占用一个TCP连接，
+ * 因此需要约3倍会话数的文件描述符（ulimit -n）
+ */
+public class SignalingLoadTest {
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        CallManager server = new CallManager(G711Codec.PCMU, AudioThread.DEFAULT_FRAME_MILLIS, null);
+        server.listen(0);
+        int port = server.getListenPort();
+
+        long heapBefore = usedHeap(memory);
+        int threadsBefore = threads.getThreadCount();
+        System.out.println("信令线程模型: " + System.getProperty("ipphone.signalingThreads", "virtual"));
+        System.out.printf("开始: 平台线程=%d 堆=%.1fMB%n", threadsBefore, heapBefore / 1048576.0);
+
+        // 客户端直接使用原始套接字，只完成DIAL/ACCEPT后保持空闲
+        List<Socket> clients = new ArrayList<>(sessions);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < sessions; i++) {
+                Socket socket = new Socket("127.0.0.1", port);
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                out.println(new SignalingMessage(SignalingMessage.DIAL)
+                        .with("codecs", G711Codec.PCMU).with("port", "9"));
+                SignalingMessage response = SignalingMessage.parse(in.readLine());
+                if (response == null || !response.is(SignalingMessage.ACCEPT)) {
+                    throw new IOException("第" + i + "路通话被拒绝");
+                }
+                clients.add(socket);
+            }
+        } catch (IOException ex) {
+            System.err.println("建立通话失败（已建立" + clients.size() + "路）: " + ex.getMessage());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // 等待服务端把所有会话都转入信令循环
+        Thread.sleep(1000);
+        long heapAfter = usedHeap(memory);
+        int threadsAfter = threads.getThreadCount();
+
+        System.out.printf("建立%d路通话，耗时%.2fs（%.0f路/秒）%n",
+                clients.size(), elapsed / 1e9, clients.size() / (elapsed / 1e9));
+        System.out.printf("服务端会话数=%d 平台线程=%d（峰值%d） 堆=%.1fMB（每路约%.1fKB）%n",
+                server.getCallCount(), threadsAfter, threads.getPeakThreadCount(),
+                heapAfter / 1048576.0,
+                clients.isEmpty() ? 0.0 : (heapAfter - heapBefore) / 1024.0 / clients.size());
+
+        for (Socket socket : clients) {
+            socket.close();
+        }
+        server.close();
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
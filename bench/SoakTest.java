@@ -0,0 +1,177 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 媒体浸泡测试：在同一进程中建立大量带音频的通话，长时间运行后统计质量和资源占用
+ * 两端都使用合成音频输入和空输出（不需要声卡），由 MediaClock 按实时节奏收发，
+ * 与真实通话一样经过采集、VAD、编码、RTP/RTCP、抖动缓冲和播放的完整流水线
+ *
+ * 用法：java SoakTest [通话数，默认100] [秒数，默认60] [编解码器，默认PCMU] [输入，默认talk] [输入时钟偏差ppm，默认0]
+ * 输入为 talk 时按讲话/停顿交替（语音包和舒适噪声包混合，接近真实对话），为 noise 时持续发送
+ * （数秒后被VAD当作背景噪声，转为只发舒适噪声包），为 sine 时每路通话使用不同频率的正弦波；
+ * 可以加 -Dipphone.clock.spinMicros=N 比较时钟精度对抖动的影响；
+ * 指定输入时钟偏差时合成输入比空输出快（或慢）这么多，模拟两端声卡的晶振偏差，
+ * 结束时的缓冲深度和漂移估计反映播放端漂移补偿的效果
+ *
+ * 每路通话两端共占用8个媒体线程（发送、采集、接收、播放各一），
+ * 输出中的溢出/欠载表示采集或播放线程没能按时运行，是机器过载的直接信号
+ */
+public class SoakTest {
+    private static final int REPORT_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        String codec = args.length > 2 ? args[2].toUpperCase() : G711Codec.PCMU;
+        String input = args.length > 3 ? args[3] : "talk";
+        double skew = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+
+        // 记录所有设备，结束时汇总溢出和欠载次数
+        Queue<SyntheticSource> sources = new ConcurrentLinkedQueue<>();
+        Queue<NullSink> sinks = new ConcurrentLinkedQueue<>();
+        AudioDevices devices = AudioDevices.of(session -> {
+            SyntheticSource source;
+            if ("sine".equals(input)) {
+                source = new SineSource(300 + 10 * (session.getId() % 50), 8000);
+            } else if ("noise".equals(input)) {
+                source = new NoiseSource(4000);
+            } else {
+                source = new NoiseSource(4000, AudioDevices.NOISE_TALK_MILLIS, AudioDevices.NOISE_PAUSE_MILLIS);
+            }
+            source.setClockSkew(skew);
+            sources.add(source);
+            return source;
+        }, session -> {
+            NullSink sink = new NullSink();
+            sinks.add(sink);
+            return sink;
+        });
+
+        CallManager server = new CallManager(codec, AudioThread.DEFAULT_FRAME_MILLIS, null);
+        CallManager client = new CallManager(codec, AudioThread.DEFAULT_FRAME_MILLIS, null);
+        for (CallManager manager : new CallManager[]{server, client}) {
+            manager.setLocalAudio(true);
+            manager.setAudioDevices(devices);
+        }
+        server.listen(0);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        System.out.printf("浸泡测试: %d路通话 %d秒 %s 输入=%s 时钟偏差=%+.0fppm%n", calls, seconds, codec, input, skew);
+        List<CallSession> sessions = new ArrayList<>(calls);
+        long setupStart = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            try {
+                sessions.add(client.dial("127.0.0.1", server.getListenPort()));
+            } catch (Exception ex) {
+                System.err.println("建立通话失败（已建立" + sessions.size() + "路）: " + ex.getMessage());
+                break;
+            }
+        }
+        System.out.printf("建立%d路通话，耗时%.2fs%n", sessions.size(), (System.nanoTime() - setupStart) / 1e9);
+
+        long cpuStart = processCpuNanos(os);
+        long wallStart = System.nanoTime();
+        for (int elapsed = 0; elapsed < seconds; elapsed += REPORT_SECONDS) {
+            Thread.sleep(Math.min(REPORT_SECONDS, seconds - elapsed) * 1000L);
+            System.out.printf("%4ds 活动=%d 线程=%d 堆=%.1fMB 溢出=%d 欠载=%d%n",
+                    Math.min(elapsed + REPORT_SECONDS, seconds), active(sessions), threads.getThreadCount(),
+                    memory.getHeapMemoryUsage().getUsed() / 1048576.0, overruns(sources), underruns(sinks));
+        }
+        long cpu = processCpuNanos(os) - cpuStart;
+        long wall = System.nanoTime() - wallStart;
+
+        // 汇总客户端一侧的收发指标
+        long sent = 0;
+        long received = 0;
+        long lost = 0;
+        double jitter = 0;
+        double worstJitter = 0;
+        double mos = 0;
+        double worstMos = 5;
+        double depth = 0;
+        double drift = 0;
+        int measured = 0;
+        for (CallSession session : sessions) {
+            CallMetrics m = session.getMetrics();
+            if (m == null) {
+                continue;
+            }
+            measured++;
+            sent += m.getPacketsSent();
+            received += m.getPacketsReceived();
+            lost += m.getPacketsLost();
+            jitter += m.getJitterMillis();
+            worstJitter = Math.max(worstJitter, m.getJitterMillis());
+            mos += m.getMos();
+            worstMos = Math.min(worstMos, m.getMos());
+            depth += m.getBufferDepth();
+            drift += m.getClockDriftPpm();
+        }
+        long played = 0;
+        for (NullSink sink : sinks) {
+            played += sink.getPlayedBytes();
+        }
+
+        System.out.printf("仍在通话=%d/%d 发送=%d 接收=%d 丢包=%d（%.2f%%）%n", active(sessions), sessions.size(),
+                sent, received, lost, sent == 0 ? 0.0 : lost * 100.0 / Math.max(1, received + lost));
+        System.out.printf("抖动 平均=%.2fms 最大=%.2fms  MOS 平均=%.2f 最低=%.2f%n",
+                measured == 0 ? 0.0 : jitter / measured, worstJitter,
+                measured == 0 ? 0.0 : mos / measured, measured == 0 ? 0.0 : worstMos);
+        System.out.printf("缓冲深度 平均=%.1f帧  时钟漂移估计 平均=%+.1fppm%n",
+                measured == 0 ? 0.0 : depth / measured, measured == 0 ? 0.0 : drift / measured);
+        System.out.printf("播放=%.1f秒音频 溢出=%d 欠载=%d%n",
+                played / 2.0 / Codecs.create(codec).sampleRate(), overruns(sources), underruns(sinks));
+        if (cpu >= 0) {
+            System.out.printf("CPU=%.1f%%（%d核） 每路通话约%.2f%%单核%n", cpu * 100.0 / wall / os.getAvailableProcessors(),
+                    os.getAvailableProcessors(), sessions.isEmpty() ? 0.0 : cpu * 100.0 / wall / sessions.size());
+        }
+
+        client.close();
+        server.close();
+    }
+
+    private static int active(List<CallSession> sessions) {
+        int count = 0;
+        for (CallSession session : sessions) {
+            if (session.getState() == CallSession.State.ACTIVE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long overruns(Queue<SyntheticSource> sources) {
+        long total = 0;
+        for (SyntheticSource source : sources) {
+            total += source.getOverruns();
+        }
+        return total;
+    }
+
+    private static long underruns(Queue<NullSink> sinks) {
+        long total = 0;
+        for (NullSink sink : sinks) {
+            total += sink.getUnderruns();
+        }
+        return total;
+    }
+
+    /**
+     * 进程累计CPU时间（纳秒），平台不支持时返回-1
+     */
+    private static long processCpuNanos(OperatingSystemMXBean os) {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * 宽带IMA ADPCM编解码器（16000Hz，每样本4位，64kbit/s）
+ * 与G.711带宽相同，但音频带宽从3.4kHz扩展到7kHz
+ *
+ * 每帧自带预测值和步长索引，帧之间相互独立，丢包不会影响后续帧的解码：
+ *   [预测值 2字节][步长索引 1字节][保留 1字节][每样本4位，高半字节在前]
+ */
+public class AdpcmWbCodec implements Codec {
+    public static final String NAME = "ADPCM-WB";
+
+    // 动态负载类型
+    private static final int PAYLOAD_TYPE = 97;
+    // 帧头长度
+    private static final int HEADER_SIZE = 4;
+
+    // IMA ADPCM 步长表
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    // 步长索引调整表（按码字低3位）
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+
+    // 编码器跨帧保留步长索引，使每帧开头的步长与信号幅度匹配
+    private int encoderIndex;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int payloadType() {
+        return PAYLOAD_TYPE;
+    }
+
+    @Override
+    public int sampleRate() {
+        return 16000;
+    }
+
+    @Override
+    public int bitrate() {
+        return 16000 * 4;
+    }
+
+    @Override
+    public int encode(byte[] pcm, int pcmOffset, int pcmLength, byte[] out, int outOffset) {
+        int samples = pcmLength / 2 & ~1; // 每字节两个样本
+        if (samples == 0) {
+            return 0;
+        }
+        int predictor = sample(pcm, pcmOffset);
+        int index = encoderIndex;
+
+        out[outOffset] = (byte) (predictor >> 8);
+        out[outOffset + 1] = (byte) predictor;
+        out[outOffset + 2] = (byte) index;
+        out[outOffset + 3] = 0;
+
+        int o = outOffset + HEADER_SIZE;
+        for (int i = 0; i < samples; i += 2) {
+            int high = encodeSample(sample(pcm, pcmOffset + i * 2), predictor, index);
+            predictor = reconstruct(predictor, index, high);
+            index = nextIndex(index, high);
+
+            int low = encodeSample(sample(pcm, pcmOffset + i * 2 + 2), predictor, index);
+            predictor = reconstruct(predictor, index, low);
+            index = nextIndex(index, low);
+
+            out[o++] = (byte) ((high << 4) | low);
+        }
+        encoderIndex = index;
+        return HEADER_SIZE + samples / 2;
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset) {
+        if (length <= HEADER_SIZE) {
+            return 0;
+        }
+        int predictor = (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+        int index = Math.min(data[offset + 2] & 0xFF, STEP_TABLE.length - 1);
+
+        int p = pcmOffset;
+        for (int i = offset + HEADER_SIZE; i < offset + length; i++) {
+            int high = (data[i] >> 4) & 0x0F;
+            predictor = reconstruct(predictor, index, high);
+            index = nextIndex(index, high);
+            pcm[p++] = (byte) (predictor >> 8);
+            pcm[p++] = (byte) predictor;
+
+            int low = data[i] & 0x0F;
+            predictor = reconstruct(predictor, index, low);
+            index = nextIndex(index, low);
+            pcm[p++] = (byte) (predictor >> 8);
+            pcm[p++] = (byte) predictor;
+        }
+        return p - pcmOffset;
+    }
+
+    @Override
+    public int decodedLength(int length) {
+        return length <= HEADER_SIZE ? 0 : (length - HEADER_SIZE) * 4;
+    }
+
+    /**
+     * 按当前预测值和步长量化一个样本，返回4位码字
+     */
+    private static int encodeSample(int sample, int predictor, int index) {
+        int step = STEP_TABLE[index];
+        int diff = sample - predictor;
+        int code = 0;
+        if (diff < 0) {
+            code = 8;
+            diff = -diff;
+        }
+        if (diff >= step) {
+            code |= 4;
+            diff -= step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            code |= 2;
+            diff -= step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            code |= 1;
+        }
+        return code;
+    }
+
+    /**
+     * 由码字还原样本（编码器和解码器使用相同的计算，保证两端预测值一致）
+     */
+    private static int reconstruct(int predictor, int index, int code) {
+        int step = STEP_TABLE[index];
+        int diff = step >> 3;
+        if ((code & 4) != 0) diff += step;
+        if ((code & 2) != 0) diff += step >> 1;
+        if ((code & 1) != 0) diff += step >> 2;
+        predictor += (code & 8) != 0 ? -diff : diff;
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+    }
+
+    private static int nextIndex(int index, int code) {
+        index += INDEX_TABLE[code & 7];
+        return Math.max(0, Math.min(STEP_TABLE.length - 1, index));
+    }
+
+    private static int sample(byte[] pcm, int offset) {
+        return (short) (((pcm[offset] & 0xFF) << 8) | (pcm[offset + 1] & 0xFF));
+    }
+}
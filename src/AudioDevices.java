@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+/**
+ * 为每路通话创建音频设备
+ * CallManager 为使用本机音频的通话各创建一对输入/输出设备，默认为声卡；
+ * 无界面运行或负载测试时可以换成WAV文件、合成音频或空输出（见 PhoneDaemon）
+ */
+public interface AudioDevices {
+    /**
+     * 声卡麦克风和扬声器
+     */
+    AudioDevices SOUND_CARD = of(session -> new SoundCardSource(), session -> new SoundCardSink());
+
+    // 噪声输入默认的讲话/停顿时长（毫秒），接近对话中的平均讲话段和停顿长度
+    int NOISE_TALK_MILLIS = 1000;
+    int NOISE_PAUSE_MILLIS = 1500;
+
+    /**
+     * 为一路通话创建音频输入
+     * @param session 通话会话
+     * @return 尚未打开的输入设备
+     */
+    AudioSource createSource(CallSession session);
+
+    /**
+     * 为一路通话创建音频输出
+     * @param session 通话会话
+     * @return 尚未打开的输出设备
+     */
+    AudioSink createSink(CallSession session);
+
+    /**
+     * 按描述创建设备工厂（PhoneDaemon 的 --input/--output 选项）
+     * 输入：sound（声卡）、sine[:频率[:幅度]]（正弦波）、noise[:幅度[:讲话毫秒:停顿毫秒]]（白噪声，
+     * 默认按1秒讲话、1.5秒停顿交替，停顿为0时持续输出），其他值视为WAV文件路径
+     * 输出：sound（声卡）、null（丢弃），其他值视为目录，每路通话写一个WAV文件
+     * @param input 输入描述，null表示声卡
+     * @param output 输出描述，null表示声卡
+     * @param sampleRate 通话采样率，用于提前检查WAV文件能否读取
+     * @throws IOException WAV文件无法读取或输出目录无法创建时抛出
+     */
+    static AudioDevices parse(String input, String output, int sampleRate) throws IOException {
+        Function<CallSession, AudioSource> sources;
+        String[] in = input == null ? new String[]{"sound"} : input.split(":");
+        try {
+            switch (in[0]) {
+                case "sound":
+                    sources = session -> new SoundCardSource();
+                    break;
+                case "sine":
+                    double frequency = in.length > 1 ? Double.parseDouble(in[1]) : 440;
+                    int sineAmplitude = in.length > 2 ? Integer.parseInt(in[2]) : 8000;
+                    sources = session -> new SineSource(frequency, sineAmplitude);
+                    break;
+                case "noise":
+                    int noiseAmplitude = in.length > 1 ? Integer.parseInt(in[1]) : 4000;
+                    int talk = in.length > 2 ? Integer.parseInt(in[2]) : NOISE_TALK_MILLIS;
+                    int pause = in.length > 3 ? Integer.parseInt(in[3]) : NOISE_PAUSE_MILLIS;
+                    sources = session -> new NoiseSource(noiseAmplitude, talk, pause);
+                    break;
+                default:
+                    Path file = Paths.get(input);
+                    // 提前读取一次（结果缓存），避免每路通话都在媒体线程中报错
+                    WavFileSource.load(file, sampleRate);
+                    sources = session -> new WavFileSource(file);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("无效的音频输入: " + input);
+        }
+
+        Function<CallSession, AudioSink> sinks;
+        if (output == null || "sound".equals(output)) {
+            sinks = session -> new SoundCardSink();
+        } else if ("null".equals(output)) {
+            sinks = session -> new NullSink();
+        } else {
+            Path directory = Paths.get(output);
+            Files.createDirectories(directory);
+            sinks = session -> new WavFileSink(directory.resolve("call-" + session.getId() + "-"
+                    + session.getRemoteAddress().getHostAddress().replaceAll("[^A-Za-z0-9.-]", "_") + ".wav"));
+        }
+        return of(sources, sinks);
+    }
+
+    /**
+     * 由两个工厂函数组成
+     * @param sources 输入设备工厂
+     * @param sinks 输出设备工厂
+     */
+    static AudioDevices of(Function<CallSession, AudioSource> sources, Function<CallSession, AudioSink> sinks) {
+        return new AudioDevices() {
+            @Override
+            public AudioSource createSource(CallSession session) {
+                return sources.apply(session);
+            }
+
+            @Override
+            public AudioSink createSink(CallSession session) {
+                return sinks.apply(session);
+            }
+        };
+    }
+}
@@ -0,0 +1,38 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 音频输出设备（扬声器、WAV文件等）
+ * PCM格式固定为16位有符号大端序单声道，与 Codec 一致
+ *
+ * write() 应按实时节奏阻塞：设备内部缓冲满时等待，播放线程依赖它来控制取帧节奏
+ */
+public interface AudioSink extends Closeable {
+    /**
+     * 打开设备
+     * @param sampleRate 采样率
+     * @param bufferBytes 设备内部缓冲的字节数（超前播放最多这么多）
+     * @throws IOException 设备不可用时抛出
+     */
+    void open(int sampleRate, int bufferBytes) throws IOException;
+
+    /**
+     * 写入PCM数据，设备内部缓冲满时阻塞
+     * @param buffer 缓冲区
+     * @param offset 起始偏移
+     * @param length 字节数（偶数）
+     * @throws IOException 写入失败时抛出
+     */
+    void write(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * 播放完缓冲的数据后关闭设备（可以从其他线程调用）
+     */
+    @Override
+    void close();
+
+    /**
+     * 设备名称，用于日志
+     */
+    String name();
+}
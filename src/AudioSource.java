@@ -0,0 +1,40 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 音频输入设备（麦克风、WAV文件等）
+ * PCM格式固定为16位有符号大端序单声道，与 Codec 一致
+ *
+ * read() 应按实时节奏阻塞：每次返回的数据对应设备上刚刚经过的一段时间，
+ * 发送线程依赖它来控制发包节奏
+ */
+public interface AudioSource extends Closeable {
+    /**
+     * 打开设备
+     * @param sampleRate 采样率
+     * @param bufferBytes 设备内部缓冲的字节数（发送线程落后时最多积压这么多）
+     * @throws IOException 设备不可用时抛出
+     */
+    void open(int sampleRate, int bufferBytes) throws IOException;
+
+    /**
+     * 读取PCM数据，阻塞直到读满或设备关闭
+     * @param buffer 缓冲区
+     * @param offset 起始偏移
+     * @param length 字节数（偶数）
+     * @return 读取的字节数，设备已关闭时返回-1
+     * @throws IOException 读取失败时抛出
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * 关闭设备（可以从其他线程调用，正在阻塞的 read 随后返回）
+     */
+    @Override
+    void close();
+
+    /**
+     * 设备名称，用于日志
+     */
+    String name();
+}
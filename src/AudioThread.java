@@ -1,29 +1,99 @@
-import javax.sound.sampled.*;
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * 音频处理线程类
- * 负责音频的采集、发送、接收和播放
+ * 音频处理任务
+ * 负责音频的采集、发送、接收和播放，通过 start() 提交到 CallExecutors.media() 执行
+ *
+ * 每个方向拆成两个阶段，中间用预分配的 FrameRing 连接，慢的一侧不会拖住另一侧：
+ *   发送：采集（source.read） → 环形缓冲 → 检测、编码、发送（socket.send）
+ *   接收：接收（socket.receive）→ 环形缓冲 → 解码、抖动缓冲、播放（sink.write）
+ * 下游跟不上时上游丢弃新帧并计数，采集和接收永远不会等待下游
+ * 稳态下循环中不分配内存：套接字基于 DatagramChannel 时直接用通道收发预先包装的 ByteBuffer
+ * （套接字适配器每收发一个包都要为对方地址分配一个 InetSocketAddress），bench/AllocationCheck 检查这一点
+ *
+ * 音频设备通过 AudioSource/AudioSink 接入，默认使用声卡，也可以换成WAV文件等
  */
-public class AudioThread extends Thread {
+public class AudioThread implements Runnable {
     // 网络参数
     private String remoteIP;      // 对方IP地址
     private int remotePort;       // 对方UDP端口
     private DatagramSocket socket; // UDP套接字
+    private DatagramChannel channel; // 套接字所属的通道，没有时为null（通过套接字收发）
+    private InetSocketAddress remoteAddress; // 对方地址（发送线程解析）
 
     // 线程控制
     private boolean isSender;     // true表示发送线程，false表示接收线程
     private volatile boolean running = true; // 线程运行标志
 
-    // 音频设备
-    private TargetDataLine microphone;  // 麦克风（输入）
-    private SourceDataLine speaker;     // 扬声器（输出）
+    // 音频设备：source/sink 为配置的设备（null表示声卡），input/output 为已打开的设备
+    private AudioSource source;
+    private AudioSink sink;
+    private AudioSource input;  // 音频输入（发送线程）
+    private AudioSink output;   // 音频输出（接收线程）
 
-    // UI引用（用于更新麦克风指示器）
-    private IPPhone phoneUI;
+    // 媒体事件回调（用于更新麦克风指示器，可以为null）
+    private MediaListener listener;
 
-    // 音量检测阈值
-    private static final int VOLUME_THRESHOLD = 500; // 声音强度阈值
+    // 抖动缓冲区（仅播放线程使用）
+    private JitterBuffer jitterBuffer;
+    private DriftCompensator drift; // 对方采集时钟与本端播放时钟的漂移补偿
+    private long invalidPackets;  // 校验失败的数据包数（接收线程）
+    private long invalidPayloads; // 解包失败的RED负载数（播放线程）
+
+    // 阶段之间的环形缓冲区：发送方向存放PCM帧，接收方向存放原始数据包
+    private FrameRing ring;
+    private long overruns; // 环形缓冲区满而丢弃的帧数（仅上游线程写入）
+    // 采集阶段每次读取的字节数，码率控制器调整帧时长时由发送阶段修改
+    private volatile int captureFrameBytes;
+
+    // 静音抑制统计（仅发送线程使用）
+    private long sentPackets;      // 发送的数据包数（含舒适噪声包）
+    private long suppressedFrames; // 被抑制不发送的静音帧数
+
+    // 通话质量指标（发送和接收两个方向共用一个实例，可以为null）
+    private volatile CallMetrics metrics;
+
+    // 通话录音（发送和接收两个方向共用一个实例，可以为null）
+    private volatile CallRecorder recorder;
+
+    // 冗余帧数（RFC 2198 RED），0表示不使用FEC（仅发送线程使用）
+    private volatile int redundancy = 0;
+
+    // RTCP报告的平均间隔（毫秒），实际间隔在 0.5~1.5 倍之间随机，避免双方同步发送
+    private static final int RTCP_INTERVAL_MILLIS = 5000;
+
+    // 静音期间发送舒适噪声描述的间隔（毫秒）
+    private static final int COMFORT_NOISE_INTERVAL_MILLIS = 200;
+
+    // 可选的帧时长（毫秒），帧越短打包延迟越小
+    public static final int[] FRAME_MILLIS_OPTIONS = {10, 20, 30};
+    public static final int DEFAULT_FRAME_MILLIS = 20;
+    private static final int MAX_FRAME_MILLIS = 30;
+    // 声卡内部缓冲的帧数：麦克风多留几帧防止溢出，扬声器尽量少以降低延迟
+    private static final int MIC_BUFFER_FRAMES = 4;
+    private static final int SPEAKER_BUFFER_FRAMES = 3;
+    // 阶段之间环形缓冲区的槽位数：采集帧最多积压约半秒，接收包与抖动缓冲区上限相当
+    private static final int CAPTURE_RING_FRAMES = 16;
+    private static final int RECEIVE_RING_PACKETS = 64;
+
+    // 对方SSRC变化后需要连续收到的包数，之后才切换到新的源
+    private static final int SSRC_PROBATION = 3;
+
+    // 编解码器（决定采样率和线路上的负载格式）
+    private final Codec codec;
+    // 双方都支持、采样率相同的其他编码：发送方可以切换过去，接收方可以解码
+    private Codec[] alternatives = new Codec[0];
+
+    // 帧参数
+    private final int frameMillis;  // 每帧时长（毫秒）
+    private final int frameBytes;   // 每帧PCM字节数
 
     /**
      * 构造函数
@@ -31,31 +101,138 @@ public class AudioThread extends Thread {
      * @param port 对方UDP端口
      * @param socket UDP套接字
      * @param isSender true为发送线程，false为接收线程
-     * @param phoneUI 主界面引用
+     * @param frameMillis 每帧时长（毫秒），取值见 FRAME_MILLIS_OPTIONS
+     * @param codec 本方向使用的编解码器
+     * @param listener 媒体事件回调，可以为null
      */
-    public AudioThread(String ip, int port, DatagramSocket socket, boolean isSender, IPPhone phoneUI) {
+    public AudioThread(String ip, int port, DatagramSocket socket, boolean isSender, int frameMillis,
+                       Codec codec, MediaListener listener) {
+        if (!isValidFrameMillis(frameMillis)) {
+            throw new IllegalArgumentException("不支持的帧时长: " + frameMillis + "ms");
+        }
         this.remoteIP = ip;
         this.remotePort = port;
         this.socket = socket;
+        this.channel = socket.getChannel();
         this.isSender = isSender;
-        this.phoneUI = phoneUI;
+        this.listener = listener;
+        this.codec = codec;
+        this.frameMillis = frameMillis;
+        this.frameBytes = frameBytes(frameMillis);
+    }
+
+    /**
+     * 判断帧时长是否受支持
+     * @param frameMillis 帧时长（毫秒）
+     * @return true表示受支持
+     */
+    public static boolean isValidFrameMillis(int frameMillis) {
+        for (int option : FRAME_MILLIS_OPTIONS) {
+            if (option == frameMillis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 最长一帧（30毫秒）PCM音频的字节数，用于预分配各处的帧缓冲区
+     * @param sampleRate 采样率
+     * @return 字节数
+     */
+    public static int maxFrameBytes(int sampleRate) {
+        return sampleRate * MAX_FRAME_MILLIS / 1000 * 2;
+    }
+
+    /**
+     * 计算一帧PCM音频的字节数
+     * @param frameMillis 帧时长（毫秒）
+     * @return 字节数（16位单声道，每个样本2字节）
+     */
+    private int frameBytes(int frameMillis) {
+        return codec.sampleRate() * frameMillis / 1000 * 2;
+    }
+
+    /**
+     * 设置每个包携带的冗余帧数（FEC），通话中调整时下一个包生效
+     * 只有信令协商启用了RED时才能设为非0，接收方总是能处理RED包
+     * @param redundancy 冗余帧数（0~RedundantEncoding.MAX_LEVEL）
+     */
+    public void setRedundancy(int redundancy) {
+        this.redundancy = Math.max(0, Math.min(RedundantEncoding.MAX_LEVEL, redundancy));
+    }
+
+    /**
+     * 设置通话中可以切换的其他编码，应在 start() 之前调用
+     * 只保留与协商编码采样率相同的（声卡格式在通话中不变）
+     * @param names 双方都支持的编码名称（见 Codecs.common）
+     */
+    public void setAlternativeCodecs(String... names) {
+        List<Codec> list = new ArrayList<>();
+        for (String name : names) {
+            Codec alternative = Codecs.create(name);
+            if (alternative != null && alternative.sampleRate() == codec.sampleRate()
+                    && !alternative.name().equals(codec.name())) {
+                list.add(alternative);
+            }
+        }
+        alternatives = list.toArray(new Codec[0]);
+    }
+
+    /**
+     * 设置通话质量指标，应在 start() 之前调用
+     * 发送线程会据此发送RTCP报告，并根据对方的报告自适应调整码率
+     * @param metrics 指标（两个方向传入同一个实例）
+     */
+    public void setMetrics(CallMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 设置通话录音，应在 start() 之前调用
+     * 发送线程记录采集到的每一帧，播放线程记录实际播放的每一帧，都只拷贝到录音的环形缓冲区，不等待磁盘
+     * @param recorder 录音（两个方向传入同一个实例）
+     */
+    public void setRecorder(CallRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * 设置音频输入设备，应在 start() 之前调用（仅发送线程使用）
+     * @param source 输入设备，null表示使用声卡麦克风
+     */
+    public void setSource(AudioSource source) {
+        this.source = source;
     }
 
     /**
-     * 线程运行主体
+     * 设置音频输出设备，应在 start() 之前调用（仅接收线程使用）
+     * @param sink 输出设备，null表示使用声卡扬声器
+     */
+    public void setSink(AudioSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * 在媒体执行器上启动
+     */
+    public void start() {
+        CallExecutors.media().execute(this);
+    }
+
+    /**
+     * 任务运行主体
      */
     @Override
     public void run() {
         try {
-            // 定义音频格式：8000Hz采样率，16位，单声道，有符号，大端序
-            AudioFormat format = new AudioFormat(8000, 16, 1, true, true);
-
+            // 音频格式：采样率由编解码器决定，16位，单声道，有符号，大端序
             if (isSender) {
-                // 发送线程：从麦克风读取音频并通过UDP发送
-                sendAudio(format);
+                // 发送线程：从音频输入读取并通过UDP发送
+                sendAudio();
             } else {
-                // 接收线程：从UDP接收音频并通过扬声器播放
-                receiveAudio(format);
+                // 接收线程：从UDP接收音频并通过音频输出播放
+                receiveAudio();
             }
         } catch (Exception ex) {
             // 只有在线程运行时才打印异常（避免正常停止时的异常输出）
@@ -67,103 +244,371 @@ public class AudioThread extends Thread {
 
     /**
      * 发送音频数据
-     * @param format 音频格式
      * @throws Exception
      */
-    private void sendAudio(AudioFormat format) throws Exception {
-        // 获取麦克风设备
-        DataLine.Info micInfo = new DataLine.Info(TargetDataLine.class, format);
+    private void sendAudio() throws Exception {
+        // 打开音频输入，默认为声卡麦克风
+        AudioSource device = source != null ? source : new SoundCardSource();
+        device.open(codec.sampleRate(), frameBytes(MAX_FRAME_MILLIS) * MIC_BUFFER_FRAMES);
+        input = device;
 
-        if (!AudioSystem.isLineSupported(micInfo)) {
-            System.err.println("系统不支持该音频格式的麦克风");
-            return;
-        }
+        System.out.println(device.name() + "已启动，开始发送音频（" + codec.name() + "，每帧" + frameMillis + "ms）...");
+
+        // 数据包缓冲区（编码后的数据不会超过PCM长度，RED负载另含冗余帧）
+        // 通话中帧时长可能被调整，全部按最大帧分配
+        int maxFrameBytes = frameBytes(MAX_FRAME_MILLIS);
+        byte[] encodedFrame = new byte[maxFrameBytes];
+        byte[] buffer = new byte[RtpHeader.SIZE + RedundantEncoding.maxPayloadSize(maxFrameBytes)];
+        RedundantEncoding red = new RedundantEncoding(maxFrameBytes, 0);
+
+        // 当前的发送参数，由码率控制器在通话中调整
+        Codec sendCodec = codec;
+        int sendFrameMillis = frameMillis;
+        int sendFrameBytes = frameBytes;
+
+        // 对方地址只解析一次，数据包对象在循环中复用
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length,
+                InetAddress.getByName(remoteIP), remotePort);
+        remoteAddress = new InetSocketAddress(packet.getAddress(), remotePort);
+        ByteBuffer view = ByteBuffer.wrap(buffer);
+        boolean lastHasSound = false;
+        notifyMicActivity(false);
+
+        // 语音活动检测：静音时不发送音频，只周期性地发送舒适噪声描述
+        VoiceActivityDetector vad = new VoiceActivityDetector(frameMillis);
+        int noiseIntervalFrames = Math.max(1, COMFORT_NOISE_INTERVAL_MILLIS / frameMillis);
+        int framesSinceNoise = noiseIntervalFrames; // 开始就处于静音时立即发送一次
+        boolean talking = false;
 
-        microphone = (TargetDataLine) AudioSystem.getLine(micInfo);
-        microphone.open(format);
-        microphone.start();
+        // 序号和时间戳从随机值开始（RFC 3550），SSRC随机生成
+        SecureRandom random = new SecureRandom();
+        int ssrc = random.nextInt();
+        int seq = random.nextInt() & 0xFFFF;
+        long timestamp = random.nextInt() & 0xFFFFFFFFL;
 
-        System.out.println("麦克风已启动，开始发送音频...");
+        // RTCP报告与RTP复用同一个端口，由发送线程按间隔发送
+        byte[] rtcpBuffer = new byte[RtcpPacket.MAX_SIZE];
+        DatagramPacket rtcpPacket = new DatagramPacket(rtcpBuffer, rtcpBuffer.length,
+                packet.getAddress(), remotePort);
+        ByteBuffer rtcpView = ByteBuffer.wrap(rtcpBuffer);
+        RtcpPacket report = new RtcpPacket();
+        long nextReport = System.nanoTime() + rtcpInterval();
+        CallMetrics reportMetrics = metrics;
+        CallRecorder rec = recorder;
+        RateController controller = null;
+        if (reportMetrics != null) {
+            reportMetrics.setLocalSsrc(ssrc);
+            // 码率自适应依赖对方的RTCP报告
+            controller = new RateController(codec, alternatives, frameMillis, redundancy);
+        }
 
-        byte[] buffer = new byte[1024]; // 音频缓冲区
+        // 采集在独立的阶段中进行，本线程只从环形缓冲区取帧，发送阻塞不会造成麦克风溢出
+        ring = new FrameRing(CAPTURE_RING_FRAMES, maxFrameBytes);
+        captureFrameBytes = frameBytes;
+        CallExecutors.media().execute(this::capture);
 
-        // 持续读取麦克风数据并发送
+        // 持续取出采集到的帧并发送
         while (running) {
-            int count = microphone.read(buffer, 0, buffer.length);
-            if (count > 0) {
-                // 检测音量
-                boolean hasSound = detectVolume(buffer, count);
-                phoneUI.updateMicIndicator(hasSound);
+            if (controller != null && controller.update(reportMetrics)) {
+                // 在帧边界切换参数：时间戳和序号连续，接收方按负载类型和时间戳处理，无需重新协商
+                sendCodec = controller.codec();
+                sendFrameMillis = controller.frameMillis();
+                sendFrameBytes = frameBytes(sendFrameMillis);
+                captureFrameBytes = sendFrameBytes;
+                redundancy = controller.redundancy();
+                vad.setFrameMillis(sendFrameMillis);
+                noiseIntervalFrames = Math.max(1, COMFORT_NOISE_INTERVAL_MILLIS / sendFrameMillis);
+                System.out.println("发送参数已调整: " + controller + "（对方丢包"
+                        + String.format("%.1f%%", reportMetrics.getRemoteLossPercent()) + "）");
+            }
 
+            long now = System.nanoTime();
+            if (reportMetrics != null && now - nextReport >= 0) {
+                reportMetrics.fillReport(report, timestamp, now);
                 try {
-                    // 封装成UDP数据包并发送
-                    DatagramPacket packet = new DatagramPacket(
-                            buffer, count,
-                            InetAddress.getByName(remoteIP),
-                            remotePort
-                    );
-                    socket.send(packet);
+                    transmit(rtcpPacket, rtcpView, report.write(rtcpBuffer, 0));
                 } catch (Exception ex) {
                     if (running) {
-                        System.err.println("发送音频数据失败: " + ex.getMessage());
+                        System.err.println("发送RTCP报告失败: " + ex.getMessage());
                     }
                 }
+                nextReport = now + rtcpInterval();
+            }
+
+            // 最多等待一帧时间，没有数据时也要按时发送RTCP报告
+            if (!ring.await(sendFrameMillis * 1_000_000L)) {
+                continue;
+            }
+            byte[] pcm = ring.peek();
+            int count = ring.length();
+            if (rec != null) {
+                // 录音记录麦克风的原始音频，包括静音抑制不发送的帧
+                rec.record(CallRecorder.LOCAL, seq, timestamp, pcm, 0, count);
+            }
+
+            // 语音活动检测
+            boolean hasSound = vad.process(pcm, 0, count);
+            if (hasSound != lastHasSound) {
+                // 只在状态变化时刷新指示器，避免每帧向事件队列提交任务
+                notifyMicActivity(hasSound);
+                lastHasSound = hasSound;
+            }
+
+            if (hasSound) {
+                // 编码后写入RTP头部，每段话的第一个包设置标记位
+                int level = redundancy;
+                int payloadLength;
+                int payloadType;
+                if (level > 0) {
+                    // FEC：当前帧连同前几帧的副本一起打包为RED负载
+                    if (!talking || red.getLevel() == 0) {
+                        red.reset(); // 不连续的帧不能作为冗余块
+                    }
+                    red.setLevel(level);
+                    int encoded = sendCodec.encode(pcm, 0, count, encodedFrame, 0);
+                    payloadLength = red.pack(sendCodec.payloadType(), encodedFrame, 0, encoded, timestamp,
+                            buffer, RtpHeader.SIZE);
+                    payloadType = RedundantEncoding.PAYLOAD_TYPE;
+                } else {
+                    red.setLevel(0);
+                    payloadLength = sendCodec.encode(pcm, 0, count, buffer, RtpHeader.SIZE);
+                    payloadType = sendCodec.payloadType();
+                }
+                RtpHeader.write(buffer, 0, !talking, payloadType, seq, timestamp, ssrc);
+                seq = (seq + 1) & 0xFFFF;
+                send(packet, view, RtpHeader.SIZE + payloadLength);
+                talking = true;
+            } else if (talking || ++framesSinceNoise >= noiseIntervalFrames) {
+                // 刚进入静音，或距上次描述已满一个间隔：发送当前背景噪声电平
+                buffer[RtpHeader.SIZE] = (byte) ComfortNoise.toLevel(vad.getNoiseFloor());
+                RtpHeader.write(buffer, 0, false, ComfortNoise.PAYLOAD_TYPE, seq, timestamp, ssrc);
+                seq = (seq + 1) & 0xFFFF;
+                send(packet, view, RtpHeader.SIZE + ComfortNoise.PAYLOAD_SIZE);
+                talking = false;
+                framesSinceNoise = 0;
+            } else {
+                suppressedFrames++;
+            }
+            // 不发送的帧也推进时间戳，接收方据此得知静音段的长度
+            timestamp = (timestamp + count / 2) & 0xFFFFFFFFL; // 每个样本2字节
+            ring.release();
+        }
+    }
+
+    /**
+     * 采集阶段：从音频输入读取PCM帧写入环形缓冲区
+     * input.read 按设备时钟阻塞，本线程只做这一件事，因此不会因为发送慢而溢出
+     */
+    private void capture() {
+        byte[] discard = new byte[frameBytes(MAX_FRAME_MILLIS)];
+        while (running) {
+            try {
+                int length = captureFrameBytes;
+                byte[] slot = ring.claim();
+                if (slot == null) {
+                    // 发送阶段积压：照常读走设备数据以免溢出，丢弃这一帧
+                    input.read(discard, 0, length);
+                    overruns++;
+                    continue;
+                }
+                int count = input.read(slot, 0, length);
+                if (count < 0) {
+                    return; // 设备已关闭
+                }
+                if (count > 0) {
+                    ring.publish(count, System.nanoTime());
+                }
+            } catch (Exception ex) {
+                if (running) {
+                    System.err.println("采集音频数据失败: " + ex.getMessage());
+                }
+                return;
             }
         }
     }
 
     /**
-     * 检测音频数据的音量
-     * @param buffer 音频数据缓冲区
-     * @param length 数据长度
-     * @return true表示有声音，false表示静音
+     * 下一次RTCP报告的间隔（纳秒），在0.5~1.5倍之间随机（RFC 3550）
+     * 间隔只需错开，不需要密码学随机数，SecureRandom 每次取值都要分配内存
      */
-    private boolean detectVolume(byte[] buffer, int length) {
-        // 计算音频数据的RMS（均方根）值
-        long sum = 0;
-        for (int i = 0; i < length - 1; i += 2) {
-            // 将两个字节组合成一个16位样本（大端序）
-            int sample = (buffer[i] << 8) | (buffer[i + 1] & 0xFF);
-            sum += sample * sample;
+    private static long rtcpInterval() {
+        return (long) (RTCP_INTERVAL_MILLIS * (0.5 + ThreadLocalRandom.current().nextDouble()) * 1_000_000L);
+    }
+
+    /**
+     * 发送一个UDP数据包
+     * @param packet 数据包（缓冲区已填好）
+     * @param view 包装同一缓冲区的 ByteBuffer
+     * @param length 数据包长度
+     */
+    private void send(DatagramPacket packet, ByteBuffer view, int length) {
+        try {
+            transmit(packet, view, length);
+            sentPackets++;
+            CallMetrics m = metrics;
+            if (m != null) {
+                m.onPacketSent(length);
+            }
+        } catch (Exception ex) {
+            if (running) {
+                System.err.println("发送音频数据失败: " + ex.getMessage());
+            }
         }
+    }
 
-        // 计算RMS值
-        double rms = Math.sqrt(sum / (length / 2.0));
+    /**
+     * 把缓冲区的前 length 字节发给对方：有通道时通过通道发送，否则通过套接字发送
+     */
+    private void transmit(DatagramPacket packet, ByteBuffer view, int length) throws IOException {
+        if (channel != null) {
+            view.clear().limit(length);
+            channel.send(view, remoteAddress);
+        } else {
+            packet.setLength(length);
+            socket.send(packet);
+        }
+    }
 
-        // 与阈值比较
-        return rms > VOLUME_THRESHOLD;
+    /**
+     * 通知麦克风状态变化
+     */
+    private void notifyMicActivity(boolean hasSound) {
+        if (listener != null) {
+            listener.onMicActivity(hasSound);
+        }
     }
 
     /**
      * 接收并播放音频数据
-     * @param format 音频格式
      * @throws Exception
      */
-    private void receiveAudio(AudioFormat format) throws Exception {
-        // 获取扬声器设备
-        DataLine.Info speakerInfo = new DataLine.Info(SourceDataLine.class, format);
+    private void receiveAudio() throws Exception {
+        // 打开音频输出，默认为声卡扬声器
+        // 设备内部缓冲只保留几帧，播放延迟由抖动缓冲区控制
+        AudioSink device = sink != null ? sink : new SoundCardSink();
+        device.open(codec.sampleRate(), frameBytes * SPEAKER_BUFFER_FRAMES);
+        output = device;
 
-        if (!AudioSystem.isLineSupported(speakerInfo)) {
-            System.err.println("系统不支持该音频格式的扬声器");
-            return;
-        }
+        System.out.println(device.name() + "已启动，开始接收音频...");
+
+        // 对方的帧时长可能与本地不同，槽位按最大帧分配
+        // 对方可能在通话中切换到其他共同支持的编码，按负载类型选择解码器
+        int maxFrameBytes = frameBytes(MAX_FRAME_MILLIS);
+        jitterBuffer = new JitterBuffer(maxFrameBytes, frameMillis, codec.sampleRate());
+        drift = new DriftCompensator(codec.sampleRate());
+        Codec[] decoders = new Codec[alternatives.length + 1];
+        decoders[0] = codec;
+        System.arraycopy(alternatives, 0, decoders, 1, alternatives.length);
+        Codec[] decoderTable = Codecs.decoderTable(decoders);
 
-        speaker = (SourceDataLine) AudioSystem.getLine(speakerInfo);
-        speaker.open(format);
-        speaker.start();
+        // 接收到的数据包经环形缓冲区交给播放线程，抖动缓冲区只由播放线程访问
+        // 槽位按携带最多冗余帧的RED包分配
+        int maxPacketBytes = RtpHeader.SIZE + RedundantEncoding.maxPayloadSize(maxFrameBytes);
+        ring = new FrameRing(RECEIVE_RING_PACKETS, maxPacketBytes);
+        CallExecutors.media().execute(() -> playout(decoderTable));
 
-        System.out.println("扬声器已启动，开始接收音频...");
+        byte[] discard = new byte[maxPacketBytes]; // 环形缓冲区满时的接收缓冲区
+        ByteBuffer discardView = ByteBuffer.wrap(discard);
+        RtpHeader header = new RtpHeader();
+        RtcpPacket report = new RtcpPacket();
+        DatagramPacket packet = new DatagramPacket(discard, discard.length); // 循环中复用
 
-        byte[] buffer = new byte[1024]; // 音频缓冲区
+        // 当前锁定的对方SSRC，以及候选的新SSRC
+        boolean locked = false;
+        int remoteSsrc = 0;
+        int candidateSsrc = 0;
+        int candidateCount = 0;
 
-        // 持续接收UDP数据包并播放
+        // 持续接收UDP数据包，校验后放入环形缓冲区
         while (running) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet); // 阻塞等待接收
+                // 直接接收到空闲槽位中；播放线程积压时接收到丢弃缓冲区
+                byte[] buffer;
+                int length;
+                if (channel != null) {
+                    ByteBuffer view = ring.claimBuffer();
+                    if (view == null) {
+                        view = discardView.clear();
+                    }
+                    if (channel.receive(view) == null) { // 阻塞等待接收
+                        continue;
+                    }
+                    buffer = view.array();
+                    length = view.position();
+                } else {
+                    buffer = ring.claim();
+                    if (buffer == null) {
+                        buffer = discard;
+                    }
+                    // receive会把长度改成实际收到的字节数，每次接收前恢复
+                    packet.setData(buffer, 0, buffer.length);
+                    socket.receive(packet); // 阻塞等待接收
+                    length = packet.getLength();
+                }
+
+                if (RtcpPacket.isRtcp(buffer, 0, length)) {
+                    // 对方的RTCP报告：更新往返时间和对方的接收统计
+                    CallMetrics m = metrics;
+                    if (report.parse(buffer, 0, length) && m != null) {
+                        m.onReport(report, System.nanoTime());
+                    }
+                    continue;
+                }
 
-                // 将接收到的音频数据写入扬声器播放
-                speaker.write(packet.getData(), 0, packet.getLength());
+                if (!header.parse(buffer, 0, length)) {
+                    invalidPackets++;
+                    continue; // 非法的数据包
+                }
+                boolean supported;
+                if (header.getPayloadType() == ComfortNoise.PAYLOAD_TYPE) {
+                    supported = header.getPayloadLength() >= ComfortNoise.PAYLOAD_SIZE;
+                } else if (header.getPayloadType() == RedundantEncoding.PAYLOAD_TYPE) {
+                    supported = header.getPayloadLength() > 0; // 各块在解包时校验
+                } else {
+                    Codec decoder = decoderTable[header.getPayloadType()];
+                    supported = decoder != null
+                            && header.getPayloadLength() > 0
+                            && decoder.decodedLength(header.getPayloadLength()) <= maxFrameBytes;
+                }
+                if (!supported) {
+                    invalidPackets++;
+                    continue; // 不支持的负载
+                }
+
+                CallMetrics m = metrics;
+                if (!locked) {
+                    locked = true;
+                    remoteSsrc = header.getSsrc();
+                    if (m != null) {
+                        m.setRemoteSsrc(remoteSsrc);
+                    }
+                } else if (header.getSsrc() != remoteSsrc) {
+                    // 对方重启会换新的SSRC，连续收到几个包后再切换，防止杂散包干扰
+                    if (header.getSsrc() != candidateSsrc) {
+                        candidateSsrc = header.getSsrc();
+                        candidateCount = 0;
+                    }
+                    if (++candidateCount < SSRC_PROBATION) {
+                        continue;
+                    }
+                    System.out.println("对方音频源已变化，重新同步");
+                    remoteSsrc = candidateSsrc;
+                    if (m != null) {
+                        m.setRemoteSsrc(remoteSsrc);
+                    }
+                }
+                candidateCount = 0;
+
+                // 到达时间在这里记录，抖动估计不受播放线程处理时机的影响
+                long now = System.nanoTime();
+                if (m != null) {
+                    m.onPacketReceived(header.getSequence(), header.getTimestamp(), length, now);
+                }
+                if (buffer == discard) {
+                    overruns++;
+                } else {
+                    ring.publish(length, now);
+                }
             } catch (Exception ex) {
                 if (running) {
                     System.err.println("接收音频数据失败: " + ex.getMessage());
@@ -172,38 +617,136 @@ public class AudioThread extends Thread {
         }
     }
 
+    /**
+     * 播放循环：取出环形缓冲区中的数据包放入抖动缓冲区，再从抖动缓冲区取帧写入音频输出
+     * output.write 在内部缓冲满时阻塞，因此播放节奏由设备时钟决定；
+     * 两端时钟的偏差由 DriftCompensator 在每帧中删除或插入个别样本来抵消，缓冲深度不随通话时长增减
+     * @param decoders 按负载类型索引的解码器表
+     */
+    private void playout(Codec[] decoders) {
+        byte[] frame = new byte[frameBytes(MAX_FRAME_MILLIS) + 2]; // 漂移补偿可能插入一个样本
+        byte[] pcm = new byte[frameBytes(MAX_FRAME_MILLIS)]; // 解码缓冲区
+        RedundantEncoding red = new RedundantEncoding(frameBytes(MAX_FRAME_MILLIS), 0);
+        RtpHeader header = new RtpHeader();
+        CallRecorder rec = recorder;
+        int playedFrames = 0;
+        long playedSamples = 0;
+        boolean hasSource = false;
+        int sourceSsrc = 0;
+        while (running) {
+            try {
+                // 每次取帧前处理完已到达的包（接收线程已校验过）
+                byte[] data;
+                while ((data = ring.peek()) != null) {
+                    header.parse(data, 0, ring.length());
+                    if (!hasSource || header.getSsrc() != sourceSsrc) {
+                        // 接收线程确认切换到新的音频源后，这里第一次见到它的包
+                        if (hasSource) {
+                            jitterBuffer.resync();
+                            drift.onSourceChanged();
+                        }
+                        hasSource = true;
+                        sourceSsrc = header.getSsrc();
+                    }
+                    enqueue(data, header, decoders, pcm, red, ring.time());
+                    ring.release();
+                }
+
+                int length = jitterBuffer.poll(frame);
+                int depth = jitterBuffer.depth();
+                length = drift.process(frame, length, jitterBuffer.isPlaying(), depth, jitterBuffer.targetDepth());
+                CallMetrics m = metrics;
+                if (m != null) {
+                    m.onPlayout(depth, jitterBuffer.recovered(), drift.getDriftPpm());
+                }
+                if (rec != null) {
+                    // 录音记录实际播放的音频（含丢包隐藏和舒适噪声），序号和时间戳按播放顺序计
+                    rec.record(CallRecorder.REMOTE, playedFrames++ & 0xFFFF, playedSamples, frame, 0, length);
+                    playedSamples += length / 2;
+                }
+                output.write(frame, 0, length);
+                drift.onPlayed(length / 2, System.nanoTime());
+            } catch (Exception ex) {
+                if (running) {
+                    System.err.println("播放音频数据失败: " + ex.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 把一个已校验的数据包放入抖动缓冲区（仅播放线程调用）
+     * @param data 数据包
+     * @param header 已解析的RTP头部
+     * @param decoders 按负载类型索引的解码器表
+     * @param pcm 解码工作区
+     * @param red RED解包器
+     * @param arrivalNanos 到达时间
+     */
+    private void enqueue(byte[] data, RtpHeader header, Codec[] decoders, byte[] pcm, RedundantEncoding red,
+                         long arrivalNanos) {
+        drift.onPacket(header.getTimestamp(), arrivalNanos);
+        if (header.getPayloadType() == ComfortNoise.PAYLOAD_TYPE) {
+            // 舒适噪声描述：只记录噪声电平，由抖动缓冲区在静音段中生成噪声
+            int level = data[header.getPayloadOffset()] & 0x7F;
+            jitterBuffer.putComfortNoise(header.getSequence(), header.getTimestamp(), level, arrivalNanos);
+        } else if (header.getPayloadType() == RedundantEncoding.PAYLOAD_TYPE) {
+            // RED负载：主编码块正常写入，冗余块补上之前丢失的帧
+            if (!red.unpack(data, header.getPayloadOffset(), header.getPayloadLength(),
+                    header.getSequence(), header.getTimestamp(), decoders, pcm, jitterBuffer, arrivalNanos)) {
+                invalidPayloads++;
+            }
+        } else {
+            // 解码后放入抖动缓冲区，播放和丢包隐藏都在PCM上进行
+            int decoded = decoders[header.getPayloadType()].decode(data, header.getPayloadOffset(),
+                    header.getPayloadLength(), pcm, 0);
+            jitterBuffer.put(header.getSequence(), header.getTimestamp(), pcm, 0, decoded, arrivalNanos);
+        }
+    }
+
     /**
      * 停止音频线程并释放资源
      */
     public void stopAudio() {
         running = false; // 设置停止标志
 
-        // 关闭麦克风
-        if (microphone != null) {
+        // 关闭音频输入
+        if (input != null) {
             try {
-                microphone.stop();
-                microphone.close();
-                System.out.println("麦克风已关闭");
+                input.close();
+                System.out.println(input.name() + "已关闭");
             } catch (Exception ex) {
-                System.err.println("关闭麦克风失败: " + ex.getMessage());
+                System.err.println("关闭" + input.name() + "失败: " + ex.getMessage());
             }
         }
 
-        // 关闭扬声器
-        if (speaker != null) {
+        // 输出静音抑制统计
+        if (isSender && (sentPackets > 0 || suppressedFrames > 0)) {
+            System.out.println("静音抑制统计: sent=" + sentPackets + " suppressed=" + suppressedFrames
+                    + " overruns=" + overruns);
+        }
+
+        // 输出抖动缓冲区统计
+        if (jitterBuffer != null) {
+            System.out.println("抖动缓冲统计: " + jitterBuffer + " invalid=" + (invalidPackets + invalidPayloads)
+                    + " overruns=" + overruns);
+            System.out.println("时钟漂移补偿: " + drift);
+        }
+
+        // 关闭音频输出（等待缓冲区数据播放完）
+        if (output != null) {
             try {
-                speaker.drain(); // 等待缓冲区数据播放完
-                speaker.stop();
-                speaker.close();
-                System.out.println("扬声器已关闭");
+                output.close();
+                System.out.println(output.name() + "已关闭");
             } catch (Exception ex) {
-                System.err.println("关闭扬声器失败: " + ex.getMessage());
+                System.err.println("关闭" + output.name() + "失败: " + ex.getMessage());
             }
         }
 
         // 恢复麦克风指示器为灰色
-        if (isSender && phoneUI != null) {
-            phoneUI.updateMicIndicator(false);
+        if (isSender) {
+            notifyMicActivity(false);
         }
     }
 }
\ No newline at end of file
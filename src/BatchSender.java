@@ -0,0 +1,335 @@
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 批量媒体发送调度器
+ * 一个调度线程按固定的刻（默认2毫秒）运行，把所有通话在同一刻到期的数据包集中起来一次发出，
+ * 取代每路通话一个发送线程、每个包各自睡眠唤醒一次的模型：
+ * N路通话每秒 50N 次线程唤醒变为每秒 1000/刻长 次，每次唤醒连续发送一批数据包
+ *
+ * - 周期性发送（schedule）：PacketSource 在到期的刻里生成数据包，写入调度器预分配的直接缓冲区，
+ *   到期时间用纳秒累加，不会因为刻长不整除周期而漂移；到期项保存在 TimingWheel 中
+ * - 单次发送（send）：任意线程把帧池中的帧交给调度器，在下一刻与其他数据包一起发出（如转发收到的包）
+ *
+ * 发送使用 MediaStream.send（非阻塞），同一共享端口上的多路流在一批里连续写同一个通道。
+ * 代价是每个包最多晚一个刻发出，接收端的抖动缓冲区可以吸收
+ *
+ * 关闭后不再接受新的发送和任务：send 释放帧并返回false，schedule 返回已取消的任务；
+ * 关闭时尚未发出的帧被释放，时间轮中和待加入的任务全部取消，使用方通过 Task.isCancelled() 得知
+ */
+public final class BatchSender implements Closeable, Runnable {
+    public static final int DEFAULT_TICK_MICROS = 2000;
+    // 时间轮槽数，按2毫秒的刻覆盖约0.5秒，常见的帧周期都在一圈之内
+    private static final int WHEEL_SLOTS = 256;
+    // 每批最多的数据包数，超过时在同一刻内分批发出
+    private static final int BATCH = 256;
+    private static final int MAX_PACKET = 2048;
+    // 每刻最多接受的单次发送帧数，超出时丢弃
+    private static final int PENDING = 4096;
+
+    private final long tickNanos;
+    private final TimingWheel wheel;
+    private final long origin;
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    // 调度线程私有：本批的数据包
+    private final ByteBuffer[] buffers = new ByteBuffer[BATCH];
+    private final MediaStream[] targets = new MediaStream[BATCH];
+    private final Frame[] frames = new Frame[BATCH];
+    private int batched;
+
+    // 其他线程提交的新任务和单次发送的帧，在调度线程中取走（双缓冲，加锁只为交换）
+    private final Object pendingLock = new Object();
+    private Task[] newTasks = new Task[16];
+    private int newTaskCount;
+    private MediaStream[] pendingStreams = new MediaStream[PENDING];
+    private Frame[] pendingFrames = new Frame[PENDING];
+    private int pendingCount;
+    private MediaStream[] drainStreams = new MediaStream[PENDING];
+    private Frame[] drainFrames = new Frame[PENDING];
+
+    // 统计（单写者：调度线程）
+    private volatile long ticks, packets, batches, lateTicks, sendDrops;
+    private volatile int maxBatch;
+
+    /**
+     * 周期性发送任务
+     */
+    public final class Task extends TimingWheel.Timeout {
+        private final MediaStream stream;
+        private final PacketSource source;
+        private final long periodNanos;
+        private long dueNanos;
+        private volatile boolean cancelled;
+
+        Task(MediaStream stream, PacketSource source, long periodNanos, long dueNanos) {
+            this.stream = stream;
+            this.source = source;
+            this.periodNanos = periodNanos;
+            this.dueNanos = dueNanos;
+        }
+
+        /**
+         * 停止发送（在下一次到期时移出时间轮）
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * 使用默认刻长，立即在媒体执行器上启动调度线程
+     */
+    public BatchSender() {
+        this(DEFAULT_TICK_MICROS);
+    }
+
+    /**
+     * 构造函数，立即在媒体执行器上启动调度线程
+     * @param tickMicros 刻长（微秒），越长每批的数据包越多，发送时刻的误差也越大
+     */
+    public BatchSender(int tickMicros) {
+        this.tickNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(100, tickMicros));
+        this.origin = System.nanoTime();
+        this.wheel = new TimingWheel(WHEEL_SLOTS, 0);
+        for (int i = 0; i < BATCH; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(MAX_PACKET);
+        }
+        CallExecutors.media().execute(this);
+    }
+
+    /**
+     * 周期性地向媒体流发送数据包
+     * @param stream 目标媒体流
+     * @param source 数据包源
+     * @param periodNanos 发送周期（纳秒）
+     * @param delayNanos 第一个包的延迟（纳秒），不同通话错开可以把负载分散到不同的刻
+     * @return 任务，用 cancel() 停止；调度器已关闭时返回已取消的任务
+     */
+    public Task schedule(MediaStream stream, PacketSource source, long periodNanos, long delayNanos) {
+        Task task = new Task(stream, source, periodNanos, System.nanoTime() + delayNanos);
+        synchronized (pendingLock) {
+            if (!running) {
+                task.cancelled = true;
+                return task;
+            }
+            if (newTaskCount == newTasks.length) {
+                Task[] grown = new Task[newTasks.length * 2];
+                System.arraycopy(newTasks, 0, grown, 0, newTaskCount);
+                newTasks = grown;
+            }
+            newTasks[newTaskCount++] = task;
+        }
+        return task;
+    }
+
+    /**
+     * 在下一刻发送一个帧（任意线程调用）
+     * @param stream 目标媒体流
+     * @param frame 数据包（position 到 limit），引用归调度器所有，发送后释放
+     * @return false表示调度器已关闭或待发送的帧已满（本刻内提交过多），帧已释放
+     */
+    public boolean send(MediaStream stream, Frame frame) {
+        synchronized (pendingLock) {
+            // 调度线程持有同一把锁做关闭后的清理，这里看到 running 为true时提交的帧一定会被发出或释放
+            if (running && pendingCount < pendingFrames.length) {
+                pendingStreams[pendingCount] = stream;
+                pendingFrames[pendingCount++] = frame;
+                return true;
+            }
+        }
+        frame.release();
+        return false;
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        Thread.currentThread().setName("media-batch-sender");
+        long tick = 0;
+        while (running) {
+            long due = origin + tick * tickNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue; // 可能提前醒来，重新检查
+            }
+            if (wait < -tickNanos) {
+                lateTicks++;
+            }
+            runTick();
+            tick++;
+        }
+        // 关闭时归还未发送的帧，取消还没加入时间轮的任务；此后 send 和 schedule 都不再接受
+        synchronized (pendingLock) {
+            for (int i = 0; i < pendingCount; i++) {
+                pendingFrames[i].release();
+                pendingFrames[i] = null;
+            }
+            pendingCount = 0;
+            for (int i = 0; i < newTaskCount; i++) {
+                newTasks[i].cancelled = true;
+                newTasks[i] = null;
+            }
+            newTaskCount = 0;
+        }
+        for (TimingWheel.Timeout t = wheel.drain(); t != null; t = TimingWheel.next(t)) {
+            ((Task) t).cancelled = true;
+        }
+    }
+
+    private void runTick() {
+        ticks++;
+        takePending();
+
+        // 到期的周期任务生成数据包，然后重新放入时间轮
+        TimingWheel.Timeout t = wheel.advance();
+        while (t != null) {
+            TimingWheel.Timeout next = TimingWheel.next(t);
+            Task task = (Task) t;
+            if (!task.cancelled && !task.stream.isClosed()) {
+                ByteBuffer buffer = buffers[batched];
+                buffer.clear();
+                if (task.source.nextPacket(buffer)) {
+                    buffer.flip();
+                    add(task.stream, buffer, null);
+                    task.dueNanos += task.periodNanos;
+                    wheel.schedule(task, tickOf(task.dueNanos));
+                } else {
+                    task.cancelled = true;
+                }
+            }
+            t = next;
+        }
+        flush();
+    }
+
+    /**
+     * 取走其他线程提交的任务和帧
+     */
+    private void takePending() {
+        int frameCount;
+        synchronized (pendingLock) {
+            for (int i = 0; i < newTaskCount; i++) {
+                Task task = newTasks[i];
+                newTasks[i] = null;
+                wheel.schedule(task, tickOf(task.dueNanos));
+            }
+            newTaskCount = 0;
+            // 交换缓冲区，锁外发送
+            MediaStream[] streams = pendingStreams;
+            Frame[] pending = pendingFrames;
+            pendingStreams = drainStreams;
+            pendingFrames = drainFrames;
+            drainStreams = streams;
+            drainFrames = pending;
+            frameCount = pendingCount;
+            pendingCount = 0;
+        }
+        for (int i = 0; i < frameCount; i++) {
+            add(drainStreams[i], drainFrames[i].buffer(), drainFrames[i]);
+            drainStreams[i] = null;
+            drainFrames[i] = null;
+        }
+    }
+
+    private void add(MediaStream stream, ByteBuffer packet, Frame frame) {
+        targets[batched] = stream;
+        frames[batched] = frame;
+        if (frame == null) {
+            buffers[batched] = packet;
+        }
+        batched++;
+        if (batched == BATCH) {
+            flush();
+        }
+    }
+
+    /**
+     * 连续发出本批的所有数据包
+     */
+    private void flush() {
+        if (batched == 0) {
+            return;
+        }
+        for (int i = 0; i < batched; i++) {
+            Frame frame = frames[i];
+            ByteBuffer packet = frame != null ? frame.buffer() : buffers[i];
+            if (!targets[i].send(packet)) {
+                sendDrops++;
+            }
+            if (frame != null) {
+                frame.release();
+                frames[i] = null;
+            }
+            targets[i] = null;
+        }
+        packets += batched;
+        batches++;
+        if (batched > maxBatch) {
+            maxBatch = batched;
+        }
+        batched = 0;
+    }
+
+    private long tickOf(long nanos) {
+        // 向上取整：不早于到期时间发送
+        return Math.max(0, (nanos - origin + tickNanos - 1) / tickNanos);
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * 发出的批数（每批对应一次唤醒中连续的一组发送）
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * 调度线程落后超过一刻的次数，是机器过载的信号
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    public long getSendDrops() {
+        return sendDrops;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * 停止调度线程，未发送的帧被释放，所有任务被取消
+     */
+    @Override
+    public void close() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchSender[tick=%dus ticks=%d packets=%d batches=%d avg=%.1f max=%d late=%d drops=%d]",
+                tickNanos / 1000, ticks, packets, batches, batches == 0 ? 0.0 : (double) packets / batches,
+                maxBatch, lateTicks, sendDrops);
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 二进制信令编解码（与文本信令并存，服务端按连接的第一个字节自动识别）
+ * 消息内容与 SignalingMessage 相同，协商逻辑完全复用；区别在于按长度分帧、不需要逐行解析，
+ * 并且每条消息带有通道号，一条TCP连接上可以同时进行多路通话的信令（见 SignalingConnection）
+ *
+ * 拨号方建立连接后先发送5字节前导：0x00 'I' 'P' 'S' 版本号，文本信令的第一个字节总是可打印字符，不会与之混淆。
+ * 之后每条消息为一帧（网络字节序）：
+ *   长度(2) 类型(1) 通道号(4) 参数个数(1) { 键长度(1) 键 值长度(2) 值 }...
+ * 长度为其后的字节数，键和值为UTF-8；通道号0留给连接级消息（心跳 PING/PONG）
+ *
+ * 写入可以由多个线程同时调用（整帧加锁），读取只由连接的读取线程调用
+ */
+public final class BinarySignaling {
+    // 连接前导
+    public static final int VERSION = 1;
+    static final byte[] PREFACE = {0, 'I', 'P', 'S', VERSION};
+
+    // 消息类型，下标即类型编号
+    private static final String[] TYPES = {null, SignalingMessage.DIAL, SignalingMessage.ACCEPT,
+            SignalingMessage.REJECT, SignalingMessage.HANGUP, SignalingMessage.PING, SignalingMessage.PONG};
+    // 帧头：类型(1) + 通道号(4) + 参数个数(1)
+    private static final int HEADER_SIZE = 6;
+    private static final int MAX_FRAME = 0xFFFF;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(256);
+    private final DataOutputStream body = new DataOutputStream(scratch);
+    private byte[] frame = new byte[256];
+    private int channel; // 最近读到的消息的通道号
+
+    /**
+     * 构造函数
+     * @param in 输入流（前导之后）
+     * @param out 输出流（应带缓冲，每帧写完后刷新）
+     */
+    public BinarySignaling(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(in);
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * 发送连接前导（拨号方在第一条消息之前调用一次）
+     */
+    public synchronized void writePreface() throws IOException {
+        out.write(PREFACE);
+    }
+
+    /**
+     * 读取并校验连接前导（服务端调用）
+     * @throws IOException 前导不正确或版本不支持时抛出
+     */
+    public void readPreface() throws IOException {
+        byte[] preface = new byte[PREFACE.length];
+        in.readFully(preface);
+        for (int i = 0; i < PREFACE.length - 1; i++) {
+            if (preface[i] != PREFACE[i]) {
+                throw new IOException("不是二进制信令连接");
+            }
+        }
+        if (preface[PREFACE.length - 1] != VERSION) {
+            throw new IOException("不支持的二进制信令版本: " + preface[PREFACE.length - 1]);
+        }
+    }
+
+    /**
+     * 发送一条消息并刷新
+     * @param channel 通道号
+     * @param message 消息（命令必须是 TYPES 表中的一种：DIAL/ACCEPT/REJECT/HANGUP/PING/PONG）
+     * @throws IOException 写入失败或消息过长时抛出
+     */
+    public synchronized void write(int channel, SignalingMessage message) throws IOException {
+        int type = typeOf(message.getCommand());
+        Map<String, String> params = message.getParams();
+        scratch.reset();
+        body.writeByte(type);
+        body.writeInt(channel);
+        body.writeByte(params.size());
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            byte[] key = param.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = param.getValue().getBytes(StandardCharsets.UTF_8);
+            if (key.length > 0xFF || value.length > 0xFFFF) {
+                throw new IOException("信令参数过长: " + param.getKey());
+            }
+            body.writeByte(key.length);
+            body.write(key);
+            body.writeShort(value.length);
+            body.write(value);
+        }
+        if (params.size() > 0xFF || scratch.size() > MAX_FRAME) {
+            throw new IOException("信令消息过长");
+        }
+        out.writeShort(scratch.size());
+        scratch.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * 读取下一条消息（阻塞）
+     * @return 消息，连接正常关闭时返回null；未知类型的消息命令为 "#类型号"，由调用方忽略
+     * @throws IOException 读取失败或帧格式错误时抛出
+     */
+    public SignalingMessage read() throws IOException {
+        int length;
+        try {
+            length = in.readUnsignedShort();
+        } catch (EOFException ex) {
+            return null;
+        }
+        if (length < HEADER_SIZE) {
+            throw new IOException("信令帧格式错误");
+        }
+        if (frame.length < length) {
+            frame = new byte[MAX_FRAME];
+        }
+        in.readFully(frame, 0, length);
+
+        int type = frame[0] & 0xFF;
+        channel = ((frame[1] & 0xFF) << 24) | ((frame[2] & 0xFF) << 16) | ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+        int count = frame[5] & 0xFF;
+        SignalingMessage message = new SignalingMessage(
+                type > 0 && type < TYPES.length ? TYPES[type] : "#" + type);
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (pos + 1 > length) {
+                throw new IOException("信令帧格式错误");
+            }
+            int keyLength = frame[pos++] & 0xFF;
+            if (pos + keyLength + 2 > length) {
+                throw new IOException("信令帧格式错误");
+            }
+            String key = new String(frame, pos, keyLength, StandardCharsets.UTF_8);
+            pos += keyLength;
+            int valueLength = ((frame[pos] & 0xFF) << 8) | (frame[pos + 1] & 0xFF);
+            pos += 2;
+            if (pos + valueLength > length) {
+                throw new IOException("信令帧格式错误");
+            }
+            message.with(key, new String(frame, pos, valueLength, StandardCharsets.UTF_8));
+            pos += valueLength;
+        }
+        return message;
+    }
+
+    /**
+     * 最近一次 read() 读到的消息的通道号
+     */
+    public int channel() {
+        return channel;
+    }
+
+    private static int typeOf(String command) throws IOException {
+        for (int i = 1; i < TYPES.length; i++) {
+            if (TYPES[i].equals(command)) {
+                return i;
+            }
+        }
+        throw new IOException("二进制信令不支持的命令: " + command);
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 通话相关任务的执行器
+ * 信令和媒体任务都通过这里提交，不再直接 new Thread
+ *
+ * 信令任务大部分时间阻塞在 readLine/accept 上，默认使用虚拟线程，阻塞时不占用系统线程；
+ * 媒体任务默认使用平台线程，因为声卡读写是本地方法调用，会把虚拟线程固定在载体线程上。
+ * 可以通过系统属性切换：
+ *   -Dipphone.signalingThreads=platform|virtual
+ *   -Dipphone.mediaThreads=platform|virtual
+ */
+public final class CallExecutors {
+    private static final ExecutorService SIGNALING =
+            create("signaling-", System.getProperty("ipphone.signalingThreads", "virtual"));
+    private static final ExecutorService MEDIA =
+            create("media-", System.getProperty("ipphone.mediaThreads", "platform"));
+
+    private CallExecutors() {
+    }
+
+    /**
+     * 信令任务执行器（接受连接、拨号、消息监听）
+     */
+    public static ExecutorService signaling() {
+        return SIGNALING;
+    }
+
+    /**
+     * 媒体任务执行器（采集发送、接收、播放）
+     */
+    public static ExecutorService media() {
+        return MEDIA;
+    }
+
+    /**
+     * 创建每个任务一个线程的执行器
+     * @param prefix 线程名前缀
+     * @param kind virtual 或 platform
+     */
+    private static ExecutorService create(String prefix, String kind) {
+        ThreadFactory factory;
+        if ("virtual".equalsIgnoreCase(kind)) {
+            factory = Thread.ofVirtual().name(prefix, 0).factory();
+        } else {
+            // 平台线程设为守护线程，不阻止程序退出
+            factory = Thread.ofPlatform().name(prefix, 0).daemon(true).factory();
+        }
+        return Executors.newThreadPerTaskExecutor(factory);
+    }
+}
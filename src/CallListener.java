@@ -0,0 +1,29 @@
+/**
+ * 通话事件回调
+ * 由 CallManager 的信令线程调用，实现类需要自行处理线程安全
+ */
+public interface CallListener {
+    /**
+     * 收到来电，决定是否接听
+     * @param session 来电会话（尚未应答）
+     * @return true接听，false拒绝
+     */
+    default boolean onIncomingCall(CallSession session) {
+        return true;
+    }
+
+    /**
+     * 通话已建立（编解码器和媒体端口已协商）
+     * @param session 通话会话
+     */
+    default void onCallStarted(CallSession session) {
+    }
+
+    /**
+     * 通话已结束
+     * @param session 通话会话
+     * @param reason 结束原因
+     */
+    default void onCallEnded(CallSession session, String reason) {
+    }
+}
@@ -0,0 +1,537 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多路通话管理引擎（不依赖Swing）
+ * 在一个TCP端口上接受任意数量的来电，也可以同时发起多路去电；
+ * 每路通话由独立的 CallSession 保存信令和媒体状态
+ *
+ * 支持两种信令，监听端口按连接的第一个字节自动识别：
+ *   文本信令：每路通话一条TCP连接，逐行收发（兼容旧版本）
+ *   二进制信令：同一对端的通话共用一条持久连接，按通道号多路复用，拨号可以流水线发出（见 SignalingConnection）
+ */
+public final class CallManager implements Closeable {
+    // 等待对方DIAL/ACCEPT的超时时间（毫秒）
+    private static final int HANDSHAKE_TIMEOUT = 10000;
+    // 去电连接超时（毫秒）
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private final String preferredCodec; // 本端首选编解码器
+    private final int frameMillis;       // 本端帧时长
+    private final CallListener listener;
+
+    // 当前所有会话（含正在建立的）
+    private final ConcurrentHashMap<Long, CallSession> calls = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    // 是否为每路通话打开本机音频设备，以及设备的创建方式
+    private volatile boolean localAudio = false;
+    private volatile AudioDevices audioDevices = AudioDevices.SOUND_CARD;
+    // 是否提供/接受冗余编码（RED）
+    private volatile boolean fec = false;
+    // 录音目录，null表示不录音
+    private volatile Path recordingDirectory;
+    // 媒体端口分配
+    private volatile MediaPortAllocator mediaPorts = new MediaPortAllocator();
+    // 去电是否使用二进制信令
+    private volatile boolean binarySignaling = false;
+
+    // 二进制信令连接的复用和所有信令连接的心跳
+    private final SignalingPool signalingPool;
+
+    // 监听服务器
+    private ServerSocket serverSocket;
+    private volatile boolean running = false;
+
+    /**
+     * 构造函数
+     * @param preferredCodec 首选编解码器
+     * @param frameMillis 每帧时长（毫秒）
+     * @param listener 通话事件回调
+     */
+    public CallManager(String preferredCodec, int frameMillis, CallListener listener) {
+        if (Codecs.create(preferredCodec) == null) {
+            throw new IllegalArgumentException("不支持的编解码器: " + preferredCodec);
+        }
+        if (!AudioThread.isValidFrameMillis(frameMillis)) {
+            throw new IllegalArgumentException("不支持的帧时长: " + frameMillis + "ms");
+        }
+        this.preferredCodec = preferredCodec;
+        this.frameMillis = frameMillis;
+        this.listener = listener != null ? listener : new CallListener() { };
+        // 心跳任务会回调本对象，所有字段就绪后才启动；参数不合法时不会留下心跳任务
+        this.signalingPool = new SignalingPool(this, CONNECT_TIMEOUT);
+        signalingPool.start();
+    }
+
+    /**
+     * 设置是否为每路通话打开本机声卡
+     * 作为会议或录音服务端运行时应关闭，由回调自行处理媒体
+     */
+    public void setLocalAudio(boolean localAudio) {
+        this.localAudio = localAudio;
+    }
+
+    /**
+     * 设置本机音频使用的设备，默认为声卡
+     * 无声卡的服务器或负载测试中可以换成WAV文件等
+     * @param audioDevices 设备工厂
+     */
+    public void setAudioDevices(AudioDevices audioDevices) {
+        this.audioDevices = audioDevices != null ? audioDevices : AudioDevices.SOUND_CARD;
+    }
+
+    public AudioDevices getAudioDevices() {
+        return audioDevices;
+    }
+
+    /**
+     * 本端帧时长（毫秒）
+     */
+    public int getFrameMillis() {
+        return frameMillis;
+    }
+
+    /**
+     * 设置是否启用冗余编码（RFC 2198 RED）
+     * 双方都启用时每个包携带前一帧的副本，可以在丢包时恢复
+     */
+    public void setFec(boolean fec) {
+        this.fec = fec;
+    }
+
+    /**
+     * 设置录音目录：之后使用本机声卡的每路通话都录音到该目录
+     * @param directory 录音目录，null表示不录音
+     */
+    public void setRecordingDirectory(Path directory) {
+        this.recordingDirectory = directory;
+    }
+
+    public Path getRecordingDirectory() {
+        return recordingDirectory;
+    }
+
+    /**
+     * 设置去电是否使用二进制信令
+     * 启用后同一对端的去电共用一条持久连接，省去每路通话的TCP握手，并且可以用 dialAsync 流水线拨号；
+     * 对端需要是支持二进制信令的版本（来电总是两种都接受）
+     */
+    public void setBinarySignaling(boolean binarySignaling) {
+        this.binarySignaling = binarySignaling;
+    }
+
+    public boolean isBinarySignaling() {
+        return binarySignaling;
+    }
+
+    /**
+     * 设置媒体端口分配器（端口范围、缓冲区大小、流量类别），只影响之后建立的通话
+     */
+    public void setMediaPorts(MediaPortAllocator mediaPorts) {
+        this.mediaPorts = mediaPorts;
+    }
+
+    public MediaPortAllocator getMediaPorts() {
+        return mediaPorts;
+    }
+
+    /**
+     * 信令连接管理（心跳间隔、空闲连接保留时间、预热对端）
+     */
+    public SignalingPool getSignalingPool() {
+        return signalingPool;
+    }
+
+    /**
+     * 开始在指定TCP端口上接受来电
+     * @param port TCP端口，0表示由系统分配
+     * @throws IOException 端口无法绑定时抛出
+     */
+    public synchronized void listen(int port) throws IOException {
+        if (running) {
+            throw new IllegalStateException("已经在监听中");
+        }
+        serverSocket = new ServerSocket(port, 1024);
+        running = true;
+        CallExecutors.signaling().execute(this::acceptLoop);
+    }
+
+    /**
+     * 实际监听的TCP端口
+     */
+    public int getListenPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * 拨号，阻塞直到对方接听或拒绝
+     * @param host 对方地址
+     * @param port 对方TCP端口
+     * @return 已建立的通话
+     * @throws IOException 连接失败或对方拒绝时抛出
+     */
+    public CallSession dial(String host, int port) throws IOException {
+        if (binarySignaling) {
+            try {
+                return dialAsync(host, port).get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("拨号失败: " + cause, cause);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("拨号被中断");
+            }
+        }
+
+        Socket socket = new Socket();
+        DatagramSocket mediaSocket = null;
+        CallSession session = null;
+        MediaPortAllocator ports = mediaPorts;
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            session = new CallSession(nextId.getAndIncrement(), false, socket, socket.getInputStream(), this);
+            calls.put(session.getId(), session);
+
+            mediaSocket = ports.open();
+            session.send(dialMessage(mediaSocket));
+
+            SignalingMessage response = SignalingMessage.parse(session.in().readLine());
+            socket.setSoTimeout(0);
+            completeDial(session, response, mediaSocket, ports);
+        } catch (IOException | RuntimeException ex) {
+            if (mediaSocket != null) ports.close(mediaSocket);
+            if (session != null) {
+                session.end("拨号失败");
+            } else {
+                socket.close();
+            }
+            throw ex;
+        }
+
+        startCall(session);
+        CallExecutors.signaling().execute(session::runSignaling);
+        return session;
+    }
+
+    /**
+     * 异步拨号，对方接听后 future 完成，拒绝或失败时异常完成（原因为 IOException）
+     * 使用二进制信令时只在首次连接对端时阻塞到TCP连接建立，之后立即返回，
+     * 一个线程可以连续发出大量拨号，应答到达后在信令执行器上完成；文本信令时在信令执行器上调用 dial
+     * @param host 对方地址
+     * @param port 对方TCP端口
+     */
+    public CompletableFuture<CallSession> dialAsync(String host, int port) {
+        if (!binarySignaling) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return dial(host, port);
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, CallExecutors.signaling());
+        }
+
+        CallSession session = null;
+        DatagramSocket mediaSocket = null;
+        MediaPortAllocator ports = mediaPorts;
+        try {
+            SignalingConnection connection = signalingPool.get(host, port);
+            int channel = connection.nextChannel();
+            try {
+                session = new CallSession(nextId.getAndIncrement(), false, connection, channel, this);
+                connection.register(channel, session);
+            } finally {
+                connection.unclaim(); // 通道已登记，连接不再是空闲的
+            }
+            calls.put(session.getId(), session);
+
+            mediaSocket = ports.open();
+            CallSession dialed = session;
+            DatagramSocket media = mediaSocket;
+            return connection.request(channel, dialMessage(mediaSocket))
+                    .orTimeout(HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .handleAsync((response, error) -> {
+                        try {
+                            if (error != null) {
+                                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                        ? error.getCause() : error;
+                                throw cause instanceof TimeoutException ? new IOException("等待应答超时")
+                                        : cause instanceof IOException ? (IOException) cause
+                                        : new IOException("拨号失败: " + cause, cause);
+                            }
+                            completeDial(dialed, response, media, ports);
+                        } catch (IOException | RuntimeException ex) {
+                            ports.close(media);
+                            if (response == null || !response.is(SignalingMessage.REJECT)) {
+                                // 超时或本端放弃：对方可能已经（或稍后）接听，通知它结束，否则共享连接上的通话无人结束
+                                dialed.send(new SignalingMessage(SignalingMessage.HANGUP));
+                            }
+                            dialed.end("拨号失败");
+                            throw new CompletionException(ex);
+                        }
+                        startCall(dialed);
+                        return dialed;
+                    }, CallExecutors.signaling());
+        } catch (IOException | RuntimeException ex) {
+            if (mediaSocket != null) ports.close(mediaSocket);
+            if (session != null) session.end("拨号失败");
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * 本端的拨号请求
+     */
+    private SignalingMessage dialMessage(DatagramSocket mediaSocket) {
+        return new SignalingMessage(SignalingMessage.DIAL)
+                .with("codecs", Codecs.offer(preferredCodec))
+                .with("port", String.valueOf(mediaSocket.getLocalPort()))
+                .with("fec", fec ? RedundantEncoding.NAME : "none");
+    }
+
+    /**
+     * 处理对方的应答：检查是否接听、确认编码和FEC，然后进入通话状态
+     * @throws IOException 对方拒绝或选择了不支持的编码时抛出
+     */
+    private void completeDial(CallSession session, SignalingMessage response, DatagramSocket mediaSocket,
+            MediaPortAllocator ports) throws IOException {
+        if (response == null || !response.is(SignalingMessage.ACCEPT)) {
+            String reason = response == null ? "无响应" : response.get("reason");
+            throw new IOException("对方拒绝接听" + (reason == null ? "" : ": " + reason));
+        }
+        String chosen = response.get("codec");
+        String codecName = chosen == null ? Codecs.DEFAULT : Codecs.negotiate(chosen, preferredCodec);
+        if (codecName == null) {
+            throw new IOException("对方选择了不支持的编解码器: " + chosen);
+        }
+
+        boolean useFec = RedundantEncoding.negotiate(response.get("fec"), fec);
+        // 旧版本对端不回复共同编码列表，此时不切换编码
+        String[] common = response.get("codecs") == null
+                ? new String[]{codecName} : Codecs.common(response.get("codecs"));
+
+        session.activate(codecName, common, useFec, mediaSocket, response.getInt("port", mediaSocket.getLocalPort()),
+                ports);
+    }
+
+    /**
+     * 按ID查找通话
+     */
+    public CallSession getCall(long id) {
+        return calls.get(id);
+    }
+
+    /**
+     * 当前所有通话的快照
+     */
+    public Collection<CallSession> getCalls() {
+        return Collections.unmodifiableList(new ArrayList<>(calls.values()));
+    }
+
+    /**
+     * 当前会话数（含正在建立的）
+     */
+    public int getCallCount() {
+        return calls.size();
+    }
+
+    /**
+     * 停止监听并挂断所有通话
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                try {
+                    serverSocket.close();
+                } catch (IOException ignored) {
+                    // 关闭时的异常可以忽略
+                }
+            }
+        }
+        for (CallSession session : calls.values()) {
+            session.hangup();
+        }
+        signalingPool.close();
+    }
+
+    /**
+     * 会话结束时由 CallSession 回调
+     */
+    void sessionEnded(CallSession session, String reason) {
+        if (calls.remove(session.getId()) != null) {
+            listener.onCallEnded(session, reason);
+        }
+    }
+
+    /**
+     * 接受来电的循环，每个连接交给独立的信令任务处理
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                CallExecutors.signaling().execute(() -> handleIncoming(socket));
+            } catch (IOException ex) {
+                if (running) {
+                    System.err.println("接受来电失败: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 二进制信令连接关闭时由 SignalingConnection 回调
+     */
+    void connectionClosed(SignalingConnection connection) {
+        signalingPool.removed(connection);
+    }
+
+    /**
+     * 处理一个来电连接：按第一个字节识别信令格式
+     * 二进制信令在本任务中运行连接的读取循环；文本信令读取DIAL、协商参数、应答，然后进入信令循环
+     */
+    private void handleIncoming(Socket socket) {
+        CallSession session;
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            BufferedInputStream input = new BufferedInputStream(socket.getInputStream());
+            input.mark(1);
+            int first = input.read();
+            input.reset();
+            if (first == BinarySignaling.PREFACE[0]) {
+                SignalingConnection connection = SignalingConnection.accept(socket, input, this);
+                signalingPool.addIncoming(connection);
+                if (!running) {
+                    connection.close();
+                    return;
+                }
+                connection.readLoop();
+                return;
+            }
+            if (first < 0) {
+                throw new EOFException();
+            }
+            session = new CallSession(nextId.getAndIncrement(), true, socket, input, this);
+        } catch (IOException ex) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 关闭时的异常可以忽略
+            }
+            return;
+        }
+        calls.put(session.getId(), session);
+
+        try {
+            SignalingMessage msg = SignalingMessage.parse(session.in().readLine());
+            if (msg == null || !msg.is(SignalingMessage.DIAL)) {
+                session.end("无效的拨号请求");
+                return;
+            }
+            if (!answer(session, msg)) {
+                return;
+            }
+            socket.setSoTimeout(0);
+        } catch (IOException ex) {
+            session.end("信令交换失败");
+            return;
+        }
+
+        startCall(session);
+        session.runSignaling();
+    }
+
+    /**
+     * 处理二进制信令连接上的一个DIAL（由 SignalingConnection 提交到信令执行器）
+     */
+    void handleDial(SignalingConnection connection, int channel, SignalingMessage msg) {
+        CallSession session = new CallSession(nextId.getAndIncrement(), true, connection, channel, this);
+        if (!connection.register(channel, session)) {
+            return; // 重复的通道号，忽略
+        }
+        calls.put(session.getId(), session);
+        try {
+            if (!answer(session, msg)) {
+                return;
+            }
+        } catch (IOException ex) {
+            session.end("信令交换失败");
+            return;
+        }
+        startCall(session);
+    }
+
+    /**
+     * 应答一个DIAL：协商编码、询问监听器，接听时打开媒体端口、进入通话状态并回复ACCEPT，否则回复REJECT并结束会话
+     * @return true表示已接听
+     * @throws IOException 媒体端口无法初始化或会话已结束时抛出
+     */
+    private boolean answer(CallSession session, SignalingMessage msg) throws IOException {
+        String codecName = Codecs.negotiate(msg.get("codecs"), preferredCodec);
+        if (codecName == null) {
+            session.send(new SignalingMessage(SignalingMessage.REJECT).with("reason", "codec"));
+            session.end("没有共同的编解码器");
+            return false;
+        }
+        if (!listener.onIncomingCall(session)) {
+            session.send(new SignalingMessage(SignalingMessage.REJECT).with("reason", "busy"));
+            session.end("拒绝接听");
+            return false;
+        }
+
+        // 每路通话绑定独立的媒体端口，通过ACCEPT告知对方
+        // 对方提供RED且本端启用时才使用
+        MediaPortAllocator ports = mediaPorts;
+        DatagramSocket mediaSocket;
+        try {
+            mediaSocket = ports.open();
+        } catch (IOException ex) {
+            session.send(new SignalingMessage(SignalingMessage.REJECT).with("reason", "ports"));
+            session.end("媒体端口已用尽");
+            return false;
+        }
+        boolean useFec = RedundantEncoding.negotiate(msg.get("fec"), fec);
+        String[] common = Codecs.common(msg.get("codecs"));
+        try {
+            session.activate(codecName, common, useFec, mediaSocket, msg.getInt("port", mediaSocket.getLocalPort()),
+                    ports);
+        } catch (IOException ex) {
+            ports.close(mediaSocket);
+            throw ex;
+        }
+        session.send(new SignalingMessage(SignalingMessage.ACCEPT)
+                .with("codec", codecName)
+                .with("codecs", String.join(",", common))
+                .with("port", String.valueOf(mediaSocket.getLocalPort()))
+                .with("fec", useFec ? RedundantEncoding.NAME : "none"));
+        return session.getState() == CallSession.State.ACTIVE;
+    }
+
+    /**
+     * 通话建立后的公共处理
+     */
+    private void startCall(CallSession session) {
+        listener.onCallStarted(session);
+        if (localAudio) {
+            session.startLocalAudio(frameMillis, null);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/**
+ * 一路通话的媒体质量指标
+ * 发送计数由发送线程更新，接收统计由接收线程更新，缓冲深度由播放线程更新；
+ * 每组字段只有一个写线程，读取方（界面、管理接口）无需加锁即可随时读取
+ *
+ * 丢包率和到达间隔抖动按 RFC 3550 附录 A.3/A.8 计算，
+ * 通过RTCP报告交换后还能得到对方的接收统计和往返时间（RTT），
+ * 通话质量按 ITU-T G.107 E-model 的简化形式估算 R 值和 MOS
+ */
+public class CallMetrics {
+    // E-model 基本信噪比参数（默认值下的 R0 - Is）
+    private static final double R_BASE = 93.2;
+    // 丢包隐藏下的抗丢包因子（G.113 附录I，G.711 带PLC）
+    private static final double BPL_WITH_PLC = 25.1;
+
+    private final String codecName;
+    private final int clockRate;    // 媒体时钟频率（Hz）
+    private final int frameMillis;  // 本端打包时长（毫秒）
+    private final double ie;        // 编码器的设备损伤因子
+    private final double bpl;       // 编码器的抗丢包因子
+
+    // 发送统计（发送线程写）
+    private volatile long packetsSent;
+    private volatile long bytesSent;
+    private volatile int localSsrc;
+    private long priorExpected;            // 上次报告时的应收包数
+    private long priorReceived;            // 上次报告时的实收包数
+    private long reportedGeneration;       // 上次报告时对方媒体源的代数
+
+    // 接收统计（接收线程写）
+    private volatile long packetsReceived;
+    private volatile long streamReceived;  // 当前对方媒体源的实收包数（丢包按源统计）
+    private volatile long sourceGeneration; // 对方媒体源变化的次数，发送线程据此重置报告间隔
+    private volatile long bytesReceived;
+    private volatile long reordered;
+    private volatile double jitter;        // 到达间隔抖动（媒体时钟单位）
+    private volatile long expected;        // 按序号范围应收到的包数
+    private volatile long extendedMaxSeq;  // 收到的最大扩展序号
+    private volatile int remoteSsrc;
+    private boolean receiving = false;
+    private long firstArrivalNanos;
+    private int baseSeq;
+    private int maxSeq;
+    private int cycles;
+    private long lastTransit;
+
+    // 对方的RTCP报告（接收线程写）
+    private volatile long lastSrNtp;       // 最近收到的对方SR的NTP中间32位
+    private volatile long lastSrArrivalNanos;
+    private volatile double roundTripMillis = -1;
+    private volatile double remoteLossPercent;
+    private volatile long remoteLost;
+    private volatile double remoteJitterMillis;
+    private volatile long remoteReports;   // 收到的关于本端媒体的报告数
+
+    // 播放统计（播放线程写）
+    private volatile int bufferDepth;      // 抖动缓冲深度（帧）
+    private volatile long recovered;       // FEC恢复的帧数
+    private volatile double clockDriftPpm; // 对方采集时钟相对本端播放时钟的偏差（ppm）
+
+    // 录音统计：写入跟不上而丢弃的帧数（本端方向由发送线程写，对方方向由播放线程写）
+    private volatile long localRecordingDrops;
+    private volatile long remoteRecordingDrops;
+
+    /**
+     * 构造函数
+     * @param codecName 编解码器名称
+     * @param clockRate 媒体时钟频率（Hz）
+     * @param frameMillis 每帧时长（毫秒）
+     */
+    public CallMetrics(String codecName, int clockRate, int frameMillis) {
+        this.codecName = codecName;
+        this.clockRate = clockRate;
+        this.frameMillis = frameMillis;
+        this.ie = equipmentImpairment(codecName);
+        this.bpl = BPL_WITH_PLC;
+    }
+
+    /**
+     * 记录发送了一个数据包（只能由发送线程调用）
+     * @param bytes 数据包长度
+     */
+    public void onPacketSent(int bytes) {
+        packetsSent++;
+        bytesSent += bytes;
+    }
+
+    /**
+     * 记录收到了一个合法的数据包（只能由接收线程调用）
+     * @param sequence 16位RTP序号
+     * @param timestamp RTP时间戳
+     * @param bytes 数据包长度
+     * @param arrivalNanos 到达时间（System.nanoTime）
+     */
+    public void onPacketReceived(int sequence, long timestamp, int bytes, long arrivalNanos) {
+        packetsReceived++;
+        streamReceived++;
+        bytesReceived += bytes;
+
+        if (!receiving) {
+            firstArrivalNanos = arrivalNanos;
+        }
+        // 到达时间换算到媒体时钟，相对传输时间之差的平滑绝对值即为抖动（RFC 3550 A.8）
+        long arrival = (arrivalNanos - firstArrivalNanos) * clockRate / 1_000_000_000L;
+        long transit = arrival - timestamp;
+        if (!receiving) {
+            receiving = true;
+            baseSeq = sequence;
+            maxSeq = sequence;
+            lastTransit = transit;
+            expected = 1;
+            extendedMaxSeq = sequence;
+            return;
+        }
+        int d = Math.abs((int) (transit - lastTransit)); // 32位时间戳回绕
+        lastTransit = transit;
+        jitter += (d - jitter) / 16;
+
+        // 扩展序号：回绕时增加周期计数，比最大序号小的包是乱序到达（RFC 3550 A.1 的简化）
+        int delta = JitterBuffer.seqDiff(sequence, maxSeq);
+        if (delta > 0) {
+            if (sequence < maxSeq) {
+                cycles += 1 << 16;
+            }
+            maxSeq = sequence;
+        } else if (delta < 0) {
+            reordered++;
+        }
+        expected = cycles + maxSeq - baseSeq + 1L;
+        extendedMaxSeq = cycles + maxSeq;
+    }
+
+    /**
+     * 设置本端发送媒体使用的SSRC（由发送线程调用）
+     */
+    public void setLocalSsrc(int ssrc) {
+        this.localSsrc = ssrc;
+    }
+
+    /**
+     * 设置对方的SSRC（由接收线程在锁定对方源时调用）
+     * 对方换了媒体源（如重启后序号和时间戳都换了随机起点）时，序号范围、丢包和抖动按新的源重新统计，
+     * 否则应收包数和传输时间基准仍按旧的源计算，错误的丢包率会经RTCP报告影响对方的码率控制
+     */
+    public void setRemoteSsrc(int ssrc) {
+        if (receiving && ssrc != remoteSsrc) {
+            receiving = false;
+            streamReceived = 0;
+            expected = 0;
+            extendedMaxSeq = 0;
+            cycles = 0;
+            jitter = 0;
+            lastSrNtp = 0; // 旧的源的SR不能用于计算往返时间
+            sourceGeneration++;
+        }
+        this.remoteSsrc = ssrc;
+    }
+
+    /**
+     * 填写一个要发送的RTCP报告（只能由发送线程调用）
+     * 发送过媒体时写SR，否则写RR；收到过对方的媒体时附带报告块
+     * @param packet 报告
+     * @param rtpTimestamp 当前的RTP时间戳
+     * @param nowNanos 当前时间（System.nanoTime）
+     */
+    public void fillReport(RtcpPacket packet, long rtpTimestamp, long nowNanos) {
+        if (packetsSent > 0) {
+            packet.setSenderInfo(localSsrc, RtcpPacket.ntpNow(), rtpTimestamp, packetsSent, bytesSent);
+        } else {
+            packet.setReceiverOnly(localSsrc);
+        }
+
+        long generation = sourceGeneration;
+        if (generation != reportedGeneration) {
+            // 对方换了媒体源，报告间隔从新的源开始计算
+            reportedGeneration = generation;
+            priorExpected = 0;
+            priorReceived = 0;
+        }
+        long exp = expected;
+        long received = streamReceived;
+        if (exp == 0) {
+            packet.clearReport();
+            return;
+        }
+        // 上次报告以来的丢包比例（RFC 3550 A.3）
+        long expectedInterval = exp - priorExpected;
+        long lostInterval = expectedInterval - (received - priorReceived);
+        priorExpected = exp;
+        priorReceived = received;
+        int fraction = expectedInterval == 0 || lostInterval <= 0 ? 0 : (int) ((lostInterval << 8) / expectedInterval);
+
+        long lsr = lastSrNtp;
+        long dlsr = lsr == 0 ? 0 : (nowNanos - lastSrArrivalNanos) * 65536 / 1_000_000_000L;
+        packet.setReport(remoteSsrc, Math.min(255, fraction), (int) (exp - received), extendedMaxSeq,
+                (long) jitter, lsr, dlsr);
+    }
+
+    /**
+     * 处理收到的RTCP报告（只能由接收线程调用）
+     * 对方的SR用于下次报告的LSR/DLSR，关于本端媒体的报告块用于计算往返时间
+     * @param packet 解析后的报告
+     * @param arrivalNanos 到达时间（System.nanoTime）
+     */
+    public void onReport(RtcpPacket packet, long arrivalNanos) {
+        if (packet.isSenderReport()) {
+            lastSrNtp = RtcpPacket.middle32(packet.getNtpTimestamp());
+            lastSrArrivalNanos = arrivalNanos;
+        }
+        if (!packet.hasReport() || packet.getReportSsrc() != localSsrc) {
+            return;
+        }
+        remoteLossPercent = packet.getFractionLost() * 100.0 / 256;
+        remoteLost = packet.getCumulativeLost();
+        remoteJitterMillis = packet.getJitter() * 1000.0 / clockRate;
+        remoteReports++;
+        if (packet.getLastSenderReport() != 0) {
+            // RTT = 到达时间 - LSR - DLSR，均为NTP中间32位（1/65536秒）
+            long now = RtcpPacket.middle32(RtcpPacket.ntpNow());
+            int rtt = (int) (now - packet.getLastSenderReport() - packet.getDelaySinceLastReport());
+            if (rtt >= 0) {
+                roundTripMillis = rtt * 1000.0 / 65536;
+            }
+        }
+    }
+
+    /**
+     * 记录抖动缓冲区的状态和时钟漂移估计（只能由播放线程调用）
+     * @param depth 当前缓冲深度（帧）
+     * @param recoveredFrames 累计由FEC恢复的帧数
+     * @param driftPpm 对方采集时钟相对本端播放时钟的偏差估计（ppm）
+     */
+    public void onPlayout(int depth, long recoveredFrames, double driftPpm) {
+        bufferDepth = depth;
+        recovered = recoveredFrames;
+        clockDriftPpm = driftPpm;
+    }
+
+    /**
+     * 记录一帧因录音写入跟不上而被丢弃（由 CallRecorder 在对应方向的媒体线程中调用）
+     * @param direction CallRecorder.LOCAL 或 CallRecorder.REMOTE
+     */
+    public void onRecordingDropped(int direction) {
+        if (direction == CallRecorder.LOCAL) {
+            localRecordingDrops++;
+        } else {
+            remoteRecordingDrops++;
+        }
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * 乱序到达的包数
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * 当前对方媒体源的网络丢包数（应收包数减实收包数，重复包可能使其为负，按0计）
+     */
+    public long getPacketsLost() {
+        return Math.max(0, expected - streamReceived);
+    }
+
+    /**
+     * 网络丢包率（百分比）
+     */
+    public double getLossPercent() {
+        long exp = expected;
+        return exp == 0 ? 0 : getPacketsLost() * 100.0 / exp;
+    }
+
+    /**
+     * FEC恢复后仍然丢失的比例（百分比），用于估算通话质量
+     */
+    public double getEffectiveLossPercent() {
+        long exp = expected;
+        return exp == 0 ? 0 : Math.max(0, getPacketsLost() - recovered) * 100.0 / exp;
+    }
+
+    /**
+     * 到达间隔抖动（毫秒）
+     */
+    public double getJitterMillis() {
+        return jitter * 1000 / clockRate;
+    }
+
+    /**
+     * 抖动缓冲深度（帧）
+     */
+    public int getBufferDepth() {
+        return bufferDepth;
+    }
+
+    /**
+     * 由FEC恢复的帧数
+     */
+    public long getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * 对方采集时钟相对本端播放时钟的偏差估计（ppm），正值表示对方快，尚无估计时为0
+     */
+    public double getClockDriftPpm() {
+        return clockDriftPpm;
+    }
+
+    /**
+     * 往返时间（毫秒），还没有收到带LSR的报告时为-1
+     */
+    public double getRoundTripMillis() {
+        return roundTripMillis;
+    }
+
+    /**
+     * 录音中丢弃的帧数（两个方向合计），大于0说明录音不完整
+     */
+    public long getRecordingDrops() {
+        return localRecordingDrops + remoteRecordingDrops;
+    }
+
+    /**
+     * 收到的关于本端媒体的报告数，每收到一个新报告加一
+     */
+    public long getRemoteReports() {
+        return remoteReports;
+    }
+
+    /**
+     * 对方报告的丢包率（百分比，最近一个报告区间）
+     */
+    public double getRemoteLossPercent() {
+        return remoteLossPercent;
+    }
+
+    /**
+     * 对方报告的累计丢包数
+     */
+    public long getRemoteLost() {
+        return remoteLost;
+    }
+
+    /**
+     * 对方报告的到达间隔抖动（毫秒）
+     */
+    public double getRemoteJitterMillis() {
+        return remoteJitterMillis;
+    }
+
+    /**
+     * 估算的单向延迟（毫秒）：打包时长、抖动缓冲延迟，已知RTT时再加上RTT的一半
+     */
+    public double getDelayMillis() {
+        double rtt = roundTripMillis;
+        return frameMillis + bufferDepth * (double) frameMillis + (rtt > 0 ? rtt / 2 : 0);
+    }
+
+    /**
+     * 按 E-model 估算的 R 值（0~100）
+     * R = R0 - Id - Ie,eff，其中 Id 为延迟损伤，Ie,eff 为编码和丢包造成的损伤
+     */
+    public double getRFactor() {
+        double d = getDelayMillis();
+        double id = 0.024 * d + (d > 177.3 ? 0.11 * (d - 177.3) : 0);
+        double ppl = getEffectiveLossPercent();
+        double ieEff = ie + (95 - ie) * ppl / (ppl + bpl);
+        return Math.max(0, Math.min(100, R_BASE - id - ieEff));
+    }
+
+    /**
+     * 由 R 值换算的平均意见分（MOS，1~4.5）
+     */
+    public double getMos() {
+        return toMos(getRFactor());
+    }
+
+    /**
+     * R 值换算为 MOS（ITU-T G.107 附录B）
+     */
+    static double toMos(double r) {
+        if (r <= 0) {
+            return 1;
+        }
+        if (r >= 100) {
+            return 4.5;
+        }
+        return 1 + 0.035 * r + r * (r - 60) * (100 - r) * 7e-6;
+    }
+
+    /**
+     * 编码器的设备损伤因子 Ie（G.113 附录I）
+     * ADPCM-WB 近似按 G.726 32kbit/s 取值
+     */
+    static double equipmentImpairment(String codecName) {
+        if (codecName == null) {
+            return 0;
+        }
+        switch (codecName) {
+            case AdpcmWbCodec.NAME:
+                return 7;
+            default:
+                return 0; // G.711 和不压缩的 L16
+        }
+    }
+
+    @Override
+    public String toString() {
+        double rtt = roundTripMillis;
+        return String.format("sent=%d recv=%d lost=%.1f%% jitter=%.1fms reorder=%d depth=%d fec=%d drift=%+.0fppm"
+                        + " rtt=%s remoteLost=%.1f%% R=%.0f MOS=%.2f",
+                packetsSent, packetsReceived, getLossPercent(), getJitterMillis(), reordered,
+                bufferDepth, recovered, clockDriftPpm, rtt < 0 ? "-" : String.format("%.0fms", rtt),
+                remoteLossPercent, getRFactor(), getMos())
+                + (getRecordingDrops() > 0 ? " recordingDrops=" + getRecordingDrops() : "");
+    }
+}
@@ -0,0 +1,504 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 通话录音
+ * 记录两个方向的PCM音频：本端（麦克风采集的每一帧，含静音抑制未发送的帧）和对方（实际播放的每一帧）
+ *
+ * 媒体线程只把帧拷贝进各自方向的 FrameRing 后立即返回，不做任何文件操作；
+ * 独立的写入线程把帧追加到内存映射的数据文件（xxx.rec），并在索引文件（xxx.rec.idx）中记录每帧的
+ * 方向、序号、时间戳和数据位置。两个文件都按块预先分配并映射，写满一块再映射下一块，结束时截断到实际长度。
+ * 环形缓冲区按能吸收的写入停顿（默认3秒，-Dipphone.recorder.bufferMillis=N 调整）和最短帧长确定大小；
+ * 写入线程被磁盘阻塞得更久时环形缓冲区会满，新帧被丢弃（导出时表现为静音），媒体线程永远不会等待磁盘。
+ * 丢弃的帧计入 CallMetrics（setMetrics），并记录在索引文件头中：
+ * 录音开始时文件头就标记为不完整，只有正常结束且没有丢帧才清除，导出不完整的录音时会给出警告
+ *
+ * 索引文件格式（大端序）：
+ *   文件头 32 字节：magic "IPRC"、版本(2)、标志(2，位0为录音不完整)、采样率(4)、帧数(4)、
+ *                   开始时间(8，Unix毫秒)、丢弃帧数(8)
+ *   每帧 24 字节：相对开始的时间(8，微秒)、数据偏移(8)、RTP时间戳(4)、序号(2)、方向(1位) + 数据长度(15位)
+ * 数据文件是按帧拼接的16位大端序单声道PCM
+ *
+ * 用法：java CallRecorder <录音.rec> <输出.wav> 导出为双声道WAV（左声道本端，右声道对方）
+ */
+public final class CallRecorder implements Closeable {
+    // 方向
+    public static final int LOCAL = 0;
+    public static final int REMOTE = 1;
+
+    private static final int MAGIC = 0x49505243; // "IPRC"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 24;
+    // 文件头标志：录音不完整（未正常结束或丢弃过帧）
+    private static final int FLAG_INCOMPLETE = 1;
+
+    // 环形缓冲区能吸收的写入停顿（毫秒）：写入线程被缺页、映射下一块、落盘阻塞这么久也不丢帧
+    private static final int BUFFER_MILLIS = Integer.getInteger("ipphone.recorder.bufferMillis", 3000);
+    // 槽位前8字节存放序号和时间戳
+    private static final int SLOT_HEADER = 8;
+    // 文件映射块大小
+    private static final long DATA_CHUNK = 8L << 20;
+    private static final long INDEX_CHUNK = 1L << 20;
+    // 写入线程的唤醒间隔（纳秒），按批写入
+    private static final long WRITER_INTERVAL_NANOS = 20_000_000L;
+    // 关闭时等待写入线程完成的时间（毫秒）
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    // 导出时时间戳超前顺序位置超过该值（毫秒）视为中断，留出静音
+    private static final int EXPORT_GAP_MILLIS = 100;
+    // 导出时每次处理的样本数
+    private static final int EXPORT_WINDOW = 8192;
+
+    private final Path path;
+    private final int sampleRate;
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private final FrameRing[] rings = new FrameRing[2];
+
+    // 写入线程状态
+    private final MappedFile data;
+    private final MappedFile index;
+    private int frames;
+    private volatile Thread writer;
+    private final CountDownLatch writerDone = new CountDownLatch(1);
+    private volatile boolean closed = false;
+    private volatile boolean failed = false;
+
+    // 统计：环形缓冲区满而丢弃的帧数（各由对应方向的媒体线程写入）
+    private volatile long localDrops, remoteDrops;
+    private volatile CallMetrics metrics;
+
+    /**
+     * 构造函数：创建录音文件并启动写入线程
+     * @param path 数据文件路径，索引文件为同名加 .idx
+     * @param sampleRate PCM采样率
+     * @param maxFrameBytes 最长一帧的PCM字节数
+     * @throws IOException 文件创建失败时抛出
+     */
+    public CallRecorder(Path path, int sampleRate, int maxFrameBytes) throws IOException {
+        this.path = path;
+        this.sampleRate = sampleRate;
+        for (int i = 0; i < rings.length; i++) {
+            rings[i] = new FrameRing(ringFrames(BUFFER_MILLIS), SLOT_HEADER + maxFrameBytes);
+        }
+        data = new MappedFile(path, DATA_CHUNK);
+        try {
+            index = new MappedFile(indexPath(path), INDEX_CHUNK);
+            // 先写入帧数为0、标记为不完整的文件头，录音异常中断时仍可读取，且不会被当作完整的录音
+            writeHeader(index.channel, 0, FLAG_INCOMPLETE, 0);
+            index.reserve(HEADER_SIZE);
+        } catch (IOException ex) {
+            data.close(0);
+            throw ex;
+        }
+        CallExecutors.media().execute(this::writeLoop);
+    }
+
+    /**
+     * 在目录中为一路通话创建录音，文件名包含开始时间和对方地址
+     * @param directory 录音目录
+     * @param remote 对方地址
+     * @param sampleRate PCM采样率
+     * @throws IOException 文件创建失败时抛出
+     */
+    public static CallRecorder create(Path directory, String remote, int sampleRate) throws IOException {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        String name = "call-" + time + "-" + remote.replaceAll("[^A-Za-z0-9.-]", "_") + ".rec";
+        return new CallRecorder(directory.resolve(name), sampleRate, AudioThread.maxFrameBytes(sampleRate));
+    }
+
+    /**
+     * 每个方向的环形缓冲区帧数：按最短帧长计算，能容纳 bufferMillis 的停顿再加一个写入间隔
+     * @param bufferMillis 能吸收的写入停顿（毫秒）
+     */
+    static int ringFrames(int bufferMillis) {
+        long millis = bufferMillis + WRITER_INTERVAL_NANOS / 1_000_000;
+        int frameMillis = AudioThread.FRAME_MILLIS_OPTIONS[0];
+        return (int) Math.max(2, (millis + frameMillis - 1) / frameMillis);
+    }
+
+    /**
+     * 设置通话质量指标，丢弃的帧通过 CallMetrics.onRecordingDropped 报告，应在开始录音前调用
+     * @param metrics 指标，可以为null
+     */
+    public void setMetrics(CallMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 录音数据文件路径
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public long getLocalDrops() {
+        return localDrops;
+    }
+
+    public long getRemoteDrops() {
+        return remoteDrops;
+    }
+
+    /**
+     * 录音是否完整：已正常结束，写入没有失败，也没有丢弃任何帧
+     */
+    public boolean isComplete() {
+        return writerDone.getCount() == 0 && !failed && localDrops == 0 && remoteDrops == 0;
+    }
+
+    /**
+     * 记录一帧PCM（不阻塞，只拷贝到环形缓冲区）
+     * 每个方向只能由一个线程调用（本端为发送线程，对方为播放线程）
+     * @param direction LOCAL 或 REMOTE
+     * @param sequence 序号（本端为RTP序号，对方为播放帧序号）
+     * @param timestamp 时间戳（本端为RTP时间戳，对方为累计播放样本数）
+     * @param pcm PCM数据
+     * @param offset 起始偏移
+     * @param length 字节数
+     * @return false表示已关闭或写入跟不上而丢弃
+     */
+    public boolean record(int direction, int sequence, long timestamp, byte[] pcm, int offset, int length) {
+        if (closed) {
+            return false;
+        }
+        FrameRing ring = rings[direction];
+        byte[] slot = ring.claim();
+        if (slot == null) {
+            if (direction == LOCAL) {
+                localDrops++;
+            } else {
+                remoteDrops++;
+            }
+            CallMetrics m = metrics;
+            if (m != null) {
+                m.onRecordingDropped(direction);
+            }
+            return false;
+        }
+        length = Math.min(length, slot.length - SLOT_HEADER);
+        slot[0] = (byte) (sequence >> 8);
+        slot[1] = (byte) sequence;
+        slot[4] = (byte) (timestamp >> 24);
+        slot[5] = (byte) (timestamp >> 16);
+        slot[6] = (byte) (timestamp >> 8);
+        slot[7] = (byte) timestamp;
+        System.arraycopy(pcm, offset, slot, SLOT_HEADER, length);
+        ring.publish(SLOT_HEADER + length, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * 停止录音：写完缓冲区中剩余的帧，更新文件头并截断文件
+     * 应在两个方向的媒体线程停止后调用；丢弃过帧时文件头保持不完整标记，用 isComplete() 查询
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Thread t = writer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        try {
+            if (!writerDone.await(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                System.err.println("录音写入未能及时完成: " + path);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 写入循环：定期取出两个方向的帧追加到文件，关闭后写完剩余的帧再结束
+     */
+    private void writeLoop() {
+        writer = Thread.currentThread();
+        try {
+            while (true) {
+                // 先读取关闭标志再写：关闭前发布的帧都会被写入
+                boolean done = closed;
+                drain(LOCAL);
+                drain(REMOTE);
+                if (done) {
+                    break;
+                }
+                LockSupport.parkNanos(this, WRITER_INTERVAL_NANOS);
+            }
+            long dropped = localDrops + remoteDrops;
+            writeHeader(index.channel, frames, dropped > 0 ? FLAG_INCOMPLETE : 0, dropped);
+        } catch (IOException ex) {
+            failed = true;
+            System.err.println("录音写入失败: " + ex.getMessage());
+        } finally {
+            data.close(data.position);
+            index.close(index.position);
+            writerDone.countDown();
+        }
+    }
+
+    /**
+     * 把一个方向环形缓冲区中的帧全部写入文件
+     */
+    private void drain(int direction) throws IOException {
+        FrameRing ring = rings[direction];
+        byte[] slot;
+        while ((slot = ring.peek()) != null) {
+            int length = ring.length() - SLOT_HEADER;
+            long offset = data.position;
+            data.reserve(length).put(slot, SLOT_HEADER, length);
+
+            ByteBuffer entry = index.reserve(ENTRY_SIZE);
+            entry.putLong((ring.time() - startNanos) / 1000);
+            entry.putLong(offset);
+            entry.put(slot, 4, 4);      // RTP时间戳
+            entry.put(slot, 0, 2);      // 序号
+            entry.putShort((short) ((direction << 15) | length));
+            frames++;
+            ring.release();
+        }
+    }
+
+    private void writeHeader(FileChannel channel, int frameCount, int flags, long dropped) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) flags)
+                .putInt(sampleRate).putInt(frameCount).putLong(startMillis).putLong(dropped).flip();
+        channel.write(header, 0);
+    }
+
+    private static Path indexPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".idx");
+    }
+
+    @Override
+    public String toString() {
+        return "CallRecorder[" + path.getFileName() + " frames=" + frames + " drops=" + (localDrops + remoteDrops)
+                + (failed ? " failed" : "") + (isComplete() ? "" : " incomplete") + "]";
+    }
+
+    /**
+     * 按块映射、只追加的文件（只在写入线程中使用）
+     */
+    private static final class MappedFile {
+        private final FileChannel channel;
+        private final long chunk;
+        private MappedByteBuffer map;
+        private long mapStart;
+        private long position;
+
+        MappedFile(Path path, long chunk) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.chunk = chunk;
+            try {
+                map(0);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * 预留 bytes 字节，返回定位到预留位置的映射缓冲区；当前块放不下时映射下一块（文件随之扩展）
+         */
+        ByteBuffer reserve(int bytes) throws IOException {
+            if (position + bytes > mapStart + chunk) {
+                map(position);
+            }
+            map.position((int) (position - mapStart));
+            position += bytes;
+            return map;
+        }
+
+        private void map(long start) throws IOException {
+            if (map != null) {
+                map.force();
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE, start, chunk);
+            mapStart = start;
+        }
+
+        /**
+         * 落盘并截断到实际长度
+         */
+        void close(long length) {
+            try {
+                if (map != null) {
+                    map.force();
+                    map = null;
+                }
+                channel.truncate(length);
+            } catch (IOException ex) {
+                System.err.println("录音文件关闭失败: " + ex.getMessage());
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 关闭时的异常可以忽略
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取录音索引文件头中的完整性标记
+     * @param recording 录音数据文件
+     * @return 不完整时返回说明（未正常结束，或丢弃的帧数），完整时返回null
+     * @throws IOException 文件读取失败或格式不正确时抛出
+     */
+    public static String checkComplete(Path recording) throws IOException {
+        try (FileChannel idx = FileChannel.open(indexPath(recording), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (idx.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("不是录音索引文件: " + indexPath(recording));
+            }
+            if ((header.getShort(6) & FLAG_INCOMPLETE) == 0) {
+                return null;
+            }
+            long dropped = header.getLong(24);
+            return dropped > 0 ? "写入跟不上，丢弃了" + dropped + "帧" : "录音未正常结束";
+        }
+    }
+
+    /**
+     * 把录音导出为双声道16位WAV（左声道本端，右声道对方）
+     * 每个方向的帧按顺序排列，时间戳明显超前时（丢帧、通话保持等）按时间对齐并在中间补静音；
+     * 导出不检查完整性，不完整的录音用 checkComplete 识别
+     * @param recording 录音数据文件
+     * @param wav 输出文件
+     * @return 导出的时长（毫秒）
+     * @throws IOException 文件读写失败或格式不正确时抛出
+     */
+    public static long exportWav(Path recording, Path wav) throws IOException {
+        try (FileChannel idx = FileChannel.open(indexPath(recording), StandardOpenOption.READ);
+             FileChannel pcm = FileChannel.open(recording, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(wav, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (idx.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("不是录音索引文件: " + indexPath(recording));
+            }
+            int rate = header.getInt(8);
+            int count = header.getInt(12);
+            if (count == 0) {
+                // 录音未正常结束，按文件内容计算帧数（预分配的部分全为0，长度为0）
+                count = (int) ((idx.size() - HEADER_SIZE) / ENTRY_SIZE);
+            }
+            ByteBuffer entries = ByteBuffer.allocate(count * ENTRY_SIZE);
+            idx.read(entries, HEADER_SIZE);
+            count = Math.min(count, entries.position() / ENTRY_SIZE);
+
+            // 第一趟：计算每帧在输出中的样本位置，同一方向内位置单调递增且互不重叠
+            long[] positions = new long[count];
+            int[][] order = new int[2][count];
+            int[] sizes = new int[2];
+            long[] cursors = {-1, -1};
+            long gap = (long) rate * EXPORT_GAP_MILLIS / 1000;
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                int lengthField = entries.getShort(i * ENTRY_SIZE + 22) & 0xFFFF;
+                int samples = (lengthField & 0x7FFF) / 2;
+                int channel = lengthField >> 15;
+                long wanted = entries.getLong(i * ENTRY_SIZE) * rate / 1_000_000L;
+                long cursor = cursors[channel];
+                long position = cursor < 0 || wanted > cursor + gap ? wanted : cursor;
+                positions[i] = position;
+                cursors[channel] = position + samples;
+                order[channel][sizes[channel]++] = i;
+                total = Math.max(total, position + samples);
+            }
+
+            writeWavHeader(out, rate, 2, total);
+
+            // 第二趟：按窗口输出，每个方向从上一个窗口停下的帧开始填入与窗口重叠的帧
+            byte[] window = new byte[EXPORT_WINDOW * 4];
+            ByteBuffer samples = ByteBuffer.wrap(window).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer frame = ByteBuffer.allocate(0x7FFF);
+            int[] next = new int[2];
+            long written = 44;
+            for (long start = 0; start < total; start += EXPORT_WINDOW) {
+                int size = (int) Math.min(EXPORT_WINDOW, total - start);
+                Arrays.fill(window, 0, size * 4, (byte) 0);
+                for (int channel = 0; channel < 2; channel++) {
+                    int[] list = order[channel];
+                    for (int k = next[channel]; k < sizes[channel] && positions[list[k]] < start + size; k++) {
+                        int i = list[k];
+                        int length = entries.getShort(i * ENTRY_SIZE + 22) & 0x7FFE;
+                        long position = positions[i];
+                        if (position + length / 2 <= start + size) {
+                            next[channel] = k + 1; // 该帧在本窗口内结束，下个窗口不再需要
+                        }
+                        frame.clear().limit(length);
+                        pcm.read(frame, entries.getLong(i * ENTRY_SIZE + 8));
+                        int from = (int) Math.max(0, start - position);
+                        int to = (int) Math.min(length / 2, start + size - position);
+                        for (int s = from; s < to; s++) {
+                            samples.putShort((int) (position + s - start) * 4 + channel * 2, frame.getShort(s * 2));
+                        }
+                    }
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(window, 0, size * 4);
+                while (chunk.hasRemaining()) {
+                    written += out.write(chunk, written);
+                }
+            }
+            return total * 1000 / rate;
+        }
+    }
+
+    /**
+     * 写入（或改写）16位PCM WAV文件头，共44字节
+     * @param out 输出文件
+     * @param rate 采样率
+     * @param channels 声道数
+     * @param frames 每个声道的样本数
+     * @throws IOException 写入失败时抛出
+     */
+    static void writeWavHeader(FileChannel out, int rate, int channels, long frames) throws IOException {
+        long dataBytes = frames * channels * 2;
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'}).putInt((int) (36 + dataBytes))
+                .put(new byte[]{'W', 'A', 'V', 'E'})
+                .put(new byte[]{'f', 'm', 't', ' '}).putInt(16)
+                .putShort((short) 1)                // PCM
+                .putShort((short) channels)
+                .putInt(rate).putInt(rate * channels * 2) // 采样率、每秒字节数
+                .putShort((short) (channels * 2)).putShort((short) 16)
+                .put(new byte[]{'d', 'a', 't', 'a'}).putInt((int) dataBytes)
+                .flip();
+        out.write(header, 0);
+    }
+
+    /**
+     * 命令行导出：java CallRecorder <录音.rec> <输出.wav>
+     * 录音不完整时照常导出，但给出警告并以状态2退出
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("用法: java CallRecorder <录音.rec> <输出.wav>");
+            System.exit(1);
+        }
+        long millis = exportWav(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("已导出 " + args[1] + "，时长 " + millis / 1000.0 + " 秒");
+        String incomplete = checkComplete(Paths.get(args[0]));
+        if (incomplete != null) {
+            System.err.println("警告: 录音不完整（" + incomplete + "），导出的音频中有用静音填补的缺口");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
+
+/**
+ * 一路通话的状态
+ * 文本信令时每个会话拥有独立的TCP连接；二进制信令时多个会话共用一条 SignalingConnection，各占一个通道。
+ * 媒体状态（UDP套接字、协商结果、音频线程）总是每个会话独立
+ */
+public class CallSession {
+    /**
+     * 会话状态
+     */
+    public enum State {
+        CONNECTING, // 信令交换中
+        ACTIVE,     // 通话中
+        ENDED       // 已结束
+    }
+
+    private final long id;
+    private final boolean incoming;     // true表示来电，false表示去电
+    private final CallManager manager;
+
+    // 信令连接：文本信令使用独立的套接字，二进制信令使用共享连接上的一个通道
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final SignalingConnection connection;
+    private final int channel;
+
+    // 媒体状态
+    private DatagramSocket mediaSocket; // 本端媒体套接字
+    private MediaPortAllocator mediaPorts; // 媒体端口的来源，结束时归还
+    private int localMediaPort = -1;    // 本端媒体端口（套接字关闭后仍可用于归还）
+    private String codecName;           // 协商好的编解码器
+    private String[] commonCodecs;      // 双方都支持的编码（通话中可以切换）
+    private boolean fec;                // 是否协商启用了冗余编码（RED）
+    private volatile CallMetrics metrics; // 媒体质量指标
+    private int remoteMediaPort;        // 对方UDP端口
+    private AudioThread audioSender, audioReceiver;
+    private CallRecorder recorder;      // 通话录音，未录音时为null
+
+    private volatile State state = State.CONNECTING;
+    private volatile boolean signaling;     // 文本信令循环是否在运行（运行后才发送心跳，不与握手消息交错）
+    private boolean heartbeatSeen;          // 对端是否发送过 PING/PONG（仅信令循环访问）
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt;
+
+    /**
+     * 文本信令会话
+     * @param input 套接字的输入流（来电时可能已经预读过第一个字节）
+     */
+    CallSession(long id, boolean incoming, Socket socket, InputStream input, CallManager manager) throws IOException {
+        this.id = id;
+        this.incoming = incoming;
+        this.socket = socket;
+        this.manager = manager;
+        this.in = new BufferedReader(new InputStreamReader(input));
+        this.out = new PrintWriter(socket.getOutputStream(), true);
+        this.connection = null;
+        this.channel = 0;
+    }
+
+    /**
+     * 二进制信令会话，由调用方在连接上登记通道
+     */
+    CallSession(long id, boolean incoming, SignalingConnection connection, int channel, CallManager manager) {
+        this.id = id;
+        this.incoming = incoming;
+        this.socket = null;
+        this.manager = manager;
+        this.in = null;
+        this.out = null;
+        this.connection = connection;
+        this.channel = channel;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public boolean isIncoming() {
+        return incoming;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 对方地址
+     */
+    public InetAddress getRemoteAddress() {
+        return socket != null ? socket.getInetAddress() : connection.getRemoteAddress();
+    }
+
+    /**
+     * 信令所在的多路复用连接，文本信令时为null
+     */
+    public SignalingConnection getSignalingConnection() {
+        return connection;
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    /**
+     * 是否协商启用了冗余编码（RED）
+     */
+    public boolean isFecEnabled() {
+        return fec;
+    }
+
+    /**
+     * 媒体质量指标，通话建立后可用（之前为null）
+     * 使用本机声卡或加入会议时由媒体处理方更新
+     */
+    public CallMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 本端媒体端口
+     */
+    public int getLocalMediaPort() {
+        return localMediaPort;
+    }
+
+    public int getRemoteMediaPort() {
+        return remoteMediaPort;
+    }
+
+    /**
+     * 通话录音，未录音时为null
+     */
+    public CallRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * 媒体套接字，供混音、录音等服务端媒体处理使用
+     */
+    public DatagramSocket getMediaSocket() {
+        return mediaSocket;
+    }
+
+    /**
+     * 媒体通道，可以注册到 MediaReactor 由事件循环处理（此后不能再调用 startLocalAudio）
+     */
+    public DatagramChannel getMediaChannel() {
+        return mediaSocket == null ? null : mediaSocket.getChannel();
+    }
+
+    /**
+     * 通话时长（毫秒），未接通时为0
+     */
+    public long getDurationMillis() {
+        long started = startedAt;
+        return started == 0 ? 0 : System.currentTimeMillis() - started;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * 使用本机音频设备（默认为声卡，见 CallManager.setAudioDevices）收发这路通话的音频
+     * @param frameMillis 每帧时长（毫秒）
+     * @param listener 媒体事件回调，可以为null
+     */
+    public synchronized void startLocalAudio(int frameMillis, MediaListener listener) {
+        if (state != State.ACTIVE || audioSender != null) {
+            return;
+        }
+        String ip = getRemoteAddress().getHostAddress();
+        audioSender = new AudioThread(ip, remoteMediaPort, mediaSocket, true, frameMillis,
+                Codecs.create(codecName), listener);
+        audioReceiver = new AudioThread(ip, remoteMediaPort, mediaSocket, false, frameMillis,
+                Codecs.create(codecName), listener);
+        if (fec) {
+            audioSender.setRedundancy(1);
+        }
+        AudioDevices devices = manager.getAudioDevices();
+        audioSender.setSource(devices.createSource(this));
+        audioReceiver.setSink(devices.createSink(this));
+        audioSender.setAlternativeCodecs(commonCodecs);
+        audioReceiver.setAlternativeCodecs(commonCodecs);
+        audioSender.setMetrics(metrics);
+        audioReceiver.setMetrics(metrics);
+        Path directory = manager.getRecordingDirectory();
+        if (directory != null) {
+            try {
+                recorder = CallRecorder.create(directory, ip, Codecs.create(codecName).sampleRate());
+                recorder.setMetrics(metrics);
+                audioSender.setRecorder(recorder);
+                audioReceiver.setRecorder(recorder);
+            } catch (IOException ex) {
+                System.err.println("无法创建录音文件: " + ex.getMessage());
+            }
+        }
+        audioSender.start();
+        audioReceiver.start();
+    }
+
+    /**
+     * 挂断通话：通知对方并释放资源
+     */
+    public void hangup() {
+        if (state == State.ACTIVE) {
+            send(new SignalingMessage(SignalingMessage.HANGUP));
+        }
+        end("本端挂断");
+    }
+
+    @Override
+    public String toString() {
+        return "Call#" + id + "[" + (incoming ? "in" : "out") + " " + getRemoteAddress().getHostAddress()
+                + " " + state + (codecName == null ? "" : " " + codecName) + "]";
+    }
+
+    // ---- 以下方法由 CallManager 调用 ----
+
+    BufferedReader in() {
+        return in;
+    }
+
+    void send(SignalingMessage message) {
+        if (connection != null) {
+            connection.send(channel, message);
+        } else {
+            out.println(message);
+        }
+    }
+
+    /**
+     * 记录协商结果并进入通话状态
+     * @param mediaPorts 分配 mediaSocket 的分配器，会话结束时归还端口
+     * @throws IOException 会话已经结束（如信令连接在协商期间断开）时抛出，调用方负责归还 mediaSocket
+     */
+    synchronized void activate(String codecName, String[] commonCodecs, boolean fec, DatagramSocket mediaSocket,
+                               int remoteMediaPort, MediaPortAllocator mediaPorts) throws IOException {
+        if (state == State.ENDED) {
+            throw new IOException("会话已结束");
+        }
+        this.codecName = codecName;
+        this.commonCodecs = commonCodecs;
+        this.fec = fec;
+        this.metrics = new CallMetrics(codecName, Codecs.create(codecName).sampleRate(), manager.getFrameMillis());
+        this.mediaSocket = mediaSocket;
+        this.mediaPorts = mediaPorts;
+        this.localMediaPort = mediaSocket.getLocalPort();
+        this.remoteMediaPort = remoteMediaPort;
+        this.startedAt = System.currentTimeMillis();
+        this.state = State.ACTIVE;
+    }
+
+    /**
+     * 信令循环：等待对方挂断或连接断开（仅文本信令，二进制信令由 SignalingConnection 分发）
+     */
+    void runSignaling() {
+        signaling = true;
+        try {
+            String line;
+            while (state == State.ACTIVE && (line = in.readLine()) != null) {
+                SignalingMessage msg = SignalingMessage.parse(line);
+                if (msg == null) {
+                    continue;
+                }
+                if (msg.is(SignalingMessage.HANGUP)) {
+                    end("对方挂断");
+                    return;
+                }
+                if (msg.is(SignalingMessage.PING)) {
+                    out.println(SignalingMessage.PONG);
+                    peerHeartbeat();
+                } else if (msg.is(SignalingMessage.PONG)) {
+                    peerHeartbeat();
+                }
+            }
+            end("连接已断开");
+        } catch (SocketTimeoutException ex) {
+            end("对方无响应");
+        } catch (IOException ex) {
+            end("连接已断开");
+        }
+    }
+
+    /**
+     * 对端支持心跳：从此按失效期限设置读取超时，对端停止响应时信令循环不再无限期阻塞
+     */
+    private void peerHeartbeat() throws IOException {
+        if (!heartbeatSeen) {
+            heartbeatSeen = true;
+            socket.setSoTimeout(manager.getSignalingPool().getDeadPeerMillis());
+        }
+    }
+
+    /**
+     * 发送心跳（由 SignalingPool 定期调用，仅文本信令；二进制信令的心跳按连接发送）
+     */
+    void heartbeat() {
+        if (connection == null && signaling && state == State.ACTIVE) {
+            out.println(SignalingMessage.PING);
+        }
+    }
+
+    /**
+     * 结束会话并释放所有资源（可重复调用）
+     * @param reason 结束原因
+     */
+    void end(String reason) {
+        synchronized (this) {
+            if (state == State.ENDED) {
+                return;
+            }
+            state = State.ENDED;
+            if (audioSender != null) audioSender.stopAudio();
+            if (audioReceiver != null) audioReceiver.stopAudio();
+            if (recorder != null) recorder.close();
+            if (mediaSocket != null) mediaPorts.close(mediaSocket, localMediaPort);
+            if (connection != null) {
+                connection.unregister(channel); // 共享连接保持打开
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // 关闭时的异常可以忽略
+                }
+            }
+        }
+        manager.sessionEnded(this, reason);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * 音频编解码器接口
+ * PCM一侧固定为16位有符号大端序单声道，与声卡的 AudioFormat 一致
+ * 编码和解码都写入调用方提供的缓冲区，不在每帧分配内存
+ *
+ * 实现类可以带有跨帧状态，因此每路音频流应使用独立的实例（见 Codecs.create）
+ */
+public interface Codec {
+    /**
+     * 编码名称，用于信令协商（如 "PCMU"）
+     */
+    String name();
+
+    /**
+     * RTP负载类型
+     */
+    int payloadType();
+
+    /**
+     * 采样率（同时也是RTP时钟频率）
+     */
+    int sampleRate();
+
+    /**
+     * 编码后的码率（bit/s，不含RTP/UDP/IP头部），用于码率自适应时排序
+     */
+    int bitrate();
+
+    /**
+     * 编码一帧PCM数据
+     * @param pcm PCM数据
+     * @param pcmOffset PCM起始偏移
+     * @param pcmLength PCM字节数（偶数）
+     * @param out 输出缓冲区，至少 pcmLength 字节可用
+     * @param outOffset 输出起始偏移
+     * @return 编码后的字节数
+     */
+    int encode(byte[] pcm, int pcmOffset, int pcmLength, byte[] out, int outOffset);
+
+    /**
+     * 解码一帧数据
+     * @param data 编码数据
+     * @param offset 起始偏移
+     * @param length 编码字节数
+     * @param pcm PCM输出缓冲区
+     * @param pcmOffset PCM输出起始偏移
+     * @return 解码后的PCM字节数
+     */
+    int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset);
+
+    /**
+     * 计算解码后的PCM字节数，用于在解码前检查输出缓冲区是否足够
+     * @param length 编码字节数
+     * @return PCM字节数
+     */
+    int decodedLength(int length);
+}
@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 编解码器注册表与协商
+ * 负责按名称或负载类型创建编解码器实例，以及在DIAL/ACCEPT交换中选出双方都支持的编码
+ */
+public final class Codecs {
+    // 本端支持的编码，按默认偏好排序
+    private static final String[] SUPPORTED = {
+            G711Codec.PCMU, G711Codec.PCMA, AdpcmWbCodec.NAME, L16Codec.NAME
+    };
+
+    // 对方未声明编码时使用的编码（旧版本只发送L16）
+    public static final String DEFAULT = L16Codec.NAME;
+
+    private Codecs() {
+    }
+
+    /**
+     * 本端支持的所有编码名称，按默认偏好排序
+     */
+    public static String[] supported() {
+        return SUPPORTED.clone();
+    }
+
+    /**
+     * 按名称创建新的编解码器实例
+     * @param name 编码名称（不区分大小写）
+     * @return 编解码器，不支持时返回null
+     */
+    public static Codec create(String name) {
+        if (name == null) {
+            return null;
+        }
+        switch (name.toUpperCase()) {
+            case G711Codec.PCMU:
+                return new G711Codec(false);
+            case G711Codec.PCMA:
+                return new G711Codec(true);
+            case AdpcmWbCodec.NAME:
+                return new AdpcmWbCodec();
+            case L16Codec.NAME:
+                return new L16Codec();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 生成拨号时提供的编码列表：首选编码在前，其余按默认偏好
+     * @param preferred 首选编码
+     * @return 逗号分隔的编码列表
+     */
+    public static String offer(String preferred) {
+        List<String> names = new ArrayList<>();
+        if (create(preferred) != null) {
+            names.add(preferred.toUpperCase());
+        }
+        for (String name : SUPPORTED) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return String.join(",", names);
+    }
+
+    /**
+     * 对方提供的编码列表中本端也支持的编码，按对方的顺序
+     * 通话中码率自适应只会在这些编码之间切换
+     * @param offered 对方提供的编码列表（逗号分隔），null表示旧版本对端
+     * @return 双方都支持的编码名称
+     */
+    public static String[] common(String offered) {
+        if (offered == null || offered.isEmpty()) {
+            return new String[]{DEFAULT};
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : offered.split(",")) {
+            Codec codec = create(name.trim());
+            if (codec != null && !names.contains(codec.name())) {
+                names.add(codec.name());
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * 按负载类型索引的解码器表，接收方据此解码对方切换后的编码
+     * @param codecs 可以接收的编解码器
+     * @return 长度为128的数组，不支持的负载类型为null
+     */
+    public static Codec[] decoderTable(Codec... codecs) {
+        Codec[] table = new Codec[128];
+        for (Codec codec : codecs) {
+            table[codec.payloadType()] = codec;
+        }
+        return table;
+    }
+
+    /**
+     * 从对方提供的编码列表中选出本次通话使用的编码
+     * 本端首选编码在对方列表中时优先使用，否则按对方的顺序选第一个双方都支持的
+     * @param offered 对方提供的编码列表（逗号分隔），null表示旧版本对端
+     * @param preferred 本端首选编码
+     * @return 选中的编码名称，没有共同编码时返回null
+     */
+    public static String negotiate(String offered, String preferred) {
+        if (offered == null || offered.isEmpty()) {
+            return DEFAULT;
+        }
+        String[] names = offered.split(",");
+        for (String name : names) {
+            if (name.trim().equalsIgnoreCase(preferred) && create(preferred) != null) {
+                return preferred.toUpperCase();
+            }
+        }
+        for (String name : names) {
+            if (create(name.trim()) != null) {
+                return name.trim().toUpperCase();
+            }
+        }
+        return null;
+    }
+}
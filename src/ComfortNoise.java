@@ -0,0 +1,64 @@
+/**
+ * 舒适噪声（RFC 3389）
+ * 发送方静音期间不发送音频，只周期性地发送描述背景噪声电平的CN包；
+ * 接收方按该电平生成白噪声填充静音段，避免听起来像断线
+ *
+ * CN负载的第一个字节是噪声电平（-dBov，0~127），本实现不携带频谱参数
+ */
+public class ComfortNoise {
+    // 静态负载类型：舒适噪声（RFC 3551）
+    public static final int PAYLOAD_TYPE = 13;
+    // CN负载长度（只有噪声电平字节）
+    public static final int PAYLOAD_SIZE = 1;
+    // 最低的噪声电平（-dBov），表示静音
+    public static final int SILENT_LEVEL = 127;
+
+    // 满幅度的RMS，作为 0dBov 的参考
+    private static final double FULL_SCALE = 32767;
+
+    private int state = 0x2545F491; // xorshift 随机数状态
+
+    /**
+     * 把RMS能量换算成噪声电平
+     * @param rms RMS能量
+     * @return 噪声电平（-dBov，0~127）
+     */
+    public static int toLevel(double rms) {
+        if (rms < 1) {
+            return SILENT_LEVEL;
+        }
+        int level = (int) Math.round(-20 * Math.log10(rms / FULL_SCALE));
+        return Math.max(0, Math.min(SILENT_LEVEL, level));
+    }
+
+    /**
+     * 把噪声电平换算成RMS能量
+     * @param level 噪声电平（-dBov）
+     * @return RMS能量
+     */
+    public static double toRms(int level) {
+        return level >= SILENT_LEVEL ? 0 : FULL_SCALE * Math.pow(10, -level / 20.0);
+    }
+
+    /**
+     * 按给定的噪声电平生成白噪声
+     * @param out 输出缓冲区（16位大端序PCM）
+     * @param offset 起始偏移
+     * @param length 字节数
+     * @param level 噪声电平（-dBov）
+     */
+    public void generate(byte[] out, int offset, int length, int level) {
+        // 均匀分布的RMS是幅度的 1/sqrt(3)
+        int amplitude = (int) Math.min(Short.MAX_VALUE, toRms(level) * Math.sqrt(3));
+        int x = state;
+        for (int i = offset; i < offset + length - 1; i += 2) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            int sample = amplitude == 0 ? 0 : (int) (((long) x * amplitude) >> 31);
+            out[i] = (byte) (sample >> 8);
+            out[i + 1] = (byte) sample;
+        }
+        state = x;
+    }
+}
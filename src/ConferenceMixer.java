@@ -0,0 +1,573 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 多方会议混音桥（服务端）
+ * 接收N个参与者的音频流，每帧为每个参与者生成"除自己以外所有人"的混音，并发回该参与者
+ *
+ * 反应器收到的数据包以帧池中的帧（引用计数）转交混音线程，由混音线程解码放入每个参与者独立的抖动缓冲区，
+ * 数据包不拷贝，抖动缓冲区也只由混音线程访问；混音线程按固定帧间隔运行，
+ * 先把所有输入累加到一个int数组，再为每个参与者减去自己的输入并饱和到16位，
+ * 这样总开销是 O(N) 而不是 O(N²)
+ *
+ * 静音抑制中的参与者以数字静音参与混音，不把各自的舒适噪声叠加进去（否则N方会议会听到N-1路噪声）；
+ * 某一路输出的其他参与者全部静音时，才按其中最响的舒适噪声电平为这路输出生成一路噪声
+ *
+ * 房间内所有参与者必须使用相同采样率的编解码器；帧长可以不同（码率控制器也可能在通话中改变帧长），
+ * 每个参与者解码出的样本先进入自己的样本队列，每帧从中取出会议帧长的样本
+ *
+ * 混音线程按本机单调时钟取帧，每个参与者的采集时钟与它都有偏差，
+ * 因此每个参与者各有一个 DriftCompensator，在取出的帧中删除或插入个别样本，缓冲深度不随会议时长增减
+ */
+public class ConferenceMixer implements AutoCloseable {
+    // 每个参与者待解码的数据包队列长度，混音线程每帧清空一次
+    private static final int INBOX_FRAMES = 32;
+
+    private final int sampleRate;
+    private final int frameMillis;
+    private final int frameSamples;  // 每帧样本数
+    private final int frameBytes;    // 每帧PCM字节数
+    private final int maxFrameBytes; // 参与者发来的最长帧（30毫秒）的PCM字节数
+    private final long frameNanos;   // 帧间隔（纳秒）
+
+    // 参与者数组，写时复制：混音线程每帧读取一次引用，不需要加锁
+    private volatile Participant[] participants = new Participant[0];
+
+    // 混音工作区（只在混音线程中使用）
+    private short[][] inputs = new short[0][];
+    private short[][] outputs = new short[0][];
+    private final int[] sum;
+    private final byte[] pcmScratch;
+    private final byte[] encodeScratch;
+
+    private volatile boolean running = false;
+    // 已离开、队列中还有帧等待释放的参与者（由混音线程处理）
+    private final ConcurrentLinkedQueue<Participant> departed = new ConcurrentLinkedQueue<>();
+
+    // 统计
+    private volatile long ticks, overruns;
+    private volatile long lastMixNanos, maxMixNanos;
+
+    /**
+     * 构造函数
+     * @param sampleRate 房间采样率（参与者编解码器必须一致）
+     * @param frameMillis 每帧时长（毫秒）
+     */
+    public ConferenceMixer(int sampleRate, int frameMillis) {
+        if (!AudioThread.isValidFrameMillis(frameMillis)) {
+            throw new IllegalArgumentException("不支持的帧时长: " + frameMillis + "ms");
+        }
+        this.sampleRate = sampleRate;
+        this.frameMillis = frameMillis;
+        this.frameSamples = sampleRate * frameMillis / 1000;
+        this.frameBytes = frameSamples * 2;
+        this.maxFrameBytes = sampleRate * 30 / 1000 * 2;
+        this.frameNanos = frameMillis * 1_000_000L;
+        this.sum = new int[frameSamples];
+        this.pcmScratch = new byte[maxFrameBytes + 2]; // 漂移补偿可能插入一个样本
+        this.encodeScratch = new byte[frameBytes];
+    }
+
+    /**
+     * 启动混音线程
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        CallExecutors.media().execute(this::mixLoop);
+    }
+
+    /**
+     * 加入一个参与者
+     * 返回的 Participant 同时是 MediaStreamHandler，注册媒体流后调用 attach 绑定
+     * @param codecName 该参与者协商好的编解码器
+     * @return 参与者
+     */
+    public Participant join(String codecName) {
+        return join(codecName, new CallMetrics(codecName, sampleRate, frameMillis));
+    }
+
+    private Participant join(String codecName, CallMetrics metrics) {
+        Codec decoder = Codecs.create(codecName);
+        if (decoder == null) {
+            throw new IllegalArgumentException("不支持的编解码器: " + codecName);
+        }
+        if (decoder.sampleRate() != sampleRate) {
+            throw new IllegalArgumentException("编解码器采样率 " + decoder.sampleRate()
+                    + " 与会议采样率 " + sampleRate + " 不一致");
+        }
+        Participant participant = new Participant(decoder, Codecs.create(codecName), metrics);
+        synchronized (this) {
+            Participant[] current = participants;
+            Participant[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = participant;
+            participants = next;
+        }
+        return participant;
+    }
+
+    /**
+     * 把一路已建立的通话加入会议：媒体通道交给反应器处理
+     * @param session 通话（不能再使用本机声卡）
+     * @param reactor 媒体反应器
+     * @return 参与者
+     * @throws IOException 注册媒体通道失败时抛出
+     */
+    public Participant join(CallSession session, MediaReactor reactor) throws IOException {
+        Participant participant = join(session.getCodecName(), session.getMetrics());
+        InetSocketAddress remote = new InetSocketAddress(session.getRemoteAddress(), session.getRemoteMediaPort());
+        participant.attach(reactor.register(session.getMediaChannel(), remote, participant));
+        return participant;
+    }
+
+    /**
+     * 移除参与者
+     * 之后收到的数据包不再转交，已转交的在混音线程下一帧释放
+     */
+    public synchronized void leave(Participant participant) {
+        Participant[] current = participants;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == participant) {
+                participant.closed = true;
+                departed.add(participant);
+                Participant[] next = new Participant[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                participants = next;
+                return;
+            }
+        }
+    }
+
+    public int getParticipantCount() {
+        return participants.length;
+    }
+
+    /**
+     * 统计信息：帧数、超出时间预算的帧数、最近一帧和最长一帧的混音耗时
+     */
+    @Override
+    public String toString() {
+        return String.format("participants=%d ticks=%d overruns=%d mix=%.1fus max=%.1fus budget=%dms",
+                participants.length, ticks, overruns, lastMixNanos / 1000.0, maxMixNanos / 1000.0, frameMillis);
+    }
+
+    /**
+     * 停止混音线程（关闭后不能再启动）
+     * 先让所有参与者不再接收转交的数据包，混音线程退出时再释放队列中剩余的帧
+     */
+    @Override
+    public synchronized void close() {
+        for (Participant participant : participants) {
+            participant.closed = true;
+        }
+        running = false;
+    }
+
+    /**
+     * 混音循环：按帧间隔定时运行，按绝对时间推进避免累积误差
+     */
+    private void mixLoop() {
+        long next = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            mixFrame();
+            long elapsed = System.nanoTime() - start;
+            lastMixNanos = elapsed;
+            if (elapsed > maxMixNanos) {
+                maxMixNanos = elapsed;
+            }
+            ticks++;
+            if (elapsed > frameNanos) {
+                overruns++;
+            }
+
+            next += frameNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (-wait > frameNanos * 4) {
+                next = System.nanoTime(); // 落后太多时重新对齐，避免连续补帧
+            }
+        }
+        // 停止后释放所有参与者队列中的帧；反应器线程可能正在入队，等它完成（入队只需很短的时间）
+        for (Participant participant : participants) {
+            participant.closed = true; // 关闭之后才加入的参与者
+            while (!participant.releaseInbox()) {
+                Thread.onSpinWait();
+            }
+        }
+        while (!departed.isEmpty()) {
+            releaseDeparted();
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 释放已离开的参与者队列中剩余的帧（只在混音线程中调用）
+     * 反应器线程正在入队的参与者留到下一帧再处理
+     */
+    private void releaseDeparted() {
+        for (Iterator<Participant> it = departed.iterator(); it.hasNext(); ) {
+            if (it.next().releaseInbox()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 混合一帧：取出每个参与者的输入，计算N减自己的混音，编码并发送
+     */
+    void mixFrame() {
+        if (!departed.isEmpty()) {
+            releaseDeparted();
+        }
+        Participant[] current = participants;
+        int count = current.length;
+        if (count == 0) {
+            return;
+        }
+        ensureCapacity(count);
+
+        long now = System.nanoTime();
+        // 统计正在讲话的人数，以及静音者中最响和次响的舒适噪声电平（-dBov越小越响）
+        int speaking = 0;
+        int loudest = -1;
+        int loudestLevel = ComfortNoise.SILENT_LEVEL;
+        int secondLevel = ComfortNoise.SILENT_LEVEL;
+        for (int p = 0; p < count; p++) {
+            Participant participant = current[p];
+            participant.drain();
+            participant.nextFrame(pcmScratch, inputs[p], frameSamples, now);
+            int level = participant.silenceLevel;
+            if (level < 0) {
+                speaking++;
+            } else if (level < loudestLevel) {
+                secondLevel = loudestLevel;
+                loudestLevel = level;
+                loudest = p;
+            } else if (level < secondLevel) {
+                secondLevel = level;
+            }
+        }
+
+        mix(inputs, count, frameSamples, sum, outputs);
+
+        for (int p = 0; p < count; p++) {
+            Participant participant = current[p];
+            toBytes(outputs[p], frameSamples, pcmScratch);
+            // 除自己以外的人都静音时混音是数字静音，补上一路舒适噪声
+            if (speaking == 0 || (speaking == 1 && participant.silenceLevel < 0)) {
+                int level = p == loudest ? secondLevel : loudestLevel;
+                if (level < ComfortNoise.SILENT_LEVEL) {
+                    participant.comfortNoise.generate(pcmScratch, 0, frameBytes, level);
+                }
+            }
+            participant.send(pcmScratch, frameBytes, encodeScratch, frameSamples);
+        }
+    }
+
+    /**
+     * N减自己的混音核心
+     * 两趟都是对基本类型数组的顺序循环，没有分支，便于JIT自动向量化
+     * @param inputs 每个参与者的输入样本
+     * @param count 参与者数量
+     * @param samples 每帧样本数
+     * @param sum 累加工作区（至少 samples 个元素）
+     * @param outputs 每个参与者的输出样本
+     */
+    static void mix(short[][] inputs, int count, int samples, int[] sum, short[][] outputs) {
+        Arrays.fill(sum, 0, samples, 0);
+        for (int p = 0; p < count; p++) {
+            short[] in = inputs[p];
+            for (int i = 0; i < samples; i++) {
+                sum[i] += in[i];
+            }
+        }
+        for (int p = 0; p < count; p++) {
+            short[] in = inputs[p];
+            short[] out = outputs[p];
+            for (int i = 0; i < samples; i++) {
+                int v = sum[i] - in[i];
+                out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+            }
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (inputs.length < count) {
+            int size = Math.max(count, inputs.length * 2);
+            short[][] newInputs = Arrays.copyOf(inputs, size);
+            short[][] newOutputs = Arrays.copyOf(outputs, size);
+            for (int i = inputs.length; i < size; i++) {
+                newInputs[i] = new short[frameSamples];
+                newOutputs[i] = new short[frameSamples];
+            }
+            inputs = newInputs;
+            outputs = newOutputs;
+        }
+    }
+
+    /**
+     * 样本数组转16位大端序PCM
+     */
+    private static void toBytes(short[] samples, int count, byte[] pcm) {
+        for (int i = 0; i < count; i++) {
+            pcm[i * 2] = (byte) (samples[i] >> 8);
+            pcm[i * 2 + 1] = (byte) samples[i];
+        }
+    }
+
+    /**
+     * 会议参与者：接收一路RTP流放入抖动缓冲区，并发送混音结果
+     */
+    public class Participant implements MediaStreamHandler {
+        private final Codec decoder;
+        private final Codec encoder;
+        private final JitterBuffer jitterBuffer;
+        private volatile MediaStream stream;
+
+        // 反应器转交的数据包（反应器线程写入，混音线程读取）
+        private final FrameQueue inbox = new FrameQueue(INBOX_FRAMES);
+        private final RtpHeader inboxHeader = new RtpHeader();
+        private volatile boolean closed = false;
+        // 反应器线程正在 onFrame 中检查 closed 并入队：置 closed 后等它归零再清空队列，之后不会再有帧入队
+        private final AtomicInteger offering = new AtomicInteger();
+        private volatile long inboxDrops; // 队列满而丢弃的包数（仅反应器线程写入）
+
+        // 解码工作区（只在解码所在的线程中使用：经 onFrame 转交时为混音线程）
+        private final byte[] payload = new byte[2048];
+        private final byte[] decoded;
+        private final RedundantEncoding red;
+        private final Codec[] decoders;
+        private final CallMetrics metrics;
+        // 参与者采集时钟与混音时钟的漂移补偿（只在混音线程中使用）
+        private final DriftCompensator drift;
+        private boolean hasSource;
+        private int sourceSsrc;
+
+        // 静音段（只在混音线程中使用）：本帧结束时的舒适噪声电平，正在讲话时为-1；
+        // 抖动缓冲区在静音段中输出数字静音，噪声由混音线程按输出生成
+        private int silenceLevel = -1;
+        private final ComfortNoise comfortNoise = new ComfortNoise();
+
+        // 样本队列：按会议帧长重新分帧（只在混音线程中使用）
+        // 取帧前不足一帧，再放入一个最长的帧（漂移补偿可能多插入一个样本）也不会溢出
+        private final short[] pending = new short[frameSamples + maxFrameBytes / 2 + 1];
+        private int pendingSamples;
+
+        // 发送状态（只在混音线程中使用）
+        private final ByteBuffer packet = ByteBuffer.allocateDirect(RtpHeader.SIZE + frameBytes);
+        private final byte[] header = new byte[RtpHeader.SIZE];
+        private final int ssrc;
+        private int seq;
+        private long timestamp;
+        private boolean first = true;
+
+        Participant(Codec decoder, Codec encoder, CallMetrics metrics) {
+            this.decoder = decoder;
+            this.encoder = encoder;
+            this.jitterBuffer = new JitterBuffer(maxFrameBytes, frameMillis, sampleRate);
+            this.jitterBuffer.setComfortNoise(false);
+            this.decoded = new byte[maxFrameBytes];
+            this.red = new RedundantEncoding(maxFrameBytes, 0);
+            this.decoders = Codecs.decoderTable(decoder);
+            this.metrics = metrics;
+            this.drift = new DriftCompensator(sampleRate);
+            SecureRandom random = new SecureRandom();
+            this.ssrc = random.nextInt();
+            this.seq = random.nextInt() & 0xFFFF;
+            this.timestamp = random.nextInt() & 0xFFFFFFFFL;
+        }
+
+        /**
+         * 绑定用于收发的媒体流
+         */
+        public void attach(MediaStream stream) {
+            this.stream = stream;
+        }
+
+        public MediaStream getStream() {
+            return stream;
+        }
+
+        /**
+         * 该参与者的媒体质量指标
+         */
+        public CallMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * 收到参与者的RTP包（不经帧池时）：直接解码放入抖动缓冲区
+         * 这条路径不在混音线程上，到达时间不参与漂移估计
+         */
+        @Override
+        public void onPacket(MediaStream stream, ByteBuffer packet, RtpHeader rtp) {
+            if (RtcpPacket.isRtcp(rtp)) {
+                return; // 会议服务端不处理参与者的RTCP报告
+            }
+            long now = System.nanoTime();
+            metrics.onPacketReceived(rtp.getSequence(), rtp.getTimestamp(), packet.remaining(), now);
+            receive(packet, rtp, now);
+        }
+
+        /**
+         * 收到参与者的RTP包（帧池中的帧）：持有该帧转交混音线程解码，反应器线程只做统计
+         */
+        @Override
+        public void onFrame(MediaStream stream, Frame frame, RtpHeader rtp) {
+            if (RtcpPacket.isRtcp(rtp)) {
+                return; // 会议服务端不处理参与者的RTCP报告
+            }
+            offering.incrementAndGet();
+            try {
+                if (closed) {
+                    return; // 已离开会议
+                }
+                metrics.onPacketReceived(rtp.getSequence(), rtp.getTimestamp(), frame.buffer().remaining(),
+                        frame.time());
+                if (!inbox.offer(frame.retain())) {
+                    frame.release();
+                    inboxDrops++;
+                }
+            } finally {
+                offering.decrementAndGet();
+            }
+        }
+
+        /**
+         * 离开会议或混音器关闭后，释放队列中剩余的帧（只在混音线程中调用，closed 已置位）
+         * @return false表示反应器线程正在入队，需要稍后再试
+         */
+        boolean releaseInbox() {
+            if (offering.get() != 0) {
+                return false;
+            }
+            inbox.clear();
+            return true;
+        }
+
+        /**
+         * 解码转交过来的数据包并释放帧，同时记录到达时间用于漂移估计（只在混音线程中调用）
+         */
+        void drain() {
+            Frame frame;
+            while ((frame = inbox.poll()) != null) {
+                ByteBuffer packet = frame.buffer();
+                if (inboxHeader.parse(packet)) {
+                    if (!hasSource || inboxHeader.getSsrc() != sourceSsrc) {
+                        // 参与者换了媒体源（如重启），之前的时钟估计不再适用
+                        if (hasSource) {
+                            drift.onSourceChanged();
+                        }
+                        hasSource = true;
+                        sourceSsrc = inboxHeader.getSsrc();
+                    }
+                    drift.onPacket(inboxHeader.getTimestamp(), frame.time());
+                    receive(packet, inboxHeader, frame.time());
+                }
+                frame.release();
+            }
+        }
+
+        /**
+         * 取出一帧会议帧长的输入样本（只在混音线程中调用）
+         * 从抖动缓冲区取出的帧可能比会议帧长或短：不足一帧时继续取，多出的样本留到下一帧，
+         * 因此抖动缓冲区按参与者自己的帧长被消费，样本既不截断也不重复（漂移补偿删除或插入的个别样本除外）
+         * @param scratch PCM工作区（比最长的帧至少多2字节）
+         * @param out 输出样本
+         * @param count 会议每帧样本数
+         * @param now 本帧的混音时刻（System.nanoTime）
+         */
+        void nextFrame(byte[] scratch, short[] out, int count, long now) {
+            while (pendingSamples < count) {
+                int length = jitterBuffer.poll(scratch);
+                if (length < 2) {
+                    break;
+                }
+                length = drift.process(scratch, length, jitterBuffer.isPlaying(), jitterBuffer.depth(),
+                        jitterBuffer.targetDepth());
+                for (int i = 0; i + 1 < length; i += 2) {
+                    pending[pendingSamples++] = (short) ((scratch[i] << 8) | (scratch[i + 1] & 0xFF));
+                }
+            }
+            int n = Math.min(pendingSamples, count);
+            System.arraycopy(pending, 0, out, 0, n);
+            Arrays.fill(out, n, count, (short) 0);
+            pendingSamples -= n;
+            System.arraycopy(pending, n, pending, 0, pendingSamples);
+            drift.onPlayed(count, now);
+            silenceLevel = jitterBuffer.silenceLevel();
+            metrics.onPlayout(jitterBuffer.depth(), jitterBuffer.recovered(), drift.getDriftPpm());
+        }
+
+        /**
+         * 解码一个RTP包放入抖动缓冲区，舒适噪声包只记录噪声电平
+         */
+        private void receive(ByteBuffer packet, RtpHeader rtp, long arrivalNanos) {
+            int length = rtp.getPayloadLength();
+            if (rtp.getPayloadType() == ComfortNoise.PAYLOAD_TYPE) {
+                // 参与者静音：记录噪声电平，静音段以数字静音参与混音
+                if (length >= ComfortNoise.PAYLOAD_SIZE) {
+                    int level = packet.get(rtp.getPayloadOffset()) & 0x7F;
+                    jitterBuffer.putComfortNoise(rtp.getSequence(), rtp.getTimestamp(), level, arrivalNanos);
+                }
+                return;
+            }
+            if (rtp.getPayloadType() == RedundantEncoding.PAYLOAD_TYPE) {
+                // RED负载：主编码块正常写入，冗余块补上之前丢失的帧
+                if (length <= payload.length) {
+                    packet.get(rtp.getPayloadOffset(), payload, 0, length);
+                    red.unpack(payload, 0, length, rtp.getSequence(), rtp.getTimestamp(),
+                            decoders, decoded, jitterBuffer, arrivalNanos);
+                }
+                return;
+            }
+            if (rtp.getPayloadType() != decoder.payloadType() || length > payload.length
+                    || decoder.decodedLength(length) > decoded.length) {
+                return;
+            }
+            packet.get(rtp.getPayloadOffset(), payload, 0, length);
+            int pcmLength = decoder.decode(payload, 0, length, decoded, 0);
+            jitterBuffer.put(rtp.getSequence(), rtp.getTimestamp(), decoded, 0, pcmLength, arrivalNanos);
+        }
+
+        /**
+         * 编码并发送一帧混音
+         */
+        void send(byte[] pcm, int pcmLength, byte[] scratch, int samples) {
+            MediaStream target = stream;
+            if (target == null) {
+                return;
+            }
+            int encoded = encoder.encode(pcm, 0, pcmLength, scratch, 0);
+            RtpHeader.write(header, 0, first, encoder.payloadType(), seq, timestamp, ssrc);
+            packet.clear();
+            packet.put(header).put(scratch, 0, encoded).flip();
+            target.send(packet);
+            metrics.onPacketSent(RtpHeader.SIZE + encoded);
+            seq = (seq + 1) & 0xFFFF;
+            timestamp = (timestamp + samples) & 0xFFFFFFFFL;
+            first = false;
+        }
+
+        /**
+         * 抖动缓冲区统计
+         */
+        @Override
+        public String toString() {
+            return "Participant[" + decoder.name() + " " + jitterBuffer + " inboxDrops=" + inboxDrops
+                    + " drift=" + drift + "]";
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * 播放端的时钟漂移补偿
+ * 对方的采集时钟和本端的播放时钟（两块声卡的晶振）总有几十到几百ppm的偏差，
+ * 对方快时抖动缓冲不断变深、延迟越来越大，直到整帧丢弃；对方慢时缓冲逐渐耗尽、欠载后重新预缓冲，
+ * 连续讲话或长时间通话中两种情况都会造成可闻的跳变
+ *
+ * 估计：remote 根据数据包的RTP时间戳和到达时间估计对方时钟相对本机单调时钟的偏差，
+ * local 根据写入输出设备的样本数和 write 返回的时刻估计本端播放时钟的偏差，两者之差就是缓冲的增长速度；
+ * 再按平滑后的缓冲深度偏离参考深度的程度叠加比例修正，吸收估计误差和已经累积的偏差
+ *
+ * 补偿：按修正量在PCM帧中删除或插入单个样本（16位大端序），位置选在帧内相邻样本变化最平缓处，
+ * 删除时两个样本合并为平均值，插入时在两个样本之间补上平均值。几百ppm的修正每秒只调整几个样本，听不出来
+ *
+ * 只能由播放线程调用（onPacket 在播放线程处理到达的数据包时调用）
+ */
+public class DriftCompensator {
+    // 修正量上限（ppm）
+    public static final double MAX_CORRECTION_PPM = 2000;
+    // 缓冲深度每偏离参考值一帧的修正量（ppm），一帧的偏差约在半分钟内消除
+    private static final double DEPTH_GAIN_PPM = 500;
+    // 缓冲深度的平滑系数，20毫秒帧约对应5秒
+    private static final double DEPTH_SMOOTHING = 1.0 / 256;
+    // 连续播放多少帧后记下参考深度
+    private static final int SETTLE_FRAMES = 256;
+
+    private final DriftEstimator remote;
+    private final DriftEstimator local;
+    private long playedSamples;
+
+    // 缓冲深度：每段连续播放（以及帧长改变后）重新确定参考值，目标深度变化时参考值随之平移
+    private int playingFrames;
+    private double smoothedDepth;
+    private double referenceDepth;
+    private int referenceTarget;
+    private int frameLength; // 确定参考深度时的帧长（字节）
+
+    private double phase; // 累积的待调整样本数，正数删除、负数插入
+    private volatile double correctionPpm;
+    private volatile long dropped;
+    private volatile long inserted;
+
+    /**
+     * 构造函数
+     * @param sampleRate 采样率（Hz），与RTP时钟频率相同
+     */
+    public DriftCompensator(int sampleRate) {
+        this.remote = new DriftEstimator(sampleRate);
+        this.local = new DriftEstimator(sampleRate);
+    }
+
+    /**
+     * 记录一个到达的数据包
+     * @param timestamp RTP时间戳
+     * @param arrivalNanos 到达时间（System.nanoTime）
+     */
+    public void onPacket(long timestamp, long arrivalNanos) {
+        remote.addTimestamp(timestamp, arrivalNanos);
+    }
+
+    /**
+     * 对方换了一个媒体源（SSRC变化，如对方重启）：之前的时钟估计和参考深度都不再适用
+     */
+    public void onSourceChanged() {
+        remote.reset();
+        playingFrames = 0;
+        phase = 0;
+    }
+
+    /**
+     * 记录写入输出设备的样本（write 返回后调用）
+     * @param samples 样本数
+     * @param nanos write 返回的时刻（System.nanoTime）
+     */
+    public void onPlayed(int samples, long nanos) {
+        playedSamples += samples;
+        local.add(playedSamples, nanos);
+    }
+
+    /**
+     * 调整一帧PCM
+     * @param frame 16位大端序PCM，缓冲区至少比 length 多2字节
+     * @param length 帧长度（字节）
+     * @param playing 是否正在连续播放语音（预缓冲和对方静音段中不调整）
+     * @param depth 取帧后的缓冲深度（帧）
+     * @param target 目标深度（帧）
+     * @return 调整后的长度（字节）
+     */
+    public int process(byte[] frame, int length, boolean playing, int depth, int target) {
+        if (!playing) {
+            playingFrames = 0;
+            return length;
+        }
+        if (playingFrames == 0 || length != frameLength
+                || (playingFrames < SETTLE_FRAMES && target != referenceTarget)) {
+            // 开始播放、帧长改变（深度的单位变了），或参考深度确定之前目标深度还在调整（预缓冲后收缩）：
+            // 重新确定参考深度
+            playingFrames = 0;
+            referenceTarget = target;
+            frameLength = length;
+        }
+        if (++playingFrames <= SETTLE_FRAMES) {
+            // 确定参考深度期间取算术平均，不受起始深度影响
+            smoothedDepth += (depth - smoothedDepth) / playingFrames;
+        } else {
+            smoothedDepth += (depth - smoothedDepth) * DEPTH_SMOOTHING;
+        }
+        if (playingFrames == SETTLE_FRAMES) {
+            referenceDepth = smoothedDepth;
+            referenceTarget = target;
+        } else if (playingFrames > SETTLE_FRAMES && target != referenceTarget) {
+            referenceDepth += target - referenceTarget;
+            referenceTarget = target;
+        }
+
+        double correction = remote.getPpm() - local.getPpm();
+        if (playingFrames >= SETTLE_FRAMES) {
+            correction += (smoothedDepth - referenceDepth) * DEPTH_GAIN_PPM;
+        }
+        correction = Math.max(-MAX_CORRECTION_PPM, Math.min(MAX_CORRECTION_PPM, correction));
+        correctionPpm = correction;
+
+        int samples = length / 2;
+        if (samples < 2) {
+            return length;
+        }
+        phase += correction * 1e-6 * samples;
+        if (phase >= 1) {
+            phase -= 1;
+            dropped++;
+            return drop(frame, length);
+        }
+        if (phase <= -1) {
+            phase += 1;
+            inserted++;
+            return insert(frame, length);
+        }
+        return length;
+    }
+
+    /**
+     * 对方时钟相对本端播放时钟的偏差估计（ppm），正值表示对方快
+     */
+    public double getDriftPpm() {
+        return remote.getPpm() - local.getPpm();
+    }
+
+    /**
+     * 当前的修正量（ppm），正值表示删除样本
+     */
+    public double getCorrectionPpm() {
+        return correctionPpm;
+    }
+
+    public long getDroppedSamples() {
+        return dropped;
+    }
+
+    public long getInsertedSamples() {
+        return inserted;
+    }
+
+    /**
+     * 删除一个样本：变化最平缓的相邻两个样本合并为平均值
+     */
+    private int drop(byte[] frame, int length) {
+        int i = smoothest(frame, length);
+        writeSample(frame, i, (sample(frame, i) + sample(frame, i + 2)) >> 1);
+        System.arraycopy(frame, i + 4, frame, i + 2, length - i - 4);
+        return length - 2;
+    }
+
+    /**
+     * 插入一个样本：在变化最平缓的相邻两个样本之间补上平均值
+     */
+    private int insert(byte[] frame, int length) {
+        int i = smoothest(frame, length);
+        int average = (sample(frame, i) + sample(frame, i + 2)) >> 1;
+        System.arraycopy(frame, i + 2, frame, i + 4, length - i - 2);
+        writeSample(frame, i + 2, average);
+        return length + 2;
+    }
+
+    /**
+     * 相邻样本差最小的位置（字节偏移，该位置和下一个样本都在帧内）
+     */
+    private static int smoothest(byte[] frame, int length) {
+        int best = 0;
+        int bestDelta = Integer.MAX_VALUE;
+        for (int i = 0; i + 3 < length; i += 2) {
+            int delta = Math.abs(sample(frame, i + 2) - sample(frame, i));
+            if (delta < bestDelta) {
+                bestDelta = delta;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static int sample(byte[] frame, int offset) {
+        return (frame[offset] << 8) | (frame[offset + 1] & 0xFF);
+    }
+
+    private static void writeSample(byte[] frame, int offset, int sample) {
+        frame[offset] = (byte) (sample >> 8);
+        frame[offset + 1] = (byte) sample;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("remote=%s local=%s correction=%+.0fppm dropped=%d inserted=%d",
+                remote, local, correctionPpm, dropped, inserted);
+    }
+}
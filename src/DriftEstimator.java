@@ -0,0 +1,213 @@
+/**
+ * 时钟漂移估计：比较一个媒体时钟（样本位置）与本机单调时钟（System.nanoTime）的走速差，单位ppm
+ * 正值表示媒体时钟比本机时钟快
+ *
+ * 每个观测点的偏移 = 观测时刻 - 样本位置对应的时长。网络抖动和线程调度只会让观测变晚、不会变早，
+ * 所以每个窗口只取偏移最小的一点（最小值滤波），再对最近若干窗口的最小点做最小二乘直线拟合，
+ * 斜率就是两个时钟的走速差，不受抖动大小的影响。
+ * 偏移突变（路由切换、设备欠载）时丢弃历史重新拟合，新的拟合可用之前保留原来的估计值；
+ * RTP时间戳与到达时间相差太多的跳变（对方重启后换了随机起点，向前或向后）视为新的时间轴，从这个包重新开始；
+ * 换了一个媒体源（SSRC变化）时由调用方 reset，之前的估计值也一并作废
+ *
+ * 只能由一个线程调用 add，其他线程读取 getPpm 得到的是最近一次拟合的结果
+ */
+public class DriftEstimator {
+    public static final long DEFAULT_WINDOW_NANOS = 2_000_000_000L;
+    // 参与拟合的窗口数（默认窗口下约1分钟）
+    private static final int WINDOWS = 30;
+    // 至少需要的窗口数，之前不给出估计
+    private static final int MIN_WINDOWS = 3;
+    // 窗口最小偏移与预测值相差超过这么多（纳秒）时认为发生了突变
+    private static final double STEP_NANOS = 20_000_000;
+    // 超出的拟合结果视为异常（声卡的偏差通常只有几十到几百ppm）
+    private static final double MAX_PPM = 5000;
+    // 时间戳间隔与到达间隔相差超过这么多（纳秒）时视为时间轴跳变，而不是乱序或网络延迟
+    private static final double JUMP_NANOS = 2_000_000_000.0;
+
+    private final double nanosPerSample;
+    private final long windowNanos;
+
+    // 各窗口的最小偏移点（相对起点的纳秒数），环形存放
+    private final double[] times = new double[WINDOWS];
+    private final double[] offsets = new double[WINDOWS];
+    private int windows;
+    private int next;
+
+    // 当前窗口
+    private boolean started;
+    private long originNanos;
+    private long windowStart;
+    private double windowMin = Double.POSITIVE_INFINITY;
+    private double windowTime;
+
+    // RTP时间戳展开
+    private boolean hasTimestamp;
+    private long lastTimestamp;
+    private long lastTimestampNanos;
+    private long position;
+
+    private volatile double ppm;
+    private volatile boolean valid;
+    private volatile long resets;
+
+    /**
+     * 使用默认窗口长度
+     * @param sampleRate 媒体时钟频率（Hz）
+     */
+    public DriftEstimator(int sampleRate) {
+        this(sampleRate, DEFAULT_WINDOW_NANOS);
+    }
+
+    /**
+     * 构造函数
+     * @param sampleRate 媒体时钟频率（Hz）
+     * @param windowNanos 最小值滤波的窗口长度（纳秒）
+     */
+    public DriftEstimator(int sampleRate, long windowNanos) {
+        this.nanosPerSample = 1e9 / sampleRate;
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * 记录一个带RTP时间戳的观测（32位时间戳自动展开，乱序和重复的包忽略，时间轴跳变时重新开始）
+     * @param timestamp RTP时间戳
+     * @param nanos 到达时间（System.nanoTime）
+     */
+    public void addTimestamp(long timestamp, long nanos) {
+        if (hasTimestamp) {
+            int delta = (int) (timestamp - lastTimestamp); // 32位时间戳回绕
+            if (Math.abs(delta * nanosPerSample - (nanos - lastTimestampNanos)) > JUMP_NANOS) {
+                restart();
+            } else if (delta <= 0) {
+                return;
+            } else {
+                position += delta;
+            }
+        }
+        hasTimestamp = true;
+        lastTimestamp = timestamp;
+        lastTimestampNanos = nanos;
+        add(position, nanos);
+    }
+
+    /**
+     * 换了一个媒体源：丢弃所有观测和之前的估计
+     */
+    public void reset() {
+        restart();
+        ppm = 0;
+        valid = false;
+    }
+
+    /**
+     * 从下一个观测开始新的时间轴，保留当前估计值直到新的拟合可用
+     */
+    private void restart() {
+        started = false;
+        windows = 0;
+        windowMin = Double.POSITIVE_INFINITY;
+        hasTimestamp = false;
+        position = 0;
+        resets++;
+    }
+
+    /**
+     * 记录一个观测
+     * @param samples 样本位置（单调递增）
+     * @param nanos 观测时刻（System.nanoTime）
+     */
+    public void add(long samples, long nanos) {
+        if (!started) {
+            started = true;
+            originNanos = nanos;
+            windowStart = nanos;
+        }
+        double time = nanos - originNanos;
+        double offset = time - samples * nanosPerSample;
+        if (offset < windowMin) {
+            windowMin = offset;
+            windowTime = time;
+        }
+        if (nanos - windowStart >= windowNanos) {
+            closeWindow();
+            windowStart = nanos;
+            windowMin = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * 最近一次估计的走速差（ppm），尚无估计时为0
+     */
+    public double getPpm() {
+        return ppm;
+    }
+
+    /**
+     * 是否已经有了估计
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * 检测到偏移突变、重新拟合的次数
+     */
+    public long getResets() {
+        return resets;
+    }
+
+    private void closeWindow() {
+        if (windows > 0) {
+            int last = (next + WINDOWS - 1) % WINDOWS;
+            double predicted = offsets[last] - ppm * 1e-6 * (windowTime - times[last]);
+            if (Math.abs(windowMin - predicted) > STEP_NANOS) {
+                windows = 0;
+                resets++;
+            }
+        }
+        times[next] = windowTime;
+        offsets[next] = windowMin;
+        next = (next + 1) % WINDOWS;
+        windows = Math.min(windows + 1, WINDOWS);
+        if (windows >= MIN_WINDOWS) {
+            fit();
+        }
+    }
+
+    /**
+     * 对保存的窗口最小点做最小二乘直线拟合
+     */
+    private void fit() {
+        double meanTime = 0;
+        double meanOffset = 0;
+        for (int i = 0; i < windows; i++) {
+            int idx = (next + WINDOWS - 1 - i) % WINDOWS;
+            meanTime += times[idx];
+            meanOffset += offsets[idx];
+        }
+        meanTime /= windows;
+        meanOffset /= windows;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < windows; i++) {
+            int idx = (next + WINDOWS - 1 - i) % WINDOWS;
+            double dt = times[idx] - meanTime;
+            covariance += dt * (offsets[idx] - meanOffset);
+            variance += dt * dt;
+        }
+        if (variance <= 0) {
+            return;
+        }
+        // 偏移随时间减小说明媒体时钟走得快
+        double estimate = -covariance / variance * 1e6;
+        if (Math.abs(estimate) <= MAX_PPM) {
+            ppm = estimate;
+            valid = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return valid ? String.format("%+.1fppm", ppm) : "-";
+    }
+}
@@ -0,0 +1,93 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 帧池中的一个帧：一块固定的直接缓冲区加引用计数
+ * 从 FramePool.acquire() 取得时引用计数为1；每个需要在回调之后继续使用它的处理方调用 retain()，
+ * 用完后调用 release()，计数归零时自动回到帧池。这样同一个收到的数据包可以交给多个处理方而不拷贝
+ */
+public final class Frame {
+    private final FramePool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private long time;
+
+    // 调试模式下记录的分配位置和时间，用于泄漏检测
+    Throwable acquiredAt;
+    long acquiredNanos;
+    boolean leakReported;
+
+    Frame(FramePool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * 帧数据（直接缓冲区，容量固定），position 到 limit 为有效数据
+     * 多个持有者共享同一个缓冲区，读取时应使用绝对位置或 duplicate()，不要修改 position/limit
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * 附带的时间（如数据包到达的 System.nanoTime()）
+     */
+    public long time() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * 当前引用计数
+     */
+    public int refCount() {
+        return refCount.get();
+    }
+
+    /**
+     * 增加一个引用
+     * @return 本帧，便于链式调用
+     * @throws IllegalStateException 帧已经回到帧池
+     */
+    public Frame retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("帧已释放，不能再引用");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时回到帧池
+     * @return true表示帧已回到帧池
+     * @throws IllegalStateException 重复释放
+     */
+    public boolean release() {
+        int count = refCount.decrementAndGet();
+        if (count > 0) {
+            return false;
+        }
+        if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("帧被重复释放");
+        }
+        pool.recycle(this);
+        return true;
+    }
+
+    /**
+     * 从帧池取出时由 FramePool 调用
+     */
+    void reset() {
+        refCount.set(1);
+        buffer.clear();
+        time = 0;
+    }
+}
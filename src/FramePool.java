@@ -0,0 +1,123 @@
+import java.nio.ByteBuffer;
+
+/**
+ * 预分配的直接缓冲区帧池
+ * 所有帧切分自一次分配的直接内存，取出和归还都不产生垃圾；帧池用尽时 acquire() 返回null，
+ * 由调用方丢弃数据（帧池用尽通常说明有处理方持有帧不释放，或者系统已经过载）
+ *
+ * 调试模式（-Dipphone.framePool.debug=true）下记录每个帧的分配位置，
+ * checkLeaks() 可以找出持有时间过长的帧并打印分配位置
+ */
+public final class FramePool {
+    // 是否开启泄漏检测
+    public static final boolean DEBUG = Boolean.getBoolean("ipphone.framePool.debug");
+
+    private final Frame[] frames;   // 全部帧（泄漏检测时遍历）
+    private final Frame[] free;     // 空闲帧栈，后进先出，刚释放的帧更可能还在缓存中
+    private final int frameBytes;
+    private int freeCount;
+
+    // 统计
+    private volatile long exhausted; // 帧池用尽的次数
+
+    /**
+     * 构造函数
+     * @param capacity 帧数量
+     * @param frameBytes 每帧字节数
+     */
+    public FramePool(int capacity, int frameBytes) {
+        this.frameBytes = frameBytes;
+        frames = new Frame[capacity];
+        free = new Frame[capacity];
+        ByteBuffer memory = ByteBuffer.allocateDirect(capacity * frameBytes);
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame(this, memory.slice(i * frameBytes, frameBytes));
+            free[i] = frames[i];
+        }
+        freeCount = capacity;
+    }
+
+    /**
+     * 取出一个帧，引用计数为1，缓冲区已清空
+     * @return 帧，帧池用尽时返回null
+     */
+    public Frame acquire() {
+        Frame frame;
+        synchronized (this) {
+            if (freeCount == 0) {
+                exhausted++;
+                return null;
+            }
+            frame = free[--freeCount];
+            free[freeCount] = null;
+        }
+        frame.reset();
+        if (DEBUG) {
+            frame.acquiredAt = new Throwable("帧分配位置");
+            frame.acquiredNanos = System.nanoTime();
+            frame.leakReported = false;
+        }
+        return frame;
+    }
+
+    /**
+     * 引用计数归零的帧回到帧池（由 Frame.release 调用）
+     */
+    void recycle(Frame frame) {
+        if (DEBUG) {
+            frame.acquiredAt = null;
+        }
+        synchronized (this) {
+            free[freeCount++] = frame;
+        }
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    public int frameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * 当前被持有的帧数
+     */
+    public synchronized int inUse() {
+        return frames.length - freeCount;
+    }
+
+    public long getExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * 检查持有时间过长的帧（只在调试模式下有效），每个帧只报告一次
+     * @param olderThanMillis 持有超过该时间（毫秒）视为泄漏
+     * @return 新发现的泄漏帧数
+     */
+    public int checkLeaks(long olderThanMillis) {
+        if (!DEBUG) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        int leaks = 0;
+        for (Frame frame : frames) {
+            Throwable site = frame.acquiredAt;
+            if (site != null && !frame.leakReported && frame.refCount() > 0
+                    && now - frame.acquiredNanos > olderThanMillis * 1_000_000L) {
+                frame.leakReported = true;
+                leaks++;
+                System.err.println("帧可能泄漏：已持有 " + (now - frame.acquiredNanos) / 1_000_000
+                        + "ms，引用计数 " + frame.refCount());
+                site.printStackTrace();
+            }
+        }
+        return leaks;
+    }
+
+    @Override
+    public String toString() {
+        return "FramePool[inUse=" + inUse() + "/" + frames.length + " exhausted=" + exhausted + "]";
+    }
+}
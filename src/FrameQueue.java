@@ -0,0 +1,84 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单生产者/单消费者（SPSC）的无锁帧队列
+ * 与 FrameRing 不同，这里传递的是帧池中帧的引用，数据本身不拷贝：
+ * 生产者 retain() 之后入队，消费者处理完 release()
+ *
+ * 读写序号的布局与 FrameRing 相同，相隔128字节，避免伪共享
+ */
+public class FrameQueue {
+    private static final int WRITE = 8;
+    private static final int READ_CACHE = 9;
+    private static final int READ = 24;
+    private static final int WRITE_CACHE = 25;
+    private static final int COUNTERS = 40;
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+    private final Frame[] frames;
+    private final int mask;
+
+    /**
+     * 构造函数
+     * @param capacity 容量（向上取整为2的幂）
+     */
+    public FrameQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        frames = new Frame[size];
+        mask = size - 1;
+    }
+
+    /**
+     * 入队（仅生产者调用）
+     * @param frame 帧（调用方已持有一个引用，入队成功后该引用归队列所有）
+     * @return false表示队列已满，引用仍归调用方
+     */
+    public boolean offer(Frame frame) {
+        long write = counters.getPlain(WRITE);
+        if (write - counters.getPlain(READ_CACHE) >= frames.length) {
+            counters.setPlain(READ_CACHE, counters.getAcquire(READ));
+            if (write - counters.getPlain(READ_CACHE) >= frames.length) {
+                return false;
+            }
+        }
+        frames[(int) write & mask] = frame;
+        counters.setRelease(WRITE, write + 1);
+        return true;
+    }
+
+    /**
+     * 出队（仅消费者调用）
+     * @return 帧（引用归调用方，用完后 release），队列为空时返回null
+     */
+    public Frame poll() {
+        long read = counters.getPlain(READ);
+        if (read >= counters.getPlain(WRITE_CACHE)) {
+            counters.setPlain(WRITE_CACHE, counters.getAcquire(WRITE));
+            if (read >= counters.getPlain(WRITE_CACHE)) {
+                return null;
+            }
+        }
+        int idx = (int) read & mask;
+        Frame frame = frames[idx];
+        frames[idx] = null;
+        counters.setRelease(READ, read + 1);
+        return frame;
+    }
+
+    /**
+     * 当前队列中的帧数（任意线程可调用，结果是近似值）
+     */
+    public int size() {
+        return (int) (counters.get(WRITE) - counters.get(READ));
+    }
+
+    /**
+     * 释放队列中剩余的所有帧（仅消费者调用）
+     */
+    public void clear() {
+        Frame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+        }
+    }
+}
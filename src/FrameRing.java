@@ -0,0 +1,174 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者/单消费者（SPSC）的无锁帧环形缓冲区
+ * 连接音频流水线的两个阶段（采集 → 编码发送，接收 → 播放），
+ * 槽位在构造时一次性分配，生产者直接把数据写进槽位，消费者直接从槽位读取，全程不复制、不分配
+ *
+ * 生产者：claim() 取得空闲槽位 → 写入数据 → publish()；缓冲区满时 claim() 返回null，由调用方丢弃该帧；
+ * 从通道读入时用 claimBuffer() 取得槽位预先包装好的 ByteBuffer
+ * 消费者：peek() 取得最早的槽位 → 读取数据 → release()；可以用 await() 等待新数据
+ *
+ * 读写序号放在同一个数组中相隔128字节的位置，分别与各自一侧缓存的对方序号同处一条缓存行，
+ * 两个线程各自只写自己的缓存行，避免伪共享
+ */
+public class FrameRing {
+    // 序号在数组中的位置：前后各留出至少一条缓存行（64字节 = 8个long）
+    private static final int WRITE = 8;          // 生产者已发布的序号
+    private static final int READ_CACHE = 9;     // 生产者缓存的消费者序号
+    private static final int READ = 24;          // 消费者已释放的序号
+    private static final int WRITE_CACHE = 25;   // 消费者缓存的生产者序号
+    private static final int COUNTERS = 40;
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+    private final byte[][] slots;
+    private final ByteBuffer[] views; // 各槽位的 ByteBuffer 包装，构造时创建
+    private final int[] lengths;
+    private final long[] times;
+    private final int mask;
+
+    // 在 await() 中等待的消费者线程，生产者发布后唤醒
+    private volatile Thread waiter;
+
+    /**
+     * 构造函数
+     * @param capacity 槽位数量（向上取整为2的幂）
+     * @param slotBytes 每个槽位的字节数
+     */
+    public FrameRing(int capacity, int slotBytes) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new byte[size][slotBytes];
+        views = new ByteBuffer[size];
+        for (int i = 0; i < size; i++) {
+            views[i] = ByteBuffer.wrap(slots[i]);
+        }
+        lengths = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * 槽位数量
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * 当前缓冲的帧数（任意线程可调用，结果是近似值）
+     */
+    public int size() {
+        return (int) (counters.get(WRITE) - counters.get(READ));
+    }
+
+    // ---- 生产者 ----
+
+    /**
+     * 取得下一个空闲槽位（仅生产者调用）
+     * @return 槽位缓冲区，缓冲区满时返回null
+     */
+    public byte[] claim() {
+        int idx = claimIndex();
+        return idx < 0 ? null : slots[idx];
+    }
+
+    /**
+     * 与 claim() 相同，返回槽位的 ByteBuffer 包装（已清空：position为0，limit为槽位大小），仅生产者调用
+     * @return 槽位缓冲区，缓冲区满时返回null
+     */
+    public ByteBuffer claimBuffer() {
+        int idx = claimIndex();
+        return idx < 0 ? null : views[idx].clear();
+    }
+
+    private int claimIndex() {
+        long write = counters.getPlain(WRITE);
+        if (write - counters.getPlain(READ_CACHE) >= slots.length) {
+            // 缓存的消费者序号过时了才读取共享序号
+            counters.setPlain(READ_CACHE, counters.getAcquire(READ));
+            if (write - counters.getPlain(READ_CACHE) >= slots.length) {
+                return -1;
+            }
+        }
+        return (int) write & mask;
+    }
+
+    /**
+     * 发布 claim() 取得的槽位（仅生产者调用）
+     * @param length 写入的字节数
+     * @param time 附带的时间（如 System.nanoTime()），消费者通过 time() 读取
+     */
+    public void publish(int length, long time) {
+        long write = counters.getPlain(WRITE);
+        int idx = (int) write & mask;
+        lengths[idx] = length;
+        times[idx] = time;
+        // volatile写保证槽位数据先于序号可见，并与下面读取 waiter 之间不会重排
+        counters.set(WRITE, write + 1);
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    // ---- 消费者 ----
+
+    /**
+     * 取得最早的已发布槽位（仅消费者调用）
+     * @return 槽位缓冲区，没有数据时返回null
+     */
+    public byte[] peek() {
+        long read = counters.getPlain(READ);
+        if (read >= counters.getPlain(WRITE_CACHE)) {
+            counters.setPlain(WRITE_CACHE, counters.getAcquire(WRITE));
+            if (read >= counters.getPlain(WRITE_CACHE)) {
+                return null;
+            }
+        }
+        return slots[(int) read & mask];
+    }
+
+    /**
+     * peek() 所取槽位的数据长度
+     */
+    public int length() {
+        return lengths[(int) counters.getPlain(READ) & mask];
+    }
+
+    /**
+     * peek() 所取槽位附带的时间
+     */
+    public long time() {
+        return times[(int) counters.getPlain(READ) & mask];
+    }
+
+    /**
+     * 释放 peek() 取得的槽位，交还给生产者（仅消费者调用）
+     */
+    public void release() {
+        counters.setRelease(READ, counters.getPlain(READ) + 1);
+    }
+
+    /**
+     * 等待新数据（仅消费者调用）
+     * @param timeoutNanos 最长等待时间（纳秒）
+     * @return true表示有数据可读
+     */
+    public boolean await(long timeoutNanos) {
+        if (peek() != null) {
+            return true;
+        }
+        waiter = Thread.currentThread();
+        try {
+            // 设置 waiter 之后用volatile读再检查一次，避免错过发布前的唤醒
+            if (counters.get(WRITE) == counters.getPlain(READ)) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            waiter = null;
+        }
+        return peek() != null;
+    }
+}
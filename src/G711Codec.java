@@ -0,0 +1,160 @@
+/**
+ * G.711编解码器（µ-law / A-law，8000Hz，64kbit/s）
+ * 编码和解码都通过预先计算好的查找表完成，每个样本只需一次查表
+ */
+public class G711Codec implements Codec {
+    public static final String PCMU = "PCMU";
+    public static final String PCMA = "PCMA";
+
+    // RTP静态负载类型（RFC 3551）
+    private static final int PT_PCMU = 0;
+    private static final int PT_PCMA = 8;
+
+    // µ-law 参数
+    private static final int ULAW_BIAS = 0x84;
+    private static final int ULAW_CLIP = 32635;
+
+    // 查找表：编码表以16位样本（无符号形式）为下标，解码表以码字为下标
+    private static final byte[] ULAW_ENCODE = new byte[65536];
+    private static final byte[] ALAW_ENCODE = new byte[65536];
+    private static final short[] ULAW_DECODE = new short[256];
+    private static final short[] ALAW_DECODE = new short[256];
+
+    static {
+        for (int i = 0; i < 65536; i++) {
+            ULAW_ENCODE[i] = linearToUlaw((short) i);
+            ALAW_ENCODE[i] = linearToAlaw((short) i);
+        }
+        for (int i = 0; i < 256; i++) {
+            ULAW_DECODE[i] = ulawToLinear(i);
+            ALAW_DECODE[i] = alawToLinear(i);
+        }
+    }
+
+    private final boolean aLaw;
+    private final byte[] encodeTable;
+    private final short[] decodeTable;
+
+    /**
+     * 构造函数
+     * @param aLaw true为A-law（PCMA），false为µ-law（PCMU）
+     */
+    public G711Codec(boolean aLaw) {
+        this.aLaw = aLaw;
+        this.encodeTable = aLaw ? ALAW_ENCODE : ULAW_ENCODE;
+        this.decodeTable = aLaw ? ALAW_DECODE : ULAW_DECODE;
+    }
+
+    @Override
+    public String name() {
+        return aLaw ? PCMA : PCMU;
+    }
+
+    @Override
+    public int payloadType() {
+        return aLaw ? PT_PCMA : PT_PCMU;
+    }
+
+    @Override
+    public int sampleRate() {
+        return 8000;
+    }
+
+    @Override
+    public int bitrate() {
+        return 8000 * 8;
+    }
+
+    @Override
+    public int encode(byte[] pcm, int pcmOffset, int pcmLength, byte[] out, int outOffset) {
+        int samples = pcmLength / 2;
+        for (int i = 0; i < samples; i++) {
+            int p = pcmOffset + i * 2;
+            int sample = ((pcm[p] & 0xFF) << 8) | (pcm[p + 1] & 0xFF);
+            out[outOffset + i] = encodeTable[sample];
+        }
+        return samples;
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset) {
+        for (int i = 0; i < length; i++) {
+            short sample = decodeTable[data[offset + i] & 0xFF];
+            pcm[pcmOffset + i * 2] = (byte) (sample >> 8);
+            pcm[pcmOffset + i * 2 + 1] = (byte) sample;
+        }
+        return length * 2;
+    }
+
+    @Override
+    public int decodedLength(int length) {
+        return length * 2;
+    }
+
+    /**
+     * 16位线性样本转µ-law码字（ITU-T G.711）
+     */
+    private static byte linearToUlaw(short pcm) {
+        int value = pcm;
+        int sign = (value >> 8) & 0x80;
+        if (sign != 0) {
+            value = -value;
+        }
+        if (value > ULAW_CLIP) {
+            value = ULAW_CLIP;
+        }
+        value += ULAW_BIAS;
+        int exponent = 31 - Integer.numberOfLeadingZeros(value >> 7);
+        int mantissa = (value >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+
+    /**
+     * µ-law码字转16位线性样本
+     */
+    private static short ulawToLinear(int ulaw) {
+        ulaw = ~ulaw & 0xFF;
+        int exponent = (ulaw >> 4) & 0x07;
+        int mantissa = ulaw & 0x0F;
+        int sample = (((mantissa << 3) + ULAW_BIAS) << exponent) - ULAW_BIAS;
+        return (short) ((ulaw & 0x80) != 0 ? -sample : sample);
+    }
+
+    /**
+     * 16位线性样本转A-law码字（ITU-T G.711）
+     */
+    private static byte linearToAlaw(short pcm) {
+        int value = pcm >> 3; // A-law使用13位精度
+        int mask;
+        if (value >= 0) {
+            mask = 0xD5;
+        } else {
+            mask = 0x55;
+            value = -value - 1;
+        }
+        // 段号：0x1F、0x3F ... 0xFFF 依次对应第0到7段
+        int segment = 32 - Integer.numberOfLeadingZeros(value >> 5);
+        if (segment >= 8) {
+            return (byte) (0x7F ^ mask);
+        }
+        int code = segment << 4;
+        code |= segment < 2 ? (value >> 1) & 0x0F : (value >> segment) & 0x0F;
+        return (byte) (code ^ mask);
+    }
+
+    /**
+     * A-law码字转16位线性样本
+     */
+    private static short alawToLinear(int alaw) {
+        alaw ^= 0x55;
+        int value = (alaw & 0x0F) << 4;
+        int segment = (alaw & 0x70) >> 4;
+        if (segment == 0) {
+            value += 8;
+        } else {
+            value += 0x108;
+            value <<= segment - 1;
+        }
+        return (short) ((alaw & 0x80) != 0 ? value : -value);
+    }
+}
@@ -2,16 +2,22 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.net.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * IP电话主程序
- * 实现基于TCP的信令控制和UDP的音频传输
+ * 窗口只负责设置和显示：信令、编码和FEC协商、媒体端口、心跳和录音都由 CallManager 处理，
+ * 与无界面的 PhoneDaemon 使用同一套引擎
  */
-public class IPPhone extends JFrame {
+@SuppressWarnings("serial") // 窗口不会被序列化
+public final class IPPhone extends JFrame implements CallListener {
     // UI组件
     private JTextField ipField, portField, udpPortField;
+    private JComboBox<Integer> frameBox; // 帧时长选择（毫秒）
+    private JComboBox<String> codecBox;  // 首选编解码器
+    private JCheckBox fecBox;            // 是否启用冗余编码（RED）
     private JButton dialButton, hangupButton, listenButton;
     private JTextArea statusArea;
     private JLabel loadingLabel; // 加载图标
@@ -19,39 +25,32 @@ public class IPPhone extends JFrame {
     private JLabel callDurationLabel; // 通话时长标签
     private JPanel micIndicator; // 麦克风指示器
 
-    // 网络组件
-    private Socket tcpSocket;
-    private DatagramSocket udpSocket;
-    private PrintWriter tcpOut;
-    private BufferedReader tcpIn;
+    // 通话引擎：开始监听或拨号时按当前设置创建，空闲（不监听也没有通话）时关闭
+    private volatile CallManager manager;
+    private final Path recordDirectory; // 录音目录，null表示不录音
 
-    // 状态标志
-    private boolean isConnected = false;
-    private boolean isListening = false;
+    // 当前通话（界面一次只处理一路，其他来电以 busy 拒绝）
+    private final Object callLock = new Object();
+    private volatile CallSession call;
+    private volatile boolean dialing = false;
+    private volatile boolean isListening = false;
 
-    // 音频线程
-    private AudioThread audioSender, audioReceiver;
-
-    // 消息监听线程
-    private Thread messageListener;
-    private volatile boolean shouldListen = false;
+    // 状态区输出质量指标的间隔（秒）
+    private static final int METRICS_INTERVAL_SECONDS = 5;
 
     // 通话时长计时
     private Timer callTimer;
     private long callStartTime;
 
-    // 监听服务器
-    private ServerSocket serverSocket;
-    private Thread listenThread;
-
-    public IPPhone() {
+    public IPPhone(int frameMillis, String codecName, boolean fec, Path recordDirectory) {
+        this.recordDirectory = recordDirectory;
         setTitle("IP Phone - 网络电话");
-        setSize(450, 430);
+        setSize(450, 550);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout(10, 10));
 
         // 顶部面板 - 输入区域
-        JPanel topPanel = new JPanel(new GridLayout(4, 2, 10, 10));
+        JPanel topPanel = new JPanel(new GridLayout(7, 2, 10, 10));
         topPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10)); // 添加边距
 
         topPanel.add(new JLabel("IP Address:"));
@@ -63,9 +62,26 @@ public class IPPhone extends JFrame {
         topPanel.add(portField);
 
         topPanel.add(new JLabel("UDP Port:"));
-        udpPortField = new JTextField("5001");
+        udpPortField = new JTextField("0"); // 0表示自动分配
         topPanel.add(udpPortField);
 
+        topPanel.add(new JLabel("Frame (ms):"));
+        frameBox = new JComboBox<>();
+        for (int option : AudioThread.FRAME_MILLIS_OPTIONS) {
+            frameBox.addItem(option);
+        }
+        frameBox.setSelectedItem(frameMillis);
+        topPanel.add(frameBox);
+
+        topPanel.add(new JLabel("Codec:"));
+        codecBox = new JComboBox<>(Codecs.supported());
+        codecBox.setSelectedItem(codecName);
+        topPanel.add(codecBox);
+
+        topPanel.add(new JLabel("FEC:"));
+        fecBox = new JCheckBox("RED 冗余帧", fec);
+        topPanel.add(fecBox);
+
         dialButton = new JButton("Dial 拨号");
         listenButton = new JButton("Start Listen 开始监听");
         topPanel.add(dialButton);
@@ -135,8 +151,10 @@ public class IPPhone extends JFrame {
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
-                cleanup();
-                stopListening();
+                CallManager m = manager;
+                if (m != null) {
+                    m.close();
+                }
             }
         });
 
@@ -157,10 +175,10 @@ public class IPPhone extends JFrame {
     }
 
     /**
-     * 开始监听
+     * 开始监听（绑定端口很快，直接在事件线程中进行）
      */
     private void startListening() {
-        if (isConnected) {
+        if (call != null) {
             statusArea.append("错误：正在通话中，无法开始监听\n");
             return;
         }
@@ -170,142 +188,43 @@ public class IPPhone extends JFrame {
             return;
         }
 
-        listenThread = new Thread(() -> {
-            ServerSocket tempServerSocket = null;
-            try {
-                int port = Integer.parseInt(portField.getText());
-                int udpPort = Integer.parseInt(udpPortField.getText());
-
-                // 先测试UDP端口是否可用
-                try {
-                    DatagramSocket testUdpSocket = new DatagramSocket(udpPort);
-                    testUdpSocket.close();
-                } catch (SocketException se) {
-                    final String errorMsg = "UDP端口 " + udpPort + " 已被占用\n请更换UDP端口后重试";
-                    SwingUtilities.invokeLater(() -> {
-                        statusArea.append("✗ UDP端口 " + udpPort + " 已被占用，请更换端口\n");
-                        JOptionPane.showMessageDialog(IPPhone.this,
-                                errorMsg,
-                                "端口占用",
-                                JOptionPane.ERROR_MESSAGE);
-                    });
-                    return;
-                }
-
-                tempServerSocket = new ServerSocket(port);
-                serverSocket = tempServerSocket;
-                isListening = true;
-
-                SwingUtilities.invokeLater(() -> {
-                    statusArea.append("✓ 已开始监听 TCP端口:" + port + " UDP端口:" + udpPort + "\n");
-                    listenButton.setText("Stop Listen 停止监听");
-                    dialButton.setEnabled(false);
-                    ipField.setEnabled(false);
-                    portField.setEnabled(false);
-                    udpPortField.setEnabled(false);
-                });
+        int port;
+        CallManager m;
+        try {
+            port = Integer.parseInt(portField.getText());
+            m = createManager();
+        } catch (IllegalArgumentException ex) {
+            showPortFormatError();
+            return;
+        }
 
-                while (isListening) {
-                    try {
-                        // 等待连接（阻塞，但可被中断）
-                        tcpSocket = serverSocket.accept();
-
-                        SwingUtilities.invokeLater(() -> {
-                            statusArea.append("收到来电，来自: " + tcpSocket.getInetAddress() + "\n");
-                        });
-
-                        tcpOut = new PrintWriter(tcpSocket.getOutputStream(), true);
-                        tcpIn = new BufferedReader(new InputStreamReader(tcpSocket.getInputStream()));
-
-                        // 读取拨号请求
-                        String msg = tcpIn.readLine();
-                        if ("DIAL".equals(msg)) {
-                            tcpOut.println("ACCEPT"); // 自动接受
-                            isConnected = true;
-                            isListening = false; // 停止监听标志
-
-                            SwingUtilities.invokeLater(() -> {
-                                statusArea.append("✓ 已接听，正在建立音频通道...\n");
-                                loadingLabel.setVisible(false);
-                                hangupButton.setEnabled(true);
-                                dialButton.setEnabled(false);
-                                listenButton.setEnabled(false);
-                            });
-
-                            // 启动音频传输
-                            if (!startAudio(tcpSocket.getInetAddress().getHostAddress(), udpPort)) {
-                                // 音频启动失败，挂断通话
-                                SwingUtilities.invokeLater(() -> {
-                                    statusArea.append("✗ 音频通道建立失败，通话终止\n");
-                                    hangup();
-                                });
-                                break;
-                            }
-
-                            // 启动消息监听线程
-                            startMessageListener();
-
-                            // 开始计时
-                            startCallTimer();
-
-                            break; // 停止接受新连接
-                        }
-                    } catch (SocketException se) {
-                        // ServerSocket被关闭，正常退出
-                        break;
-                    }
-                }
-            } catch (NumberFormatException nfe) {
-                SwingUtilities.invokeLater(() -> {
-                    statusArea.append("✗ 端口号格式错误，请输入有效的数字\n");
-                    JOptionPane.showMessageDialog(this,
-                            "端口号格式错误\n请输入有效的数字",
-                            "输入错误",
-                            JOptionPane.ERROR_MESSAGE);
-                });
-            } catch (BindException be) {
-                SwingUtilities.invokeLater(() -> {
-                    int port = Integer.parseInt(portField.getText());
-                    statusArea.append("✗ TCP端口 " + port + " 已被占用，请更换端口\n");
-                    JOptionPane.showMessageDialog(this,
-                            "TCP端口 " + port + " 已被占用\n请更换TCP端口后重试",
-                            "端口占用",
-                            JOptionPane.ERROR_MESSAGE);
-                    listenButton.setText("Start Listen 开始监听");
-                    dialButton.setEnabled(true);
-                    ipField.setEnabled(true);
-                    portField.setEnabled(true);
-                    udpPortField.setEnabled(true);
-                });
-                isListening = false;
-            } catch (Exception ex) {
-                if (isListening) {
-                    SwingUtilities.invokeLater(() -> {
-                        statusArea.append("✗ 监听错误: " + ex.getMessage() + "\n");
-                        JOptionPane.showMessageDialog(this,
-                                "监听错误: " + ex.getMessage(),
-                                "错误",
-                                JOptionPane.ERROR_MESSAGE);
-                        listenButton.setText("Start Listen 开始监听");
-                        dialButton.setEnabled(true);
-                        ipField.setEnabled(true);
-                        portField.setEnabled(true);
-                        udpPortField.setEnabled(true);
-                    });
-                    isListening = false;
-                }
-            } finally {
-                // 确保ServerSocket被关闭
-                if (tempServerSocket != null && !tempServerSocket.isClosed()) {
-                    try {
-                        tempServerSocket.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        });
-        listenThread.start();
+        try {
+            m.listen(port);
+        } catch (BindException be) {
+            m.close();
+            statusArea.append("✗ TCP端口 " + port + " 已被占用，请更换端口\n");
+            JOptionPane.showMessageDialog(this,
+                    "TCP端口 " + port + " 已被占用\n请更换TCP端口后重试",
+                    "端口占用",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        } catch (IOException ex) {
+            m.close();
+            statusArea.append("✗ 监听错误: " + ex.getMessage() + "\n");
+            JOptionPane.showMessageDialog(this,
+                    "监听错误: " + ex.getMessage(),
+                    "错误",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        manager = m;
+        isListening = true;
+
+        String udpPort = "0".equals(udpPortField.getText().trim()) ? "自动分配" : udpPortField.getText().trim();
+        statusArea.append("✓ 已开始监听 TCP端口:" + port + " UDP端口:" + udpPort + "\n");
+        listenButton.setText("Stop Listen 停止监听");
+        dialButton.setEnabled(false);
+        setSettingsEnabled(false);
     }
 
     /**
@@ -317,152 +236,167 @@ public class IPPhone extends JFrame {
         }
 
         isListening = false;
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-            SwingUtilities.invokeLater(() -> {
-                statusArea.append("已停止监听\n");
-                listenButton.setText("Start Listen 开始监听");
-                dialButton.setEnabled(true);
-                ipField.setEnabled(true);
-                portField.setEnabled(true);
-                udpPortField.setEnabled(true);
-            });
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
+        statusArea.append("已停止监听\n");
+        restoreIdle();
     }
 
     /**
      * 拨号功能 - 主动发起连接
      */
     private void dial() {
-        // 如果正在监听，先停止监听
-        if (isListening) {
-            stopListening();
-            // 等待监听完全停止
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        if (call != null || dialing) {
+            return;
         }
 
-        // 在新线程中执行拨号，避免UI卡顿
-        new Thread(() -> {
+        String ip = ipField.getText();
+        int port;
+        CallManager m;
+        try {
+            port = Integer.parseInt(portField.getText());
+            m = manager != null ? manager : createManager();
+        } catch (IllegalArgumentException ex) {
+            showPortFormatError();
+            return;
+        }
+        manager = m;
+        dialing = true;
+
+        // 显示加载状态
+        loadingLabel.setText("正在连接 " + ip + ":" + port + " ...");
+        loadingLabel.setVisible(true);
+        dialButton.setEnabled(false);
+        listenButton.setEnabled(false);
+        setSettingsEnabled(false);
+        statusArea.append("正在拨号至 " + ip + ":" + port + "...\n");
+
+        // 在信令执行器上执行拨号，避免UI卡顿；接通后由 onCallStarted 更新界面
+        CallExecutors.signaling().execute(() -> {
             try {
-                String ip = ipField.getText();
-                int port = Integer.parseInt(portField.getText());
-                int udpPort = Integer.parseInt(udpPortField.getText());
-
-                // 先测试UDP端口是否可用
-                try {
-                    DatagramSocket testUdpSocket = new DatagramSocket(udpPort);
-                    testUdpSocket.close();
-                } catch (SocketException se) {
-                    final String errorMsg = "UDP端口 " + udpPort + " 已被占用\n请更换UDP端口后重试";
-                    SwingUtilities.invokeLater(() -> {
-                        loadingLabel.setVisible(false);
-                        dialButton.setEnabled(true);
-                        ipField.setEnabled(true);
-                        portField.setEnabled(true);
-                        udpPortField.setEnabled(true);
-                        statusArea.append("✗ UDP端口 " + udpPort + " 已被占用，请更换端口\n");
-                        JOptionPane.showMessageDialog(IPPhone.this,
-                                errorMsg,
-                                "端口占用",
-                                JOptionPane.ERROR_MESSAGE);
-                    });
-                    return;
-                }
-
-                // 显示加载状态
+                m.dial(ip, port);
+            } catch (IOException ex) {
                 SwingUtilities.invokeLater(() -> {
-                    loadingLabel.setText("正在连接 " + ip + ":" + port + " ...");
-                    loadingLabel.setVisible(true);
-                    dialButton.setEnabled(false);
-                    ipField.setEnabled(false);
-                    portField.setEnabled(false);
-                    udpPortField.setEnabled(false);
+                    statusArea.append("❌ 拨号失败: " + ex.getMessage() + "\n");
+                    restoreIdle();
                 });
+            } finally {
+                dialing = false;
+            }
+        });
+    }
 
-                statusArea.append("正在拨号至 " + ip + ":" + port + "...\n");
-
-                // 建立TCP连接
-                tcpSocket = new Socket();
-                tcpSocket.connect(new InetSocketAddress(ip, port), 5000); // 5秒超时
-                tcpOut = new PrintWriter(tcpSocket.getOutputStream(), true);
-                tcpIn = new BufferedReader(new InputStreamReader(tcpSocket.getInputStream()));
+    /**
+     * 按当前设置创建通话引擎
+     * @throws IllegalArgumentException UDP端口不是有效的数字时抛出
+     */
+    private CallManager createManager() {
+        int udpPort = Integer.parseInt(udpPortField.getText().trim());
+        CallManager m = new CallManager((String) codecBox.getSelectedItem(), (Integer) frameBox.getSelectedItem(),
+                this);
+        // 本机音频在 onCallStarted 中打开，以便接上麦克风指示器
+        m.setLocalAudio(false);
+        m.setFec(fecBox.isSelected());
+        m.setRecordingDirectory(recordDirectory);
+        if (udpPort != 0) {
+            // 指定了UDP端口时只使用该端口
+            m.setMediaPorts(new MediaPortAllocator(udpPort, udpPort));
+        }
+        return m;
+    }
 
-                // 发送拨号请求
-                tcpOut.println("DIAL");
-                String response = tcpIn.readLine();
+    /**
+     * 收到来电：界面一次只处理一路通话，正在通话或拨号时拒绝
+     */
+    @Override
+    public boolean onIncomingCall(CallSession session) {
+        synchronized (callLock) {
+            if (call != null || dialing) {
+                return false;
+            }
+            call = session;
+        }
+        SwingUtilities.invokeLater(() -> {
+            statusArea.append("收到来电，来自: " + session.getRemoteAddress() + "\n");
+        });
+        return true; // 自动接受
+    }
 
-                // 隐藏加载状态
-                SwingUtilities.invokeLater(() -> {
-                    loadingLabel.setVisible(false);
-                });
+    /**
+     * 通话已建立：打开本机音频并更新界面
+     */
+    @Override
+    public void onCallStarted(CallSession session) {
+        synchronized (callLock) {
+            if (call == null) {
+                call = session; // 去电
+            } else if (call != session) {
+                session.hangup();
+                return;
+            }
+        }
+        try {
+            session.startLocalAudio(manager.getFrameMillis(), this::updateMicIndicator);
+        } catch (RuntimeException ex) {
+            SwingUtilities.invokeLater(() -> {
+                statusArea.append("❌ 音频启动失败: " + ex.getMessage() + "\n");
+            });
+            session.hangup();
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            String negotiated = session.getCodecName() + (session.isFecEnabled() ? "+RED" : "");
+            statusArea.append(session.isIncoming() ? "✓ 已接听（" + negotiated + "）\n"
+                    : "✨ 连接成功（" + negotiated + "）！\n");
+            CallRecorder recorder = session.getRecorder();
+            if (recorder != null) {
+                statusArea.append("⏺ 正在录音: " + recorder.getPath() + "\n");
+            }
+            statusArea.append("✅ 音频通道已建立，可以通话\n");
+            loadingLabel.setVisible(false);
+            hangupButton.setEnabled(true);
+            dialButton.setEnabled(false);
+            listenButton.setEnabled(false);
+            startCallTimer(session);
+        });
+    }
 
-                if ("ACCEPT".equals(response)) {
-                    isConnected = true;
-                    statusArea.append("✨ 连接成功！正在建立音频通道...\n");
-
-                    SwingUtilities.invokeLater(() -> {
-                        dialButton.setEnabled(false);
-                        listenButton.setEnabled(false);
-                        hangupButton.setEnabled(true);
-                    });
-
-                    // 启动音频传输
-                    if (!startAudio(ip, udpPort)) {
-                        // 音频启动失败，挂断通话
-                        SwingUtilities.invokeLater(() -> {
-                            statusArea.append("✗ 音频通道建立失败，通话终止\n");
-                            hangup();
-                        });
-                        return;
-                    }
-
-                    // 启动消息监听线程，监听对方的挂断消息
-                    startMessageListener();
-
-                    // 开始计时
-                    startCallTimer();
-                } else {
-                    statusArea.append("❌ 连接被拒绝\n");
-                    cleanup();
+    /**
+     * 通话已结束（本端或对方挂断、对方无响应、连接断开）
+     */
+    @Override
+    public void onCallEnded(CallSession session, String reason) {
+        boolean current;
+        synchronized (callLock) {
+            current = call == session;
+            if (current) {
+                call = null;
+            }
+        }
+        SwingUtilities.invokeLater(() -> {
+            if (!current) {
+                // 没有接通的来电（没有共同编码、正在通话中等），去电失败由 dial 报告
+                if (session.isIncoming()) {
+                    statusArea.append("✗ 来电未接通: " + reason + "\n");
+                }
+                return;
+            }
+            statusArea.append("通话已结束（" + reason + "）\n");
+            stopCallTimer(session);
+            CallRecorder recorder = session.getRecorder();
+            if (recorder != null) {
+                statusArea.append("录音已保存: " + recorder.getPath() + "\n");
+                if (!recorder.isComplete()) {
+                    statusArea.append("⚠ 录音不完整: " + recorder + "\n");
                 }
-            } catch (NumberFormatException nfe) {
-                SwingUtilities.invokeLater(() -> {
-                    loadingLabel.setVisible(false);
-                    dialButton.setEnabled(true);
-                    ipField.setEnabled(true);
-                    portField.setEnabled(true);
-                    udpPortField.setEnabled(true);
-                    statusArea.append("✗ 端口号格式错误，请输入有效的数字\n");
-                    JOptionPane.showMessageDialog(this,
-                            "端口号格式错误\n请输入有效的数字",
-                            "输入错误",
-                            JOptionPane.ERROR_MESSAGE);
-                });
-            } catch (Exception ex) {
-                SwingUtilities.invokeLater(() -> {
-                    loadingLabel.setVisible(false);
-                    dialButton.setEnabled(true);
-                    ipField.setEnabled(true);
-                    portField.setEnabled(true);
-                    udpPortField.setEnabled(true);
-                });
-                statusArea.append("❌ 拨号失败: " + ex.getMessage() + "\n");
             }
-        }).start();
+            micIndicator.setBackground(Color.GRAY);
+            restoreIdle();
+        });
     }
 
     /**
      * 启动通话计时器
      */
-    private void startCallTimer() {
+    private void startCallTimer(CallSession session) {
         callStartTime = System.currentTimeMillis();
         callStatusLabel.setText("● 通话中");
         callDurationLabel.setText("00:00");
@@ -471,6 +405,11 @@ public class IPPhone extends JFrame {
             long elapsed = System.currentTimeMillis() - callStartTime;
             long seconds = elapsed / 1000;
             long minutes = seconds / 60;
+            // 定期在状态区输出通话质量
+            CallMetrics metrics = session.getMetrics();
+            if (metrics != null && seconds > 0 && seconds % METRICS_INTERVAL_SECONDS == 0) {
+                statusArea.append("📊 " + metrics + "\n");
+            }
             seconds = seconds % 60;
             callDurationLabel.setText(String.format("%02d:%02d", minutes, seconds));
         });
@@ -480,53 +419,20 @@ public class IPPhone extends JFrame {
     /**
      * 停止通话计时器
      */
-    private void stopCallTimer() {
+    private void stopCallTimer(CallSession session) {
         if (callTimer != null) {
             callTimer.stop();
             callTimer = null;
         }
+        // 输出本次通话的最终质量指标
+        CallMetrics metrics = session.getMetrics();
+        if (metrics != null) {
+            statusArea.append("📊 通话质量: " + metrics + "\n");
+        }
         callStatusLabel.setText("");
         callDurationLabel.setText("");
     }
 
-    /**
-     * 启动音频传输
-     * @param ip 对方IP地址
-     * @param port UDP端口
-     * @return 是否成功启动
-     */
-    private boolean startAudio(String ip, int port) {
-        try {
-            udpSocket = new DatagramSocket(port);
-            audioSender = new AudioThread(ip, port, udpSocket, true, this);
-            audioReceiver = new AudioThread(ip, port, udpSocket, false, this);
-            audioSender.start();
-            audioReceiver.start();
-            statusArea.append("✅ 音频通道已建立，可以通话\n");
-            return true;
-        } catch (SocketException se) {
-            // UDP端口被占用的特殊处理
-            final String errorMsg = "UDP端口 " + port + " 已被占用\n请更换UDP端口后重试";
-            statusArea.append("✗ 音频启动失败: UDP端口 " + port + " 已被占用\n");
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(IPPhone.this,
-                        errorMsg,
-                        "端口占用",
-                        JOptionPane.ERROR_MESSAGE);
-            });
-            if (udpSocket != null && !udpSocket.isClosed()) {
-                udpSocket.close();
-            }
-            return false;
-        } catch (Exception ex) {
-            statusArea.append("❌ 音频启动失败: " + ex.getMessage() + "\n");
-            if (udpSocket != null && !udpSocket.isClosed()) {
-                udpSocket.close();
-            }
-            return false;
-        }
-    }
-
     /**
      * 更新麦克风指示器
      * @param hasSound 是否有声音
@@ -542,100 +448,115 @@ public class IPPhone extends JFrame {
     }
 
     /**
-     * 启动TCP消息监听线程
-     * 用于接收对方的HANGUP消息
+     * 挂断通话，界面由 onCallEnded 恢复
      */
-    private void startMessageListener() {
-        shouldListen = true;
-        messageListener = new Thread(() -> {
-            try {
-                String msg;
-                while (shouldListen && (msg = tcpIn.readLine()) != null) {
-                    if ("HANGUP".equals(msg)) {
-                        SwingUtilities.invokeLater(() -> {
-                            statusArea.append("对方已挂断\n");
-                            cleanup();
-                            // 不自动重新监听，由用户手动控制
-                        });
-                        break;
-                    }
-                }
-            } catch (IOException ex) {
-                if (shouldListen) {
-                    SwingUtilities.invokeLater(() -> {
-                        statusArea.append("连接已断开\n");
-                        cleanup();
-                        // 不自动重新监听，由用户手动控制
-                    });
-                }
-            }
-        });
-        messageListener.start();
+    private void hangup() {
+        CallSession current = call;
+        if (current != null) {
+            current.hangup();
+        }
     }
 
     /**
-     * 挂断通话
+     * 没有通话时恢复UI：仍在监听时保持监听状态，否则关闭通话引擎（只在事件线程中调用）
      */
-    private void hangup() {
-        try {
-            // 发送挂断消息给对方
-            if (tcpOut != null && isConnected) {
-                tcpOut.println("HANGUP");
-            }
-            statusArea.append("通话已结束\n");
-        } catch (Exception ex) {
-            statusArea.append("挂断错误: " + ex.getMessage() + "\n");
-        } finally {
-            cleanup();
-            // 不自动重新监听，由用户手动控制
+    private void restoreIdle() {
+        if (call != null) {
+            return;
         }
+        hangupButton.setEnabled(false);
+        loadingLabel.setVisible(false);
+        listenButton.setEnabled(true);
+        if (isListening) {
+            listenButton.setText("Stop Listen 停止监听");
+            dialButton.setEnabled(false);
+            return;
+        }
+        CallManager m = manager;
+        manager = null;
+        if (m != null) {
+            m.close();
+        }
+        listenButton.setText("Start Listen 开始监听"); // 确保按钮文字正确
+        dialButton.setEnabled(true);
+        setSettingsEnabled(true);
     }
 
     /**
-     * 清理资源，恢复UI状态
+     * 启用或禁用连接设置（监听或通话期间不能修改）
      */
-    private void cleanup() {
-        try {
-            // 停止计时器
-            stopCallTimer();
-
-            // 停止消息监听
-            shouldListen = false;
-
-            // 停止音频线程
-            if (audioSender != null) audioSender.stopAudio();
-            if (audioReceiver != null) audioReceiver.stopAudio();
-
-            // 关闭网络连接
-            if (tcpSocket != null && !tcpSocket.isClosed()) tcpSocket.close();
-            if (udpSocket != null && !udpSocket.isClosed()) udpSocket.close();
-
-            // 重置状态
-            isConnected = false;
-
-            // 恢复麦克风指示器
-            micIndicator.setBackground(Color.GRAY);
+    private void setSettingsEnabled(boolean enabled) {
+        ipField.setEnabled(enabled);
+        portField.setEnabled(enabled);
+        udpPortField.setEnabled(enabled);
+        frameBox.setEnabled(enabled);
+        codecBox.setEnabled(enabled);
+        fecBox.setEnabled(enabled);
+    }
 
-            // 恢复UI
-            SwingUtilities.invokeLater(() -> {
-                dialButton.setEnabled(true);
-                listenButton.setEnabled(true);
-                listenButton.setText("Start Listen 开始监听"); // 确保按钮文字正确
-                hangupButton.setEnabled(false);
-                loadingLabel.setVisible(false);
-                ipField.setEnabled(true);
-                portField.setEnabled(true);
-                udpPortField.setEnabled(true);
-            });
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    private void showPortFormatError() {
+        statusArea.append("✗ 端口号格式错误，请输入有效的数字\n");
+        JOptionPane.showMessageDialog(this,
+                "端口号格式错误\n请输入有效的数字",
+                "输入错误",
+                JOptionPane.ERROR_MESSAGE);
     }
 
     /**
      * 主函数入口
+     * 可选参数：--frame-ms <10|20|30> 指定默认帧时长，--codec <名称> 指定首选编解码器，
+     * --fec <red|none> 指定是否默认启用冗余编码，--record <目录> 把每路通话录音到该目录
      */
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new IPPhone());
+        int frameMillis = AudioThread.DEFAULT_FRAME_MILLIS;
+        String codecName = Codecs.supported()[0];
+        boolean fec = false;
+        Path recordDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--frame-ms".equals(args[i]) && i + 1 < args.length) {
+                try {
+                    frameMillis = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException nfe) {
+                    frameMillis = -1;
+                }
+                if (!AudioThread.isValidFrameMillis(frameMillis)) {
+                    System.err.println("帧时长只能是 10、20 或 30 毫秒");
+                    System.exit(1);
+                }
+            } else if ("--codec".equals(args[i]) && i + 1 < args.length) {
+                codecName = args[++i].toUpperCase();
+                if (Codecs.create(codecName) == null) {
+                    System.err.println("不支持的编解码器，可选: " + String.join(", ", Codecs.supported()));
+                    System.exit(1);
+                }
+            } else if ("--fec".equals(args[i]) && i + 1 < args.length) {
+                String mode = args[++i];
+                if (!RedundantEncoding.NAME.equalsIgnoreCase(mode) && !"none".equalsIgnoreCase(mode)) {
+                    System.err.println("FEC模式只能是 red 或 none");
+                    System.exit(1);
+                }
+                fec = RedundantEncoding.NAME.equalsIgnoreCase(mode);
+            } else if ("--record".equals(args[i]) && i + 1 < args.length) {
+                recordDirectory = Paths.get(args[++i]);
+                try {
+                    Files.createDirectories(recordDirectory);
+                } catch (IOException ex) {
+                    System.err.println("无法创建录音目录: " + ex.getMessage());
+                    System.exit(1);
+                }
+            } else {
+                System.err.println("未知参数: " + args[i]);
+                System.err.println("用法: java IPPhone [--frame-ms <10|20|30>] [--codec <"
+                        + String.join("|", Codecs.supported()) + ">] [--fec <red|none>] [--record <目录>]");
+                System.exit(1);
+            }
+        }
+
+        final int initialFrameMillis = frameMillis;
+        final String initialCodec = codecName;
+        final boolean initialFec = fec;
+        final Path initialRecordDirectory = recordDirectory;
+        SwingUtilities.invokeLater(() -> new IPPhone(initialFrameMillis, initialCodec, initialFec,
+                initialRecordDirectory));
     }
 }
\ No newline at end of file
@@ -0,0 +1,467 @@
+import java.util.Arrays;
+
+/**
+ * 自适应抖动缓冲区
+ * 位于 socket.receive 与 speaker.write 之间：按序号重排数据包，
+ * 根据测得的到达间隔抖动调整缓冲深度，并对丢失的数据包做丢包隐藏（PLC）
+ * 缓冲深度以包计，每个包的时长按相邻语音包的时间戳间隔跟踪（对方的码率控制器可能在通话中改变帧长），
+ * 目标深度和上限因此始终对应同样的毫秒数
+ * 对方静音抑制期间按收到的舒适噪声（CN）描述生成背景噪声
+ *
+ * 方法都已同步，可以由接收线程调用 put() 写入、播放线程调用 poll() 取出；
+ * AudioThread 中接收线程经 FrameRing 转交数据包，put() 和 poll() 都在播放线程上执行
+ */
+public class JitterBuffer {
+    // 槽位数量（必须是2的幂，按序号取模定位槽位）
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+
+    // 抖动估计的平滑系数（与RFC 3550一致取1/16）
+    private static final double JITTER_GAIN = 1.0 / 16;
+    // 目标深度按抖动的倍数计算，覆盖绝大部分到达时间的波动
+    private static final double JITTER_MULTIPLIER = 4.0;
+    // 目标深度下调前需要连续保持的包数，避免深度来回抖动
+    private static final int SHRINK_HOLD_PACKETS = 50;
+    // 最长的连续隐藏帧数，超过后输出静音
+    private static final int MAX_CONCEALED_FRAMES = 3;
+    // 缓冲上限（毫秒）
+    private static final int MAX_BUFFER_MILLIS = 300;
+    // 连续这么多个远落后于播放位置的包才认为对方重新编号，单个过时或重放的包只当作迟到丢弃
+    private static final int RESYNC_PACKETS = 3;
+
+    private final int frameBytes;   // 每帧字节数
+    private final int clockRate;    // 媒体时钟频率（Hz）
+    private int packetMillis;       // 对方每个包的时长（毫秒），初始为构造时的帧时长
+    private int maxDepth;           // 最大缓冲深度（帧），随包时长换算
+
+    // 槽位数据
+    private final byte[][] slots = new byte[CAPACITY][];
+    private final int[] lengths = new int[CAPACITY];
+    private final int[] seqs = new int[CAPACITY];
+    private final boolean[] filled = new boolean[CAPACITY];
+    private final boolean[] noise = new boolean[CAPACITY];     // 该槽位是否为舒适噪声描述
+    private final int[] noiseLevels = new int[CAPACITY];
+
+    // 播放状态
+    private boolean initialized = false; // 是否已收到第一个包
+    private boolean started = false;     // 是否已完成预缓冲并开始播放
+    private int playSeq;                 // 下一个要播放的序号
+    private int highestSeq;              // 已收到的最大序号
+    private int count;                   // 当前缓冲中的包数
+    private int staleRun;                // 连续远落后于播放位置的包数
+
+    // 抖动估计
+    private long lastArrivalNanos;
+    private int lastArrivalSeq;
+    private long lastArrivalTimestamp;
+    private boolean lastArrivalAudio;    // 上一个包是否为语音包（CN包的时间戳间隔不是包时长）
+    private double jitterMillis;
+    private int targetDepth = 2;         // 当前目标深度（帧）
+    private int shrinkCounter;
+
+    // 丢包隐藏
+    private final byte[] lastFrame;
+    private int lastLength;
+    private int lossRun;
+
+    // 舒适噪声：播放到CN描述后进入静音段，之后缺帧时输出舒适噪声而不是丢包隐藏
+    private final ComfortNoise comfortNoise = new ComfortNoise();
+    private boolean inSilence;
+    private int noiseLevel = ComfortNoise.SILENT_LEVEL;
+    private boolean generateNoise = true; // 关闭时静音段输出数字静音，由调用方按 silenceLevel() 自行生成
+
+    // 统计
+    private long lateDrops, duplicates, concealed, noiseFrames, recovered;
+
+    /**
+     * 构造函数
+     * @param frameBytes 每帧字节数
+     * @param frameMillis 每帧时长（毫秒），对方实际的包时长在收包后自动跟踪，这里只是初始值
+     * @param clockRate 媒体时钟频率（Hz），用于换算RTP时间戳
+     */
+    public JitterBuffer(int frameBytes, int frameMillis, int clockRate) {
+        this.frameBytes = frameBytes;
+        this.clockRate = clockRate;
+        this.packetMillis = frameMillis;
+        this.maxDepth = maxDepthFor(frameMillis);
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = new byte[frameBytes];
+        }
+        lastFrame = new byte[frameBytes];
+    }
+
+    /**
+     * 写入一个收到的数据包
+     * @param seq 16位序号
+     * @param timestamp RTP媒体时间戳
+     * @param data 数据
+     * @param offset 起始偏移
+     * @param length 数据长度
+     * @param arrivalNanos 到达时间（System.nanoTime）
+     */
+    public synchronized void put(int seq, long timestamp, byte[] data, int offset, int length, long arrivalNanos) {
+        int idx = insert(seq & 0xFFFF, timestamp, arrivalNanos, true);
+        if (idx < 0) {
+            return;
+        }
+        length = Math.min(length, frameBytes);
+        System.arraycopy(data, offset, slots[idx], 0, length);
+        lengths[idx] = length;
+        noise[idx] = false;
+    }
+
+    /**
+     * 写入一个舒适噪声描述（对方进入静音段）
+     * @param seq 16位序号
+     * @param timestamp RTP媒体时间戳
+     * @param level 噪声电平（-dBov）
+     * @param arrivalNanos 到达时间（System.nanoTime）
+     */
+    public synchronized void putComfortNoise(int seq, long timestamp, int level, long arrivalNanos) {
+        int idx = insert(seq & 0xFFFF, timestamp, arrivalNanos, false);
+        if (idx < 0) {
+            return;
+        }
+        noiseLevels[idx] = level;
+        noise[idx] = true;
+    }
+
+    /**
+     * 判断某一帧是否还在等待中（尚未收到，且没有错过播放时刻）
+     * @param seq 16位序号
+     * @return true表示该帧缺失，可以用冗余数据补上
+     */
+    public synchronized boolean isMissing(int seq) {
+        seq &= 0xFFFF;
+        if (!initialized) {
+            return false;
+        }
+        int diff = seqDiff(seq, playSeq);
+        if (diff < 0 || diff >= CAPACITY) {
+            return false;
+        }
+        int idx = seq & MASK;
+        return !(filled[idx] && seqs[idx] == seq);
+    }
+
+    /**
+     * 写入从冗余数据（FEC）中恢复的帧
+     * 只填补缺失的帧，不参与抖动估计，也不计入迟到和重复统计
+     * @param seq 16位序号
+     * @param timestamp RTP媒体时间戳
+     * @param data 数据
+     * @param offset 起始偏移
+     * @param length 数据长度
+     */
+    public synchronized void recover(int seq, long timestamp, byte[] data, int offset, int length) {
+        if (!isMissing(seq)) {
+            return;
+        }
+        seq &= 0xFFFF;
+        int idx = seq & MASK;
+        length = Math.min(length, frameBytes);
+        System.arraycopy(data, offset, slots[idx], 0, length);
+        lengths[idx] = length;
+        noise[idx] = false;
+        seqs[idx] = seq;
+        filled[idx] = true;
+        count++;
+        recovered++;
+        if (seqDiff(seq, highestSeq) > 0) {
+            highestSeq = seq;
+        }
+    }
+
+    /**
+     * 为收到的包分配槽位，同时更新抖动估计
+     * @param audio 是否为语音包
+     * @return 槽位下标，迟到或重复的包返回-1
+     */
+    private int insert(int seq, long timestamp, long arrivalNanos, boolean audio) {
+        int diff = initialized ? seqDiff(seq, playSeq) : 0;
+        if (!initialized || diff >= CAPACITY || (diff <= -CAPACITY && ++staleRun >= RESYNC_PACKETS)) {
+            // 第一个包，序号向前跳变太大，或连续多个包都远落后（对方重新编号），重新同步
+            reset(seq);
+            lastArrivalNanos = arrivalNanos;
+            lastArrivalSeq = seq;
+            lastArrivalTimestamp = timestamp;
+            lastArrivalAudio = audio;
+        } else if (diff <= -CAPACITY) {
+            // 很久以前的包（严重迟到或重放），丢弃，不打乱正在播放的缓冲
+            lateDrops++;
+            return -1;
+        } else {
+            staleRun = 0;
+            updateJitter(seq, timestamp, arrivalNanos, audio);
+        }
+
+        if (seqDiff(seq, playSeq) < 0) {
+            // 已经错过播放时刻的迟到包，直接丢弃
+            lateDrops++;
+            return -1;
+        }
+
+        int idx = seq & MASK;
+        if (filled[idx] && seqs[idx] == seq) {
+            duplicates++;
+            return -1;
+        }
+
+        seqs[idx] = seq;
+        filled[idx] = true;
+        count++;
+        if (seqDiff(seq, highestSeq) > 0) {
+            highestSeq = seq;
+        }
+        return idx;
+    }
+
+    /**
+     * 取出下一帧用于播放
+     * 缓冲不足时输出静音，丢包时输出隐藏帧，对方静音段中输出舒适噪声
+     * @param out 输出缓冲区（至少 frameBytes 字节）
+     * @return 写入的字节数
+     */
+    public synchronized int poll(byte[] out) {
+        if (!started) {
+            // 预缓冲：积累到目标深度后才开始播放
+            if (count > 0 && bufferedSpan() >= targetDepth) {
+                started = true;
+            } else {
+                return conceal(out);
+            }
+        }
+
+        // 缓冲超出目标时每次丢弃一帧，逐步收缩延迟
+        if (bufferedSpan() > targetDepth + 1) {
+            discard(playSeq);
+            playSeq = (playSeq + 1) & 0xFFFF;
+        }
+
+        int idx = playSeq & MASK;
+        if (filled[idx] && seqs[idx] == playSeq) {
+            filled[idx] = false;
+            count--;
+            playSeq = (playSeq + 1) & 0xFFFF;
+            if (noise[idx]) {
+                // 对方进入静音段，以后的空缺用舒适噪声填充
+                inSilence = true;
+                noiseLevel = noiseLevels[idx];
+                noiseFrames++;
+                return conceal(out);
+            }
+
+            int length = lengths[idx];
+            System.arraycopy(slots[idx], 0, out, 0, length);
+            System.arraycopy(slots[idx], 0, lastFrame, 0, length);
+            lastLength = length;
+            lossRun = 0;
+            inSilence = false;
+            return length;
+        }
+
+        if (count == 0) {
+            // 缓冲已空：数据包可能只是迟到，不推进序号，重新预缓冲
+            started = false;
+        } else {
+            // 后续的包已经到达，说明当前包丢失，跳过它
+            playSeq = (playSeq + 1) & 0xFFFF;
+        }
+        if (inSilence) {
+            noiseFrames++;
+        } else {
+            concealed++;
+        }
+        return conceal(out);
+    }
+
+    /**
+     * 换了一个媒体源（对方SSRC变化并已确认）：丢弃缓冲的内容，从下一个包重新同步
+     */
+    public synchronized void resync() {
+        Arrays.fill(filled, false);
+        count = 0;
+        started = false;
+        inSilence = false;
+        initialized = false;
+    }
+
+    /**
+     * 当前缓冲深度（帧）
+     */
+    public synchronized int depth() {
+        return count;
+    }
+
+    /**
+     * 当前目标深度（帧）
+     */
+    public synchronized int targetDepth() {
+        return targetDepth;
+    }
+
+    /**
+     * 是否正在连续播放语音（已完成预缓冲，且不在对方的静音段中）
+     */
+    public synchronized boolean isPlaying() {
+        return started && !inSilence;
+    }
+
+    /**
+     * 设置静音段中是否生成舒适噪声（默认生成）
+     * 会议混音关闭它：静音的参与者以数字静音参与混音，混音线程为每路输出只生成一路噪声
+     */
+    public synchronized void setComfortNoise(boolean enabled) {
+        generateNoise = enabled;
+    }
+
+    /**
+     * 对方静音段中的舒适噪声电平（-dBov），不在静音段中时为-1
+     */
+    public synchronized int silenceLevel() {
+        return inSilence ? noiseLevel : -1;
+    }
+
+    /**
+     * 累计由冗余数据（FEC）恢复的帧数
+     */
+    public synchronized long recovered() {
+        return recovered;
+    }
+
+    /**
+     * 当前抖动估计（毫秒）
+     */
+    public synchronized double jitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * 统计信息
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("depth=%d target=%d packet=%dms jitter=%.1fms late=%d dup=%d concealed=%d cn=%d fec=%d",
+                count, targetDepth, packetMillis, jitterMillis, lateDrops, duplicates, concealed, noiseFrames,
+                recovered);
+    }
+
+    /**
+     * 根据到达间隔与媒体时间戳间隔之差更新抖动估计和目标深度，
+     * 相邻的两个语音包还用来跟踪对方的包时长
+     */
+    private void updateJitter(int seq, long timestamp, long arrivalNanos, boolean audio) {
+        int seqDelta = seqDiff(seq, lastArrivalSeq);
+        if (seqDelta <= 0) {
+            return; // 乱序或重复的包不参与抖动估计
+        }
+        int mediaDelta = (int) (timestamp - lastArrivalTimestamp); // 32位时间戳回绕
+        double transit = (arrivalNanos - lastArrivalNanos) / 1_000_000.0 - mediaDelta * 1000.0 / clockRate;
+        jitterMillis += (Math.abs(transit) - jitterMillis) * JITTER_GAIN;
+        if (audio && lastArrivalAudio && mediaDelta > 0) {
+            updatePacketMillis((int) Math.round(mediaDelta * 1000.0 / clockRate / seqDelta));
+        }
+        lastArrivalNanos = arrivalNanos;
+        lastArrivalSeq = seq;
+        lastArrivalTimestamp = timestamp;
+        lastArrivalAudio = audio;
+
+        int wanted = 1 + (int) Math.ceil(JITTER_MULTIPLIER * jitterMillis / packetMillis);
+        wanted = Math.max(1, Math.min(maxDepth, wanted));
+        if (wanted > targetDepth) {
+            // 抖动变大时立即加深
+            targetDepth = wanted;
+            shrinkCounter = 0;
+        } else if (wanted < targetDepth) {
+            // 抖动变小时缓慢收缩
+            if (++shrinkCounter >= SHRINK_HOLD_PACKETS) {
+                targetDepth--;
+                shrinkCounter = 0;
+            }
+        } else {
+            shrinkCounter = 0;
+        }
+    }
+
+    /**
+     * 生成丢包隐藏帧：重复上一帧并逐帧衰减，多次连续丢失后输出静音
+     * 对方处于静音段时输出舒适噪声
+     */
+    private int conceal(byte[] out) {
+        int length = lastLength > 0 ? lastLength : frameBytes;
+        if (inSilence) {
+            if (generateNoise) {
+                comfortNoise.generate(out, 0, length, noiseLevel);
+            } else {
+                Arrays.fill(out, 0, length, (byte) 0);
+            }
+            return length;
+        }
+        lossRun++;
+        if (lastLength == 0 || lossRun > MAX_CONCEALED_FRAMES) {
+            Arrays.fill(out, 0, length, (byte) 0);
+            return length;
+        }
+
+        // 16位大端序样本按比例衰减
+        int gain = 256 * (MAX_CONCEALED_FRAMES + 1 - lossRun) / (MAX_CONCEALED_FRAMES + 1);
+        for (int i = 0; i < length - 1; i += 2) {
+            int sample = (lastFrame[i] << 8) | (lastFrame[i + 1] & 0xFF);
+            sample = (sample * gain) >> 8;
+            out[i] = (byte) (sample >> 8);
+            out[i + 1] = (byte) sample;
+        }
+        return length;
+    }
+
+    /**
+     * 对方改变了包时长：按新的时长换算上限，目标深度保持同样的毫秒数
+     * 只接受支持的帧时长，时间戳异常的包不会改变它
+     */
+    private void updatePacketMillis(int millis) {
+        if (millis == packetMillis || !AudioThread.isValidFrameMillis(millis)) {
+            return;
+        }
+        maxDepth = maxDepthFor(millis);
+        targetDepth = Math.max(1, Math.min(maxDepth, (targetDepth * packetMillis + millis - 1) / millis));
+        shrinkCounter = 0;
+        packetMillis = millis;
+    }
+
+    private static int maxDepthFor(int packetMillis) {
+        return Math.max(2, Math.min(CAPACITY / 2, MAX_BUFFER_MILLIS / packetMillis));
+    }
+
+    /**
+     * 从播放序号到最大序号之间的帧数
+     */
+    private int bufferedSpan() {
+        return seqDiff(highestSeq, playSeq) + 1;
+    }
+
+    private void discard(int seq) {
+        int idx = seq & MASK;
+        if (filled[idx] && seqs[idx] == seq) {
+            filled[idx] = false;
+            count--;
+        }
+    }
+
+    private void reset(int seq) {
+        Arrays.fill(filled, false);
+        count = 0;
+        staleRun = 0;
+        playSeq = seq;
+        highestSeq = seq;
+        started = false;
+        inSilence = false;
+        initialized = true;
+    }
+
+    /**
+     * 16位序号差值（考虑回绕）
+     */
+    static int seqDiff(int a, int b) {
+        return (short) (a - b);
+    }
+}
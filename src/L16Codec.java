@@ -0,0 +1,45 @@
+/**
+ * L16编解码器：不压缩的16位PCM（8000Hz单声道，128kbit/s）
+ * 负载即大端序PCM，编解码只是拷贝
+ */
+public class L16Codec implements Codec {
+    public static final String NAME = "L16";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int payloadType() {
+        return RtpHeader.PT_L16;
+    }
+
+    @Override
+    public int sampleRate() {
+        return 8000;
+    }
+
+    @Override
+    public int bitrate() {
+        return 8000 * 16;
+    }
+
+    @Override
+    public int encode(byte[] pcm, int pcmOffset, int pcmLength, byte[] out, int outOffset) {
+        System.arraycopy(pcm, pcmOffset, out, outOffset, pcmLength);
+        return pcmLength;
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset) {
+        length &= ~1; // 只取完整样本
+        System.arraycopy(data, offset, pcm, pcmOffset, length);
+        return length;
+    }
+
+    @Override
+    public int decodedLength(int length) {
+        return length & ~1;
+    }
+}
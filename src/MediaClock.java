@@ -0,0 +1,150 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 媒体时钟：按样本数计算墙上时钟（System.nanoTime）上的时刻，为文件和合成音频设备控制实时节奏
+ * 每个时刻都由起点加样本数算出，而不是逐帧累加睡眠时间，线程晚醒的误差不会累积成漂移；
+ * 起点每满一秒前移一次，样本数保持在一秒以内，长时间运行也不会溢出
+ *
+ * parkNanos 通常晚醒几十微秒，对20毫秒的帧可以忽略。需要更高精度时可以用
+ * -Dipphone.clock.spinMicros=N 在最后N微秒忙等（占用CPU，大量并发通话时不建议开启）
+ *
+ * 可以指定相对本机时钟的频率偏差，模拟晶振略快或略慢的声卡，用于测试播放端的时钟漂移补偿
+ */
+public final class MediaClock {
+    // 最后阶段忙等的时间（纳秒）
+    private static final long SPIN_NANOS = Long.getLong("ipphone.clock.spinMicros", 0) * 1000;
+
+    private final int sampleRate;
+    private final long secondNanos; // 一秒的样本在本机时钟上的时长（有频率偏差时不是整1秒）
+    private final long bufferNanos; // 设备缓冲对应的时长：输入最多落后、输出最多超前这么多
+    private long anchorNanos;       // 位置为0时对应的时刻
+    private long samples;           // 当前位置（相对起点的样本数）
+    private long resyncs;           // 输入溢出或输出欠载后重新对齐的次数
+    private boolean started;        // 是否已经推进过（第一次对齐不计入 resyncs）
+
+    private volatile boolean cancelled;
+    private volatile Thread waiter;
+
+    /**
+     * 构造函数，当前时刻为起点
+     * @param sampleRate 采样率
+     * @param bufferBytes 设备缓冲的字节数（16位单声道）
+     */
+    public MediaClock(int sampleRate, int bufferBytes) {
+        this(sampleRate, bufferBytes, 0);
+    }
+
+    /**
+     * 构造函数，当前时刻为起点
+     * @param sampleRate 采样率
+     * @param bufferBytes 设备缓冲的字节数（16位单声道）
+     * @param skewPpm 频率偏差（ppm），正值表示比本机时钟快
+     */
+    public MediaClock(int sampleRate, int bufferBytes, double skewPpm) {
+        this.sampleRate = sampleRate;
+        this.secondNanos = Math.round(1e9 / (1 + skewPpm * 1e-6));
+        this.bufferNanos = bufferBytes / 2 * 1_000_000_000L / sampleRate;
+        this.anchorNanos = System.nanoTime();
+    }
+
+    /**
+     * 输入设备：这段样本采集完成后返回，模拟麦克风的 read
+     * 落后超过设备缓冲时（相当于声卡溢出，中间的样本已经丢失）重新对齐到当前时刻
+     * @param count 样本数
+     * @return false表示时钟已取消
+     */
+    public boolean capture(int count) {
+        advance(count);
+        long due = positionNanos();
+        long now = System.nanoTime();
+        if (now - due > bufferNanos) {
+            resync(now);
+            due = now;
+        }
+        return sleepUntil(due);
+    }
+
+    /**
+     * 输出设备：这段样本写入后，超前播放位置不超过设备缓冲时返回，模拟扬声器的 write
+     * 已写入的样本全部播放完（欠载）时从当前时刻重新开始
+     * @param count 样本数
+     * @return false表示时钟已取消
+     */
+    public boolean play(int count) {
+        long now = System.nanoTime();
+        if (positionNanos() < now) {
+            resync(now);
+        }
+        advance(count);
+        return sleepUntil(positionNanos() - bufferNanos);
+    }
+
+    /**
+     * 当前位置对应的时刻
+     */
+    public long positionNanos() {
+        return anchorNanos + samples * secondNanos / sampleRate;
+    }
+
+    /**
+     * 把当前位置对齐到指定时刻
+     */
+    private void resync(long nanos) {
+        anchorNanos = nanos - samples * secondNanos / sampleRate;
+        if (started) {
+            resyncs++;
+        }
+    }
+
+    private void advance(int count) {
+        started = true;
+        samples += count;
+        while (samples >= sampleRate) {
+            samples -= sampleRate;
+            anchorNanos += secondNanos;
+        }
+    }
+
+    /**
+     * 等待到指定时刻
+     * @param deadline System.nanoTime() 时刻
+     * @return false表示时钟已取消
+     */
+    private boolean sleepUntil(long deadline) {
+        waiter = Thread.currentThread();
+        try {
+            long remaining;
+            while (!cancelled && (remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+                LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            }
+            while (!cancelled && deadline - System.nanoTime() > 0) {
+                Thread.onSpinWait();
+            }
+        } finally {
+            waiter = null;
+        }
+        return !cancelled;
+    }
+
+    /**
+     * 取消时钟：正在等待的 capture/play 立即返回false（可以从其他线程调用）
+     */
+    public void cancel() {
+        cancelled = true;
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 输入溢出或输出欠载的次数（只由使用时钟的线程更新，其他线程读到的是近似值）
+     */
+    public long getResyncs() {
+        return resyncs;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * 媒体事件回调
+ * 由音频线程调用，界面或无界面的引擎都可以实现它
+ */
+public interface MediaListener {
+    /**
+     * 麦克风是否检测到声音（只在状态变化时回调）
+     * @param hasSound true表示有声音
+     */
+    void onMicActivity(boolean hasSound);
+}
@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 媒体端口分配器
+ * 从配置的UDP端口范围中为每路通话分配一个端口并直接绑定，通话结束后归还，
+ * 不再先打开再关闭套接字"试探"端口是否可用（试探和真正绑定之间端口可能被占用）
+ *
+ * - 占用情况保存在原子位图中（每个端口一位），分配和归还都是无锁的 CAS，多路通话并发建立也不会冲突
+ * - 分配从上次的位置继续向后查找，刚归还的端口要等整个范围轮转一遍才会再被使用，
+ *   上一路通话迟到的数据包不会进入下一路通话
+ * - 端口被其他程序占用（绑定失败）时跳过，继续查找下一个
+ * - 绑定前设置收发缓冲区大小和 DSCP EF（加速转发）流量类别，支持 QoS 的网络会优先转发语音包；
+ *   系统不允许设置流量类别时忽略
+ *
+ * 套接字基于 DatagramChannel 创建，既可以阻塞收发，也可以交给 MediaReactor 接管；
+ * 必须通过 close 关闭，端口才会归还
+ */
+public class MediaPortAllocator {
+    public static final int DEFAULT_MIN_PORT = 16384;
+    public static final int DEFAULT_MAX_PORT = 32767;
+    // 每路通话每秒约50个包，缓冲区按几百毫秒的突发估算，系统上限（net.core.rmem_max）会截断过大的值
+    public static final int DEFAULT_RECEIVE_BUFFER = 256 * 1024;
+    public static final int DEFAULT_SEND_BUFFER = 64 * 1024;
+    // DSCP EF（46）左移两位后的 IP TOS 值
+    public static final int TRAFFIC_CLASS_EF = 0xB8;
+
+    private final int minPort;
+    private final int maxPort;
+    private final AtomicLongArray used;
+    private final AtomicInteger cursor;
+    private volatile int receiveBuffer = DEFAULT_RECEIVE_BUFFER;
+    private volatile int sendBuffer = DEFAULT_SEND_BUFFER;
+    private volatile int trafficClass = TRAFFIC_CLASS_EF;
+
+    // 统计
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong bindFailures = new AtomicLong();
+
+    /**
+     * 使用默认端口范围
+     */
+    public MediaPortAllocator() {
+        this(DEFAULT_MIN_PORT, DEFAULT_MAX_PORT);
+    }
+
+    /**
+     * 构造函数
+     * @param minPort 最小端口（含）
+     * @param maxPort 最大端口（含）
+     */
+    public MediaPortAllocator(int minPort, int maxPort) {
+        if (minPort < 1 || maxPort > 65535 || minPort > maxPort) {
+            throw new IllegalArgumentException("无效的端口范围: " + minPort + "-" + maxPort);
+        }
+        this.minPort = minPort;
+        this.maxPort = maxPort;
+        this.used = new AtomicLongArray((maxPort - minPort + 64) / 64);
+        // 从随机位置开始，同一台机器上的多个进程（或多个分配器）不会从同一个端口开始争用
+        this.cursor = new AtomicInteger(ThreadLocalRandom.current().nextInt(maxPort - minPort + 1));
+    }
+
+    /**
+     * 解析 "最小-最大" 形式的端口范围
+     */
+    public static MediaPortAllocator parse(String range) {
+        int dash = range.indexOf('-');
+        try {
+            return new MediaPortAllocator(Integer.parseInt(range.substring(0, dash).trim()),
+                    Integer.parseInt(range.substring(dash + 1).trim()));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("端口范围格式应为 最小-最大: " + range);
+        }
+    }
+
+    /**
+     * 设置新分配的套接字的收发缓冲区大小（字节，0表示使用系统默认值）
+     */
+    public void setBufferSizes(int receiveBuffer, int sendBuffer) {
+        this.receiveBuffer = receiveBuffer;
+        this.sendBuffer = sendBuffer;
+    }
+
+    /**
+     * 设置新分配的套接字的流量类别（IP TOS，0表示不设置）
+     */
+    public void setTrafficClass(int trafficClass) {
+        this.trafficClass = trafficClass;
+    }
+
+    public int getMinPort() {
+        return minPort;
+    }
+
+    public int getMaxPort() {
+        return maxPort;
+    }
+
+    /**
+     * 范围内的端口数
+     */
+    public int getCapacity() {
+        return maxPort - minPort + 1;
+    }
+
+    /**
+     * 已分配、尚未归还的端口数
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * 因端口被其他程序占用而跳过的次数
+     */
+    public long getBindFailures() {
+        return bindFailures.get();
+    }
+
+    /**
+     * 从范围中分配一个端口并绑定
+     * @return 已绑定的媒体套接字
+     * @throws IOException 范围内没有可用端口时抛出
+     */
+    public DatagramSocket open() throws IOException {
+        int capacity = getCapacity();
+        int start = Math.floorMod(cursor.getAndIncrement(), capacity);
+        int index = start;
+        // 最多把整个范围找两遍：第一遍可能被并发分配抢走，第二遍仍找不到才认为已用尽
+        for (int scanned = 0; scanned < 2 * capacity; scanned++) {
+            if (used.get(index >>> 6) == -1L) {
+                // 整个字都已占用，跳到下一个字
+                int skip = 64 - (index & 63);
+                scanned += skip - 1;
+                index = index + skip >= capacity ? 0 : index + skip;
+                continue;
+            }
+            if (acquire(index)) {
+                cursor.set(index + 1);
+                try {
+                    return bind(minPort + index);
+                } catch (BindException ex) {
+                    // 被其他程序占用，归还后继续查找
+                    bindFailures.incrementAndGet();
+                    release(index);
+                } catch (IOException ex) {
+                    release(index);
+                    throw ex;
+                }
+            }
+            index = index + 1 == capacity ? 0 : index + 1;
+        }
+        throw new IOException("媒体端口已用尽（" + minPort + "-" + maxPort + "）");
+    }
+
+    /**
+     * 绑定指定端口
+     * @param port 端口，0表示从范围中分配；范围外的端口直接绑定，不记录在位图中
+     * @throws BindException 端口已被占用时抛出
+     */
+    public DatagramSocket open(int port) throws IOException {
+        if (port == 0) {
+            return open();
+        }
+        if (port < minPort || port > maxPort) {
+            return bind(port);
+        }
+        if (!acquire(port - minPort)) {
+            throw new BindException("端口 " + port + " 已被本程序占用");
+        }
+        try {
+            return bind(port);
+        } catch (IOException ex) {
+            release(port - minPort);
+            throw ex;
+        }
+    }
+
+    /**
+     * 关闭套接字并归还端口（套接字必须尚未关闭）
+     */
+    public void close(DatagramSocket socket) {
+        close(socket, socket.getLocalPort());
+    }
+
+    /**
+     * 关闭套接字并归还端口，每个分配出的端口只能调用一次
+     * 套接字可能已经被其他组件（如 MediaReactor）关闭时使用，端口由调用方在分配后记下
+     * @param socket 套接字
+     * @param port 分配时绑定的端口
+     */
+    public void close(DatagramSocket socket, int port) {
+        socket.close();
+        if (port >= minPort && port <= maxPort) {
+            release(port - minPort);
+        }
+    }
+
+    private DatagramSocket bind(int port) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            if (receiveBuffer > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBuffer);
+            }
+            if (sendBuffer > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBuffer);
+            }
+            if (trafficClass != 0) {
+                try {
+                    channel.setOption(StandardSocketOptions.IP_TOS, trafficClass);
+                } catch (IOException | UnsupportedOperationException ignored) {
+                    // 部分系统不允许普通进程设置流量类别
+                }
+            }
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return channel.socket();
+    }
+
+    /**
+     * 占用位图中的一位
+     * @return false表示已被占用
+     */
+    private boolean acquire(int index) {
+        int word = index >>> 6;
+        long bit = 1L << (index & 63);
+        while (true) {
+            long current = used.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (used.compareAndSet(word, current, current | bit)) {
+                inUse.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private void release(int index) {
+        int word = index >>> 6;
+        long bit = 1L << (index & 63);
+        while (true) {
+            long current = used.get(word);
+            if ((current & bit) == 0) {
+                return;
+            }
+            if (used.compareAndSet(word, current, current & ~bit)) {
+                inUse.decrementAndGet();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于NIO Selector的UDP媒体反应器
+ * 用少量固定的事件循环线程处理大量通话的RTP流，取代每个套接字一个阻塞接收线程的模型
+ *
+ * - 每个事件循环拥有一个 Selector；数据包直接读入帧池中的直接缓冲区并就地分发，
+ *   处理方可以持有该帧（引用计数）交给其他线程继续处理，不需要拷贝
+ * - 媒体流可以独占一个通道（register），也可以共享一个端口按SSRC分流（openSharedPort）
+ * - 已连接的通道使用 read() 接收，不会为每个包分配源地址对象
+ * - 一次唤醒把通道的接收队列读空；发送方向用 getBatchSender() 把多路流同一刻的数据包集中发出
+ */
+public class MediaReactor implements Closeable {
+    // 最大UDP数据包长度
+    private static final int MAX_PACKET = 2048;
+    // 共享端口的接收缓冲区大小
+    private static final int SHARED_RCVBUF = 4 * 1024 * 1024;
+    // 默认的帧池大小（帧数），每帧 MAX_PACKET 字节
+    private static final int DEFAULT_POOL_FRAMES = 4096;
+    // 调试模式下帧持有超过该时间（毫秒）视为泄漏，检查间隔相同
+    private static final long LEAK_CHECK_MILLIS = 5000;
+
+    private final FramePool pool;
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean running = true;
+    private BatchSender batchSender; // 首次使用时创建
+
+    /**
+     * 构造函数，立即启动事件循环
+     * @param threads 事件循环线程数
+     * @throws IOException Selector 创建失败时抛出
+     */
+    public MediaReactor(int threads) throws IOException {
+        this(threads, DEFAULT_POOL_FRAMES);
+    }
+
+    /**
+     * 构造函数，立即启动事件循环
+     * @param threads 事件循环线程数
+     * @param poolFrames 接收帧池的帧数，所有事件循环共用，应覆盖各处理方持有的帧
+     * @throws IOException Selector 创建失败时抛出
+     */
+    public MediaReactor(int threads, int poolFrames) throws IOException {
+        pool = new FramePool(poolFrames, MAX_PACKET);
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        for (EventLoop loop : loops) {
+            CallExecutors.media().execute(loop);
+        }
+    }
+
+    /**
+     * 使用与CPU核数相同的事件循环线程
+     */
+    public MediaReactor() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 注册一个独占的媒体通道，反应器接管该通道（MediaStream.close 时关闭）
+     * @param channel 已绑定的UDP通道，会被设为非阻塞
+     * @param remote 对方地址，null表示从第一个收到的包中学习
+     * @param handler 数据包回调
+     * @return 媒体流
+     * @throws IOException 设置通道失败时抛出
+     */
+    public MediaStream register(DatagramChannel channel, SocketAddress remote, MediaStreamHandler handler)
+            throws IOException {
+        channel.configureBlocking(false);
+        EventLoop loop = nextLoop();
+        MediaStream stream = new MediaStream(loop, channel, null, 0, remote, handler);
+        loop.execute(() -> loop.registerChannel(channel, stream));
+        return stream;
+    }
+
+    /**
+     * 打开一个共享媒体端口，多路流按SSRC分流
+     * @param bindAddress 绑定地址
+     * @return 共享端口
+     * @throws IOException 绑定失败时抛出
+     */
+    public SharedPort openSharedPort(InetSocketAddress bindAddress) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, SHARED_RCVBUF);
+            channel.bind(bindAddress);
+            channel.configureBlocking(false);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        EventLoop loop = nextLoop();
+        SharedPort port = new SharedPort(loop, channel);
+        loop.execute(() -> loop.registerChannel(channel, port));
+        return port;
+    }
+
+    /**
+     * 批量发送调度器（首次调用时启动），多路流的周期发送和转发在同一刻里集中发出
+     */
+    public synchronized BatchSender getBatchSender() {
+        if (batchSender == null) {
+            batchSender = new BatchSender();
+        }
+        return batchSender;
+    }
+
+    /**
+     * 接收帧池，可用于查看占用情况或检查泄漏
+     */
+    public FramePool getFramePool() {
+        return pool;
+    }
+
+    /**
+     * 停止所有事件循环，关闭接管的通道（包括关闭前刚交给反应器、还未注册的）
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (this) {
+            if (batchSender != null) {
+                batchSender.close();
+            }
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * 各事件循环的统计信息
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MediaReactor[");
+        for (EventLoop loop : loops) {
+            sb.append(" loop").append(loop.index).append(": packets=").append(loop.packets)
+                    .append(" invalid=").append(loop.invalid).append(" poolDrops=").append(loop.poolDrops);
+        }
+        return sb.append(" ").append(pool).append(" ]").toString();
+    }
+
+    private EventLoop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * 共享媒体端口：一个UDP通道上承载多路流，按SSRC分流
+     * 分流表只在所属事件循环线程中访问，增删通过任务提交
+     */
+    public class SharedPort {
+        private final EventLoop loop;
+        private final DatagramChannel channel;
+
+        // SSRC -> 媒体流，开放寻址哈希表（线性探测，删除时回移）
+        private int[] keys = new int[16];
+        private MediaStream[] values = new MediaStream[16];
+        private int size;
+
+        private long unknownPackets; // 未注册SSRC的数据包数
+
+        SharedPort(EventLoop loop, DatagramChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        /**
+         * 在共享端口上添加一路流
+         * @param ssrc 对方的SSRC
+         * @param remote 对方地址，null表示从第一个收到的包中学习
+         * @param handler 数据包回调
+         * @return 媒体流
+         */
+        public MediaStream addStream(int ssrc, SocketAddress remote, MediaStreamHandler handler) {
+            MediaStream stream = new MediaStream(loop, channel, this, ssrc, remote, handler);
+            loop.execute(() -> put(ssrc, stream));
+            return stream;
+        }
+
+        /**
+         * 实际绑定的本地端口
+         */
+        public int getLocalPort() throws IOException {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        }
+
+        public long getUnknownPackets() {
+            return unknownPackets;
+        }
+
+        /**
+         * 关闭共享端口及其上的所有流
+         */
+        public void close() {
+            loop.execute(() -> {
+                for (MediaStream stream : values) {
+                    if (stream != null) {
+                        stream.close();
+                    }
+                }
+                loop.closeChannel(channel);
+            });
+        }
+
+        MediaStream get(int ssrc) {
+            int mask = keys.length - 1;
+            for (int i = mix(ssrc) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == ssrc) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(int ssrc, MediaStream stream) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = mix(ssrc) & mask;
+            while (values[i] != null && keys[i] != ssrc) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                size++;
+            }
+            keys[i] = ssrc;
+            values[i] = stream;
+        }
+
+        void remove(int ssrc) {
+            int mask = keys.length - 1;
+            int i = mix(ssrc) & mask;
+            while (values[i] != null && keys[i] != ssrc) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                return;
+            }
+            values[i] = null;
+            size--;
+            // 回移后续同一探测链上的元素，保证查找不会提前遇到空位
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = mix(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            MediaStream[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new MediaStream[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * 事件循环：一个线程、一个 Selector，数据包读入帧池中的帧
+     */
+    final class EventLoop implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean stopped; // 事件循环已退出、选择器已关闭
+        // 帧池用尽时读入这里后丢弃，保证接收队列仍被读空
+        private final ByteBuffer overflow = ByteBuffer.allocateDirect(MAX_PACKET);
+        private final RtpHeader header = new RtpHeader();
+
+        // 统计
+        private long packets, invalid, poolDrops;
+
+        EventLoop(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        /**
+         * 在事件循环线程中执行任务（注册、注销等）
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+            if (stopped) {
+                // 事件循环已退出：在调用线程中执行，注册遇到已关闭的选择器时直接关闭通道
+                runTasks();
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void run() {
+            Thread.currentThread().setName("media-reactor-" + index);
+            try {
+                long nextLeakCheck = System.nanoTime();
+                while (running) {
+                    if (FramePool.DEBUG && index == 0) {
+                        // 调试模式：由第一个事件循环定期检查帧泄漏
+                        selector.select(this::onReadable, LEAK_CHECK_MILLIS);
+                        if (System.nanoTime() - nextLeakCheck >= 0) {
+                            pool.checkLeaks(LEAK_CHECK_MILLIS);
+                            nextLeakCheck = System.nanoTime() + LEAK_CHECK_MILLIS * 1_000_000L;
+                        }
+                    } else {
+                        selector.select(this::onReadable);
+                    }
+                    runTasks();
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                if (running) {
+                    System.err.println("媒体事件循环错误: " + ex.getMessage());
+                }
+            } finally {
+                // 关闭前交来的注册也要处理（事件循环可能一次也没运行），否则通道既不会被接收也不会被关闭
+                runTasks();
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly((DatagramChannel) key.channel());
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // 关闭时的异常可以忽略
+                }
+                stopped = true;
+                runTasks();
+            }
+        }
+
+        /**
+         * 通道可读：一次唤醒尽量读空接收队列
+         * 每个数据包读入一个新取出的帧，分发后释放事件循环自己的引用；处理方持有的帧留给处理方释放
+         */
+        private void onReadable(SelectionKey key) {
+            DatagramChannel channel = (DatagramChannel) key.channel();
+            Object attachment = key.attachment();
+            Frame frame = null;
+            try {
+                while (true) {
+                    if (frame == null) {
+                        frame = pool.acquire();
+                    }
+                    ByteBuffer buffer = frame != null ? frame.buffer() : overflow;
+                    buffer.clear();
+                    SocketAddress source = null;
+                    if (channel.isConnected()) {
+                        if (channel.read(buffer) <= 0) {
+                            break;
+                        }
+                    } else if ((source = channel.receive(buffer)) == null) {
+                        break;
+                    }
+                    buffer.flip();
+                    packets++;
+                    if (frame == null) {
+                        poolDrops++;
+                        continue;
+                    }
+                    frame.setTime(System.nanoTime());
+                    dispatch(attachment, frame, source);
+                    frame.release();
+                    frame = null;
+                }
+            } catch (IOException ex) {
+                // ICMP端口不可达等错误只影响这一次读取
+            } finally {
+                if (frame != null) {
+                    frame.release(); // 没有读到数据的帧直接归还
+                }
+            }
+        }
+
+        private void dispatch(Object attachment, Frame frame, SocketAddress source) {
+            ByteBuffer buffer = frame.buffer();
+            MediaStream stream;
+            if (attachment instanceof SharedPort) {
+                SharedPort port = (SharedPort) attachment;
+                if (buffer.remaining() < RtpHeader.SIZE) {
+                    invalid++;
+                    return;
+                }
+                stream = port.get(RtpHeader.peekSsrc(buffer));
+                if (stream == null) {
+                    port.unknownPackets++;
+                    return;
+                }
+            } else {
+                stream = (MediaStream) attachment;
+            }
+            if (!header.parse(buffer)) {
+                invalid++;
+                return;
+            }
+            stream.deliver(frame, header, source);
+        }
+
+        void registerChannel(DatagramChannel channel, Object attachment) {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, attachment);
+            } catch (ClosedSelectorException ex) {
+                closeQuietly(channel); // 反应器已关闭
+            } catch (IOException ex) {
+                System.err.println("注册媒体通道失败: " + ex.getMessage());
+                closeQuietly(channel);
+            }
+        }
+
+        void unregister(MediaStream stream) {
+            if (stream.sharedPort() != null) {
+                stream.sharedPort().remove(stream.getSsrc());
+            } else {
+                closeChannel(stream.channel());
+            }
+        }
+
+        void closeChannel(DatagramChannel channel) {
+            SelectionKey key = channel.keyFor(selector);
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+        }
+
+        private void closeQuietly(DatagramChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 关闭时的异常可以忽略
+            }
+        }
+    }
+}
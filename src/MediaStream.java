@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * MediaReactor 中的一路媒体流
+ * 可以独占一个UDP通道，也可以和其他流共享一个端口（按SSRC分流）
+ */
+public class MediaStream {
+    private final MediaReactor.EventLoop loop;
+    private final DatagramChannel channel;
+    private final MediaReactor.SharedPort sharedPort; // 独占通道时为null
+    private final int ssrc;                            // 共享端口上的分流键
+    private final MediaStreamHandler handler;
+
+    // 对方地址：注册时未指定的，从第一个收到的包中学习
+    private volatile SocketAddress remote;
+
+    // 统计（不做同步，其他线程读取到的是近似值）
+    private long packetsReceived, bytesReceived;
+    private long packetsSent, sendDrops;
+
+    private volatile boolean closed = false;
+
+    MediaStream(MediaReactor.EventLoop loop, DatagramChannel channel, MediaReactor.SharedPort sharedPort,
+                int ssrc, SocketAddress remote, MediaStreamHandler handler) {
+        this.loop = loop;
+        this.channel = channel;
+        this.sharedPort = sharedPort;
+        this.ssrc = ssrc;
+        this.remote = remote;
+        this.handler = handler;
+    }
+
+    /**
+     * 向对方发送一个数据包（非阻塞，发送缓冲区满时丢弃）
+     * 可以在任意线程调用
+     * @param packet 数据包（position 到 limit）
+     * @return true表示已发送
+     */
+    public boolean send(ByteBuffer packet) {
+        SocketAddress target = remote;
+        if (closed || target == null) {
+            return false;
+        }
+        try {
+            int sent = channel.isConnected() ? channel.write(packet) : channel.send(packet, target);
+            if (sent == 0) {
+                sendDrops++;
+                return false;
+            }
+            packetsSent++;
+            return true;
+        } catch (IOException ex) {
+            sendDrops++;
+            return false;
+        }
+    }
+
+    /**
+     * 关闭媒体流；独占的通道会一并关闭
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loop.execute(() -> loop.unregister(this));
+    }
+
+    public SocketAddress getRemote() {
+        return remote;
+    }
+
+    public int getSsrc() {
+        return ssrc;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getSendDrops() {
+        return sendDrops;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // ---- 以下由事件循环线程调用 ----
+
+    DatagramChannel channel() {
+        return channel;
+    }
+
+    MediaReactor.SharedPort sharedPort() {
+        return sharedPort;
+    }
+
+    void deliver(Frame frame, RtpHeader header, SocketAddress source) {
+        if (remote == null && source != null) {
+            remote = source; // 对称RTP：回复到对方实际的发送地址
+        }
+        packetsReceived++;
+        bytesReceived += frame.buffer().remaining();
+        handler.onFrame(this, frame, header);
+    }
+}
@@ -0,0 +1,28 @@
+import java.nio.ByteBuffer;
+
+/**
+ * 媒体流数据包回调
+ * 由 MediaReactor 的事件循环线程调用，回调中不能阻塞
+ */
+public interface MediaStreamHandler {
+    /**
+     * 收到一个合法的RTP数据包
+     * packet 是事件循环复用的直接缓冲区，只在回调期间有效，需要保留数据时必须自行拷贝
+     * @param stream 数据包所属的媒体流
+     * @param packet 数据包（position 到 limit 为完整的RTP包）
+     * @param header 已解析的RTP头部（负载偏移为 packet 中的绝对位置）
+     */
+    void onPacket(MediaStream stream, ByteBuffer packet, RtpHeader header);
+
+    /**
+     * 收到一个合法的RTP数据包（帧池中的帧）
+     * 默认转交 onPacket；需要在回调之后继续使用数据的处理方可以覆盖本方法，
+     * 调用 frame.retain() 持有该帧，用完后 release()，不需要拷贝
+     * @param stream 数据包所属的媒体流
+     * @param frame 数据包所在的帧（time() 为到达时间）
+     * @param header 已解析的RTP头部（负载偏移为帧缓冲区中的绝对位置）
+     */
+    default void onFrame(MediaStream stream, Frame frame, RtpHeader header) {
+        onPacket(stream, frame.buffer(), header);
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * 白噪声输入，可以按"讲话/停顿"交替输出，近似真实对话的发包模式
+ * 持续不变的噪声会被语音活动检测逐渐当作背景噪声（噪声电平每秒上升3dB），之后只发送舒适噪声包；
+ * 交替输出时每段讲话都判为有声、停顿时静音抑制，与真实通话一样混合发送语音包和舒适噪声包
+ *
+ * 使用 xorshift 生成随机数，不分配对象、不加锁
+ */
+public class NoiseSource extends SyntheticSource {
+    private final int amplitude;
+    private final int talkMillis;
+    private final int pauseMillis;
+    private int state;
+
+    // 讲话/停顿周期（样本数），0表示持续输出
+    private int talkSamples;
+    private int cycleSamples;
+    private int position;
+
+    /**
+     * 持续输出的白噪声
+     * @param amplitude 幅度（0~32767）
+     */
+    public NoiseSource(int amplitude) {
+        this(amplitude, 0, 0);
+    }
+
+    /**
+     * 按讲话/停顿交替输出的白噪声
+     * @param amplitude 幅度（0~32767）
+     * @param talkMillis 每段讲话时长（毫秒）
+     * @param pauseMillis 每段停顿时长（毫秒），0表示持续输出
+     */
+    public NoiseSource(int amplitude, int talkMillis, int pauseMillis) {
+        this.amplitude = Math.max(0, Math.min(Short.MAX_VALUE, amplitude));
+        this.talkMillis = Math.max(0, talkMillis);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.state = (int) System.nanoTime() | 1;
+    }
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) {
+        super.open(sampleRate, bufferBytes);
+        if (pauseMillis > 0) {
+            talkSamples = sampleRate * talkMillis / 1000;
+            cycleSamples = talkSamples + sampleRate * pauseMillis / 1000;
+            // 各路通话从周期中的随机位置开始，避免所有通话同时讲话
+            position = (state >>> 1) % cycleSamples;
+        }
+    }
+
+    @Override
+    protected int nextSample() {
+        state ^= state << 13;
+        state ^= state >>> 17;
+        state ^= state << 5;
+        if (cycleSamples > 0) {
+            int p = position;
+            position = p + 1 == cycleSamples ? 0 : p + 1;
+            if (p >= talkSamples) {
+                return 0;
+            }
+        }
+        // 高16位作为 -32768~32767 的均匀分布，再按幅度缩放
+        return (state >> 16) * amplitude / 32768;
+    }
+
+    @Override
+    public String name() {
+        return "噪声输入";
+    }
+}
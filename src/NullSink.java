@@ -0,0 +1,47 @@
+/**
+ * 丢弃数据的音频输出，只按实时节奏消费，用于负载测试
+ * 播放线程照常从抖动缓冲区取帧，抖动缓冲、丢包隐藏等统计与真实扬声器一致
+ */
+public class NullSink implements AudioSink {
+    private volatile MediaClock clock;
+    private volatile long playedBytes;
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) {
+        clock = new MediaClock(sampleRate, bufferBytes);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        playedBytes += length; // 只有播放线程写入
+        clock.play(length / 2);
+    }
+
+    @Override
+    public void close() {
+        MediaClock c = clock;
+        if (c != null) {
+            c.cancel();
+        }
+    }
+
+    /**
+     * 已播放的字节数
+     */
+    public long getPlayedBytes() {
+        return playedBytes;
+    }
+
+    /**
+     * 欠载（播放线程没能及时写入）的次数
+     */
+    public long getUnderruns() {
+        MediaClock c = clock;
+        return c == null ? 0 : c.getResyncs();
+    }
+
+    @Override
+    public String name() {
+        return "空输出";
+    }
+}
@@ -0,0 +1,13 @@
+import java.nio.ByteBuffer;
+
+/**
+ * 周期性产生媒体数据包的源（由 BatchSender 在其调度线程中调用，不能阻塞）
+ */
+public interface PacketSource {
+    /**
+     * 生成下一个要发送的数据包
+     * @param buffer 写入位置（已清空，返回后由调度器 flip 并发送）
+     * @return false表示停止，不再调度（本次写入的数据不发送）
+     */
+    boolean nextPacket(ByteBuffer buffer);
+}
@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无界面的电话守护进程
+ * 直接使用 CallManager，不加载 Swing/AWT，可以在没有显示器的服务器和容器中运行，也可以由负载测试脚本驱动
+ *
+ * 用法：java PhoneDaemon [--config <配置文件>] [选项...]
+ *   --listen <端口>          在TCP端口上接受来电
+ *   --dial <主机:端口>       拨号，可以用逗号分隔多个目标
+ *   --calls <n>              每个目标同时拨出的通话数（默认1）
+ *   --duration <秒>          拨出的通话在该时长后挂断（默认0，等待对方挂断）
+ *   --auto-answer <true|false> 是否自动接听来电（默认true，false时拒绝所有来电）
+ *   --max-calls <n>          同时接听的来电上限，超出时拒绝（默认0，不限）
+ *   --input <输入>           音频输入：sound（声卡，默认）、WAV文件路径（循环播放）、
+ *                            sine[:频率[:幅度]]（正弦波）、noise[:幅度[:讲话毫秒:停顿毫秒]]（白噪声）
+ *   --output <输出>          音频输出：sound（声卡，默认）、null（丢弃）、目录（每路通话写一个WAV文件）
+ *   --no-audio               不收发音频，只建立信令和媒体端口
+ *   --codec、--frame-ms、--fec、--record 与 IPPhone 相同
+ *   --signaling <text|binary> 去电的信令格式（默认text；binary时同一目标的通话共用一条连接并保持预热，来电总是自动识别）
+ *   --media-ports <最小-最大> 媒体UDP端口范围（默认16384-32767），每路通话从中分配一个端口，结束后归还
+ *   --heartbeat <秒>         信令心跳间隔（默认5，0不发送），对方连续3个间隔无响应时结束其通话
+ *   --stats <秒>             状态输出间隔（默认5，0不输出）
+ *
+ * 配置文件为 properties 格式，键名与选项相同（不带 --，如 listen=5000），命令行选项优先。
+ * 只拨号时所有通话结束后退出（有拨号失败时退出码为1），监听时一直运行到进程被终止
+ */
+public class PhoneDaemon implements CallListener {
+    // 支持的选项（命令行去掉 -- 后与配置文件的键名相同）
+    private static final List<String> OPTIONS = List.of("config", "listen", "dial", "calls", "duration",
+            "auto-answer", "max-calls", "input", "output", "no-audio", "codec", "frame-ms", "fec", "record", "signaling", "heartbeat", "media-ports", "stats");
+
+    private final CallManager manager;
+    private final boolean autoAnswer;
+    private final int maxCalls;
+
+    // 已接听的来电（用于 max-calls 限制）
+    private final Set<Long> answered = ConcurrentHashMap.newKeySet();
+
+    // 统计
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong ended = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private PhoneDaemon(Properties config) throws IOException {
+        String codecName = config.getProperty("codec", Codecs.supported()[0]).toUpperCase();
+        int frameMillis = intOption(config, "frame-ms", AudioThread.DEFAULT_FRAME_MILLIS);
+        manager = new CallManager(codecName, frameMillis, this);
+
+        String fec = config.getProperty("fec", "none");
+        if (!RedundantEncoding.NAME.equalsIgnoreCase(fec) && !"none".equalsIgnoreCase(fec)) {
+            throw new IllegalArgumentException("FEC模式只能是 red 或 none");
+        }
+        manager.setFec(RedundantEncoding.NAME.equalsIgnoreCase(fec));
+
+        String signaling = config.getProperty("signaling", "text");
+        if (!"text".equalsIgnoreCase(signaling) && !"binary".equalsIgnoreCase(signaling)) {
+            throw new IllegalArgumentException("信令格式只能是 text 或 binary");
+        }
+        manager.setBinarySignaling("binary".equalsIgnoreCase(signaling));
+        if (config.getProperty("media-ports") != null) {
+            manager.setMediaPorts(MediaPortAllocator.parse(config.getProperty("media-ports")));
+        }
+        manager.getSignalingPool().setHeartbeatMillis(
+                intOption(config, "heartbeat", SignalingPool.DEFAULT_HEARTBEAT_MILLIS / 1000) * 1000);
+
+        if (config.getProperty("record") != null) {
+            Path directory = Paths.get(config.getProperty("record"));
+            Files.createDirectories(directory);
+            manager.setRecordingDirectory(directory);
+        }
+
+        manager.setLocalAudio(!Boolean.parseBoolean(config.getProperty("no-audio", "false")));
+        manager.setAudioDevices(AudioDevices.parse(config.getProperty("input"), config.getProperty("output"),
+                Codecs.create(codecName).sampleRate()));
+
+        autoAnswer = Boolean.parseBoolean(config.getProperty("auto-answer", "true"));
+        maxCalls = intOption(config, "max-calls", 0);
+    }
+
+    @Override
+    public synchronized boolean onIncomingCall(CallSession session) {
+        if (!autoAnswer || (maxCalls > 0 && answered.size() >= maxCalls)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        answered.add(session.getId());
+        return true;
+    }
+
+    @Override
+    public void onCallStarted(CallSession session) {
+        started.incrementAndGet();
+        System.out.println(session + " 已接通");
+    }
+
+    @Override
+    public void onCallEnded(CallSession session, String reason) {
+        answered.remove(session.getId());
+        if (session.getMetrics() != null) {
+            // 只统计接通过的通话
+            ended.incrementAndGet();
+            System.out.println(session + " 已结束（" + reason + "），时长 " + session.getDurationMillis() / 1000.0
+                    + " 秒，" + session.getMetrics());
+        }
+    }
+
+    /**
+     * 输出一行汇总状态：通话数和活动通话的平均质量
+     */
+    private void printStats() {
+        int active = 0;
+        double loss = 0;
+        double mos = 0;
+        for (CallSession session : manager.getCalls()) {
+            CallMetrics metrics = session.getMetrics();
+            if (session.getState() == CallSession.State.ACTIVE && metrics != null) {
+                active++;
+                loss += metrics.getLossPercent();
+                mos += metrics.getMos();
+            }
+        }
+        System.out.printf("状态: 活动=%d 已接通=%d 已结束=%d 拒绝=%d 失败=%d 平均丢包=%.1f%% 平均MOS=%.2f%n",
+                active, started.get(), ended.get(), rejected.get(), failed.get(),
+                active == 0 ? 0.0 : loss / active, active == 0 ? 0.0 : mos / active);
+    }
+
+    /**
+     * 拨出一路通话，durationSeconds 大于0时到时挂断
+     */
+    private void dial(String host, int port, int durationSeconds, CountDownLatch done) {
+        try {
+            CallSession session = manager.dial(host, port);
+            if (durationSeconds > 0) {
+                Thread.sleep(durationSeconds * 1000L);
+                session.hangup();
+            }
+            while (session.getState() != CallSession.State.ENDED) {
+                Thread.sleep(100);
+            }
+        } catch (IOException ex) {
+            failed.incrementAndGet();
+            System.err.println("拨号 " + host + ":" + port + " 失败: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private static int intOption(Properties config, String key, int defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("参数 " + key + " 不是整数: " + value);
+        }
+    }
+
+    /**
+     * 解析命令行：先读取 --config 指定的配置文件，再用命令行选项覆盖
+     */
+    private static Properties parseArgs(String[] args) throws IOException {
+        Properties cli = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("未知参数: " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if ("no-audio".equals(key)) {
+                cli.setProperty(key, "true");
+            } else if (i + 1 < args.length) {
+                cli.setProperty(key, args[++i]);
+            } else {
+                throw new IllegalArgumentException("参数缺少取值: " + args[i]);
+            }
+        }
+
+        Properties config = new Properties();
+        if (cli.getProperty("config") != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(cli.getProperty("config")))) {
+                config.load(reader);
+            }
+        }
+        config.putAll(cli);
+        for (String key : config.stringPropertyNames()) {
+            if (!OPTIONS.contains(key)) {
+                throw new IllegalArgumentException("未知参数: " + key);
+            }
+        }
+        return config;
+    }
+
+    private static void usage() {
+        System.err.println("用法: java PhoneDaemon [--config <文件>] [--listen <端口>] [--dial <主机:端口>[,...]]"
+                + " [--calls <n>] [--duration <秒>] [--auto-answer <true|false>] [--max-calls <n>]"
+                + " [--input <sound|WAV文件|sine[:Hz[:幅度]]|noise[:幅度[:讲话ms:停顿ms]]>] [--output <sound|null|目录>]"
+                + " [--no-audio] [--codec <"
+                + String.join("|", Codecs.supported()) + ">] [--frame-ms <10|20|30>] [--fec <red|none>]"
+                + " [--record <目录>] [--signaling <text|binary>] [--heartbeat <秒>] [--media-ports <最小-最大>] [--stats <秒>]");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties config;
+        PhoneDaemon daemon;
+        try {
+            config = parseArgs(args);
+            daemon = new PhoneDaemon(config);
+        } catch (IllegalArgumentException | IOException ex) {
+            System.err.println(ex.getMessage());
+            usage();
+            System.exit(1);
+            return;
+        }
+        CallManager manager = daemon.manager;
+        Runtime.getRuntime().addShutdownHook(new Thread(manager::close, "shutdown"));
+
+        boolean listening = config.getProperty("listen") != null;
+        if (listening) {
+            manager.listen(intOption(config, "listen", 0));
+            System.out.println("正在监听端口 " + manager.getListenPort());
+        }
+
+        // 拨号任务在信令执行器上并发运行
+        List<String> hosts = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        String dial = config.getProperty("dial");
+        if (dial != null) {
+            for (String target : dial.split(",")) {
+                target = target.trim();
+                int colon = target.lastIndexOf(':');
+                try {
+                    ports.add(Integer.parseInt(target.substring(colon + 1)));
+                    hosts.add(target.substring(0, colon));
+                } catch (RuntimeException ex) {
+                    System.err.println("拨号目标格式应为 主机:端口: " + target);
+                    System.exit(1);
+                }
+            }
+        }
+        if (!listening && hosts.isEmpty()) {
+            usage();
+            System.exit(1);
+        }
+        if (manager.isBinarySignaling()) {
+            // 预先建立到每个目标的连接，拨号时不再有TCP握手，连接断开后自动重连
+            for (int t = 0; t < hosts.size(); t++) {
+                try {
+                    manager.getSignalingPool().warmUp(hosts.get(t), ports.get(t));
+                } catch (IOException ex) {
+                    System.err.println("连接 " + hosts.get(t) + ":" + ports.get(t) + " 失败: " + ex.getMessage());
+                }
+            }
+        }
+        int calls = Math.max(1, intOption(config, "calls", 1));
+        int duration = intOption(config, "duration", 0);
+        CountDownLatch done = new CountDownLatch(hosts.size() * calls);
+        for (int t = 0; t < hosts.size(); t++) {
+            String host = hosts.get(t);
+            int port = ports.get(t);
+            for (int i = 0; i < calls; i++) {
+                CallExecutors.signaling().execute(() -> daemon.dial(host, port, duration, done));
+            }
+        }
+
+        // 主线程定期输出状态；只拨号时所有通话结束后退出，监听时一直运行
+        long statsMillis = intOption(config, "stats", 5) * 1000L;
+        long interval = statsMillis > 0 ? statsMillis : Long.MAX_VALUE;
+        while (true) {
+            boolean finished = done.await(interval, TimeUnit.MILLISECONDS);
+            if (finished && !listening) {
+                break;
+            }
+            if (finished) {
+                Thread.sleep(interval);
+            }
+            if (statsMillis > 0) {
+                daemon.printStats();
+            }
+        }
+        if (statsMillis > 0) {
+            daemon.printStats();
+        }
+        manager.close();
+        System.exit(daemon.failed.get() > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 发送端码率自适应控制器
+ * 根据对方RTCP报告中的丢包率、抖动和往返时间，在通话中调整编码、帧时长和FEC冗余度，
+ * 不需要重新协商：接收方按负载类型解码，帧时长和冗余块都由数据包本身描述
+ *
+ * 调整策略：
+ *   拥塞（丢包同时伴随排队延迟增加，或丢包非常严重）时沿"降级阶梯"下降一级：
+ *     协商的编码 → 同采样率的低码率编码 → 加长帧时长（减少包数和头部开销）
+ *   随机丢包（延迟稳定）时提高FEC冗余度，用少量带宽换取恢复能力
+ *   连续几个报告都良好时先降低FEC，再沿阶梯回升一级
+ *
+ * 只由发送线程调用
+ */
+public class RateController {
+    // 丢包率门限（百分比）
+    private static final double LOSS_CLEAN_PERCENT = 0.5;      // 低于该值视为良好
+    private static final double LOSS_FEC_PERCENT = 1.0;        // 超过后启用FEC
+    private static final double LOSS_FEC_HIGH_PERCENT = 5.0;   // 超过后使用最大冗余度
+    private static final double LOSS_CONGESTION_PERCENT = 10.0; // 超过后无论延迟如何都视为拥塞
+    // 往返时间比最小值高出该值（毫秒）视为链路排队
+    private static final double RTT_QUEUE_MILLIS = 100;
+    // 对方报告的抖动超过该值（毫秒）视为链路排队
+    private static final double JITTER_QUEUE_MILLIS = 40;
+    // 回升前需要连续良好的报告数
+    private static final int RECOVERY_REPORTS = 3;
+
+    // 降级阶梯（第0级为协商结果）
+    private final Codec[] stepCodecs;
+    private final int[] stepFrames;
+    private final int maxRedundancy;
+
+    private int step = 0;
+    private int redundancy;
+    private long lastReports;
+    private double minRtt = Double.MAX_VALUE;
+    private int goodReports;
+
+    /**
+     * 构造函数
+     * @param primary 协商好的编码
+     * @param alternatives 双方都支持的其他编码（只会选用与主编码采样率相同、码率更低的）
+     * @param frameMillis 初始帧时长（毫秒）
+     * @param redundancy 初始冗余帧数，为0表示FEC未协商，之后也不会启用
+     */
+    public RateController(Codec primary, Codec[] alternatives, int frameMillis, int redundancy) {
+        List<Codec> codecs = new ArrayList<>();
+        codecs.add(primary);
+        Codec[] sorted = alternatives.clone();
+        Arrays.sort(sorted, Comparator.comparingInt(Codec::bitrate).reversed());
+        int bitrate = primary.bitrate();
+        for (Codec codec : sorted) {
+            // 码率相同的编码（如PCMU/PCMA）之间切换没有意义，每个码率只保留一个
+            if (codec.sampleRate() == primary.sampleRate() && codec.bitrate() < bitrate) {
+                codecs.add(codec);
+                bitrate = codec.bitrate();
+            }
+        }
+
+        int maxFrame = AudioThread.FRAME_MILLIS_OPTIONS[AudioThread.FRAME_MILLIS_OPTIONS.length - 1];
+        int steps = codecs.size() + (frameMillis < maxFrame ? 1 : 0);
+        stepCodecs = new Codec[steps];
+        stepFrames = new int[steps];
+        for (int i = 0; i < codecs.size(); i++) {
+            stepCodecs[i] = codecs.get(i);
+            stepFrames[i] = frameMillis;
+        }
+        if (steps > codecs.size()) {
+            stepCodecs[steps - 1] = codecs.get(codecs.size() - 1);
+            stepFrames[steps - 1] = maxFrame;
+        }
+        this.redundancy = Math.max(0, Math.min(RedundantEncoding.MAX_LEVEL, redundancy));
+        this.maxRedundancy = this.redundancy > 0 ? RedundantEncoding.MAX_LEVEL : 0;
+    }
+
+    /**
+     * 当前应使用的编码
+     */
+    public Codec codec() {
+        return stepCodecs[step];
+    }
+
+    /**
+     * 当前应使用的帧时长（毫秒）
+     */
+    public int frameMillis() {
+        return stepFrames[step];
+    }
+
+    /**
+     * 当前应使用的冗余帧数
+     */
+    public int redundancy() {
+        return redundancy;
+    }
+
+    /**
+     * 收到新的对方报告后重新评估
+     * @param metrics 通话指标（含对方报告的丢包率、抖动和往返时间）
+     * @return true表示发送参数有变化
+     */
+    public boolean update(CallMetrics metrics) {
+        long reports = metrics.getRemoteReports();
+        if (reports == lastReports) {
+            return false;
+        }
+        lastReports = reports;
+        return evaluate(metrics.getRemoteLossPercent(), metrics.getRemoteJitterMillis(),
+                metrics.getRoundTripMillis());
+    }
+
+    /**
+     * 按一个报告区间的统计调整
+     * @param lossPercent 对方报告的丢包率（百分比）
+     * @param jitterMillis 对方报告的抖动（毫秒）
+     * @param rttMillis 往返时间（毫秒），未知时为负数
+     * @return true表示发送参数有变化
+     */
+    boolean evaluate(double lossPercent, double jitterMillis, double rttMillis) {
+        if (rttMillis >= 0) {
+            minRtt = Math.min(minRtt, rttMillis);
+        }
+        boolean queueing = (rttMillis >= 0 && rttMillis > minRtt + RTT_QUEUE_MILLIS)
+                || jitterMillis > JITTER_QUEUE_MILLIS;
+        boolean congested = lossPercent >= LOSS_CONGESTION_PERCENT
+                || (lossPercent >= LOSS_FEC_PERCENT && queueing);
+
+        int oldStep = step;
+        int oldRedundancy = redundancy;
+        if (congested) {
+            // 拥塞：降低码率，冗余会加重拥塞，只在已经降到底时保留一级
+            goodReports = 0;
+            if (step < stepCodecs.length - 1) {
+                step++;
+                redundancy = Math.max(0, redundancy - 1);
+            } else {
+                redundancy = Math.min(maxRedundancy, 1);
+            }
+        } else if (lossPercent >= LOSS_FEC_PERCENT) {
+            // 随机丢包：提高冗余度
+            goodReports = 0;
+            int wanted = lossPercent >= LOSS_FEC_HIGH_PERCENT ? RedundantEncoding.MAX_LEVEL : 1;
+            redundancy = Math.min(maxRedundancy, Math.max(redundancy, wanted));
+        } else if (lossPercent < LOSS_CLEAN_PERCENT && !queueing) {
+            // 链路良好：先撤掉冗余，再回升码率
+            if (++goodReports >= RECOVERY_REPORTS) {
+                goodReports = 0;
+                if (redundancy > 0) {
+                    redundancy--;
+                } else if (step > 0) {
+                    step--;
+                }
+            }
+        } else {
+            goodReports = 0;
+        }
+        return step != oldStep || redundancy != oldRedundancy;
+    }
+
+    @Override
+    public String toString() {
+        return codec().name() + "/" + frameMillis() + "ms/FEC" + redundancy;
+    }
+}
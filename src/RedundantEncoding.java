@@ -0,0 +1,231 @@
+/**
+ * 冗余音频编码（RFC 2198 RED）
+ * 每个数据包除了当前帧（主编码块）外，还携带前面1~2帧的副本；
+ * 单个包丢失时，接收方可以从后续包的冗余块中恢复该帧，不需要重传
+ *
+ * 负载格式：若干个4字节的冗余块头部，1字节的主编码块头部，然后按相同顺序排列各块数据
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |F|   block PT  |  timestamp offset         |   block length    |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |0|   block PT  |
+ * +-+-+-+-+-+-+-+-+
+ *
+ * 冗余块只来自连续发送的音频包，因此第 i 个冗余块对应的序号就是当前序号减去它之后的块数
+ * 通话中切换编码时，历史帧保留各自的负载类型，接收方按块的负载类型选择解码器
+ * 同一个实例只用于一个方向：发送方用 pack，接收方用 unpack
+ */
+public final class RedundantEncoding {
+    // 动态负载类型（与L16的96、ADPCM-WB的97错开）
+    public static final int PAYLOAD_TYPE = 98;
+    // 信令中的FEC模式名称
+    public static final String NAME = "red";
+    // 最多携带的冗余帧数
+    public static final int MAX_LEVEL = 2;
+
+    // 冗余块头部长度和字段上限
+    private static final int BLOCK_HEADER = 4;
+    private static final int MAX_TIMESTAMP_OFFSET = (1 << 14) - 1;
+    private static final int MAX_BLOCK_LENGTH = (1 << 10) - 1;
+
+    // 发送方：最近发送的编码帧（环形），按发送顺序
+    private final byte[][] history;
+    private final int[] historyLengths;
+    private final long[] historyTimestamps;
+    private final int[] historyTypes;
+    private int historyCount;
+    private int historyNext;
+    private volatile int level;
+
+    // 接收方：解析出的各块（最后一个是主编码块）
+    private final int[] blockTypes = new int[MAX_LEVEL + 1];
+    private final int[] blockOffsets = new int[MAX_LEVEL + 1];
+    private final int[] blockLengths = new int[MAX_LEVEL + 1];
+    private final long[] blockTimestamps = new long[MAX_LEVEL + 1];
+
+    /**
+     * 构造函数
+     * @param maxFrameBytes 单个编码帧的最大字节数
+     * @param level 冗余帧数（0~MAX_LEVEL，0表示不携带冗余）
+     */
+    public RedundantEncoding(int maxFrameBytes, int level) {
+        history = new byte[MAX_LEVEL][maxFrameBytes];
+        historyLengths = new int[MAX_LEVEL];
+        historyTimestamps = new long[MAX_LEVEL];
+        historyTypes = new int[MAX_LEVEL];
+        setLevel(level);
+    }
+
+    /**
+     * 调整冗余帧数，下一个包生效
+     * @param level 冗余帧数（0~MAX_LEVEL）
+     */
+    public void setLevel(int level) {
+        this.level = Math.max(0, Math.min(MAX_LEVEL, level));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * RED负载的最大长度
+     * @param maxFrameBytes 单个编码帧的最大字节数
+     * @return 携带 MAX_LEVEL 个冗余块时的负载长度
+     */
+    public static int maxPayloadSize(int maxFrameBytes) {
+        return (MAX_LEVEL + 1) * maxFrameBytes + MAX_LEVEL * BLOCK_HEADER + 1;
+    }
+
+    /**
+     * 判断协商结果：双方都启用时才使用RED
+     * @param offered 对方提供的FEC模式（可以为null）
+     * @param enabled 本端是否启用
+     * @return true表示使用RED
+     */
+    public static boolean negotiate(String offered, boolean enabled) {
+        return enabled && NAME.equalsIgnoreCase(offered);
+    }
+
+    /**
+     * 清空发送历史，在一段话开始时调用（静音期间的空缺不能用冗余块补）
+     */
+    public void reset() {
+        historyCount = 0;
+    }
+
+    /**
+     * 打包一个RED负载：先写入历史中的冗余帧，再写入当前帧，然后把当前帧加入历史
+     * @param payloadType 主编码的负载类型
+     * @param frame 当前编码帧
+     * @param offset 起始偏移
+     * @param length 编码帧长度
+     * @param timestamp 当前帧的RTP时间戳
+     * @param out 输出缓冲区
+     * @param outOffset 输出起始偏移
+     * @return 负载长度
+     */
+    public int pack(int payloadType, byte[] frame, int offset, int length, long timestamp,
+                    byte[] out, int outOffset) {
+        // 时间戳偏移或长度超出头部字段范围的旧帧不再携带
+        int blocks = Math.min(level, historyCount);
+        while (blocks > 0 && (((timestamp - historyTimestamps[slot(blocks)]) & 0xFFFFFFFFL) > MAX_TIMESTAMP_OFFSET
+                || historyLengths[slot(blocks)] > MAX_BLOCK_LENGTH)) {
+            blocks--;
+        }
+
+        int pos = outOffset;
+        for (int i = blocks; i > 0; i--) {
+            int slot = slot(i);
+            int offsetTs = (int) ((timestamp - historyTimestamps[slot]) & 0xFFFFFFFFL);
+            int blockLength = historyLengths[slot];
+            out[pos] = (byte) (0x80 | (historyTypes[slot] & 0x7F));
+            out[pos + 1] = (byte) (offsetTs >> 6);
+            out[pos + 2] = (byte) ((offsetTs << 2) | (blockLength >> 8));
+            out[pos + 3] = (byte) blockLength;
+            pos += BLOCK_HEADER;
+        }
+        out[pos++] = (byte) (payloadType & 0x7F);
+        for (int i = blocks; i > 0; i--) {
+            int slot = slot(i);
+            System.arraycopy(history[slot], 0, out, pos, historyLengths[slot]);
+            pos += historyLengths[slot];
+        }
+        System.arraycopy(frame, offset, out, pos, length);
+        pos += length;
+
+        // 当前帧加入历史
+        if (length <= history[historyNext].length) {
+            System.arraycopy(frame, offset, history[historyNext], 0, length);
+            historyLengths[historyNext] = length;
+            historyTimestamps[historyNext] = timestamp;
+            historyTypes[historyNext] = payloadType;
+            historyNext = (historyNext + 1) % MAX_LEVEL;
+            historyCount = Math.min(MAX_LEVEL, historyCount + 1);
+        } else {
+            reset();
+        }
+        return pos - outOffset;
+    }
+
+    /**
+     * 倒数第 back 个历史帧的槽位（1表示最近一帧）
+     */
+    private int slot(int back) {
+        return (historyNext - back + MAX_LEVEL) % MAX_LEVEL;
+    }
+
+    /**
+     * 解开RED负载，解码各块并放入抖动缓冲区
+     * 主编码块按正常的包写入，冗余块只用于填补还没有收到的帧
+     * @param data 数据包缓冲区
+     * @param offset 负载起始偏移
+     * @param length 负载长度
+     * @param sequence 数据包的RTP序号
+     * @param timestamp 数据包的RTP时间戳
+     * @param decoders 按负载类型索引的解码器表（见 Codecs.decoderTable）
+     * @param pcm 解码工作区
+     * @param jitterBuffer 目标抖动缓冲区
+     * @param arrivalNanos 到达时间（System.nanoTime）
+     * @return true表示负载格式正确
+     */
+    public boolean unpack(byte[] data, int offset, int length, int sequence, long timestamp,
+                          Codec[] decoders, byte[] pcm, JitterBuffer jitterBuffer, long arrivalNanos) {
+        int end = offset + length;
+        int pos = offset;
+        int blocks = 0;
+        // 解析块头部
+        while (true) {
+            if (pos >= end || blocks > MAX_LEVEL) {
+                return false;
+            }
+            int b = data[pos] & 0xFF;
+            blockTypes[blocks] = b & 0x7F;
+            if ((b & 0x80) == 0) {
+                pos++;
+                blocks++;
+                break;
+            }
+            if (pos + BLOCK_HEADER > end) {
+                return false;
+            }
+            int offsetTs = ((data[pos + 1] & 0xFF) << 6) | ((data[pos + 2] & 0xFF) >> 2);
+            blockTimestamps[blocks] = (timestamp - offsetTs) & 0xFFFFFFFFL;
+            blockLengths[blocks] = ((data[pos + 2] & 0x03) << 8) | (data[pos + 3] & 0xFF);
+            pos += BLOCK_HEADER;
+            blocks++;
+        }
+        // 定位各块数据，主编码块占用剩余的全部字节
+        for (int i = 0; i < blocks - 1; i++) {
+            blockOffsets[i] = pos;
+            pos += blockLengths[i];
+        }
+        if (pos >= end) {
+            return false;
+        }
+        int primary = blocks - 1;
+        blockOffsets[primary] = pos;
+        blockLengths[primary] = end - pos;
+        blockTimestamps[primary] = timestamp;
+        for (int i = 0; i < blocks; i++) {
+            Codec codec = decoders[blockTypes[i]];
+            if (codec == null || codec.decodedLength(blockLengths[i]) > pcm.length) {
+                return false;
+            }
+        }
+
+        // 先写入主编码块（决定抖动估计和重新同步），再用冗余块补洞
+        int decoded = decoders[blockTypes[primary]].decode(data, blockOffsets[primary], blockLengths[primary],
+                pcm, 0);
+        jitterBuffer.put(sequence, timestamp, pcm, 0, decoded, arrivalNanos);
+        for (int i = primary - 1; i >= 0; i--) {
+            int seq = (sequence - (primary - i)) & 0xFFFF;
+            if (jitterBuffer.isMissing(seq)) {
+                decoded = decoders[blockTypes[i]].decode(data, blockOffsets[i], blockLengths[i], pcm, 0);
+                jitterBuffer.recover(seq, blockTimestamps[i], pcm, 0, decoded);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * RTCP发送方报告（SR）和接收方报告（RR），RFC 3550 第6.4节
+ * 与RTP复用同一个UDP端口（RFC 5761）：第二个字节为200~204的是RTCP包，不会与本项目的RTP负载类型冲突
+ * 只生成和解析一个报告块（每路通话只有一个对方源），写入和解析都不分配内存
+ * 写入时先用 setSenderInfo/setReceiverOnly 和 setReport 设置字段，解析结果通过getter获取
+ *
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |V=2|P|    RC   |   PT=SR=200   |             length            |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                         SSRC of sender                        |
+ * +=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+
+ * |    NTP timestamp (64) | RTP timestamp | packet count | octet count |  （仅SR）
+ * +=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+
+ * | SSRC_1 | fraction lost | cumulative lost | ext. highest seq | jitter | LSR | DLSR |
+ * +=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+=+
+ */
+public class RtcpPacket {
+    public static final int PT_SR = 200;
+    public static final int PT_RR = 201;
+
+    // 各部分长度
+    private static final int HEADER = 8;
+    private static final int SENDER_INFO = 20;
+    private static final int REPORT_BLOCK = 24;
+    // 带一个报告块的SR最大长度
+    public static final int MAX_SIZE = HEADER + SENDER_INFO + REPORT_BLOCK;
+
+    // 1900年（NTP纪元）到1970年的秒数
+    private static final long NTP_EPOCH_OFFSET = 2208988800L;
+
+    // 解析结果
+    private int packetType;
+    private int ssrc;
+    private long ntpTimestamp;
+    private long rtpTimestamp;
+    private long senderPackets;
+    private long senderOctets;
+    private boolean hasReport;
+    private int reportSsrc;
+    private int fractionLost;
+    private int cumulativeLost;
+    private long extendedHighestSeq;
+    private long jitter;
+    private long lastSenderReport;
+    private long delaySinceLastReport;
+
+    /**
+     * 判断数据包是否为RTCP（第二个字节为SR/RR/SDES/BYE/APP）
+     * @param buffer 数据包缓冲区
+     * @param offset 起始偏移
+     * @param length 数据包长度
+     * @return true表示是RTCP包
+     */
+    public static boolean isRtcp(byte[] buffer, int offset, int length) {
+        if (length < HEADER || ((buffer[offset] & 0xFF) >> 6) != RtpHeader.VERSION) {
+            return false;
+        }
+        int pt = buffer[offset + 1] & 0xFF;
+        return pt >= 200 && pt <= 204;
+    }
+
+    /**
+     * 判断已按RTP解析的包是否其实是RTCP（标记位和负载类型合起来为200~204）
+     * @param rtp 解析结果
+     * @return true表示是RTCP包
+     */
+    public static boolean isRtcp(RtpHeader rtp) {
+        int pt = (rtp.isMarker() ? 0x80 : 0) | rtp.getPayloadType();
+        return pt >= 200 && pt <= 204;
+    }
+
+    /**
+     * 当前时间的64位NTP时间戳
+     */
+    public static long ntpNow() {
+        long millis = System.currentTimeMillis();
+        long seconds = millis / 1000 + NTP_EPOCH_OFFSET;
+        long fraction = (millis % 1000) * 0x1_0000_0000L / 1000;
+        return (seconds << 32) | fraction;
+    }
+
+    /**
+     * NTP时间戳的中间32位（单位为1/65536秒），用于LSR和往返时间计算
+     */
+    public static long middle32(long ntp) {
+        return (ntp >>> 16) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 设置发送方信息，写出的包为SR
+     * @param ssrc 本端SSRC
+     * @param ntp NTP时间戳
+     * @param rtpTimestamp 与NTP时间对应的RTP时间戳
+     * @param packets 累计发送包数
+     * @param octets 累计发送字节数
+     */
+    public void setSenderInfo(int ssrc, long ntp, long rtpTimestamp, long packets, long octets) {
+        this.packetType = PT_SR;
+        this.ssrc = ssrc;
+        this.ntpTimestamp = ntp;
+        this.rtpTimestamp = rtpTimestamp;
+        this.senderPackets = packets;
+        this.senderOctets = octets;
+    }
+
+    /**
+     * 只设置本端SSRC，写出的包为RR（本端没有发送媒体时使用）
+     * @param ssrc 本端SSRC
+     */
+    public void setReceiverOnly(int ssrc) {
+        this.packetType = PT_RR;
+        this.ssrc = ssrc;
+    }
+
+    /**
+     * 设置报告块
+     * @param reportSsrc 被报告的源（对方SSRC）
+     * @param fractionLost 上次报告以来的丢包比例（0~255表示0~1）
+     * @param cumulativeLost 累计丢包数
+     * @param extendedHighestSeq 收到的最大扩展序号
+     * @param jitter 到达间隔抖动（媒体时钟单位）
+     * @param lsr 最近收到的对方SR的NTP中间32位，没有时为0
+     * @param dlsr 收到该SR以来的时间（1/65536秒），没有时为0
+     */
+    public void setReport(int reportSsrc, int fractionLost, int cumulativeLost, long extendedHighestSeq,
+                          long jitter, long lsr, long dlsr) {
+        this.hasReport = true;
+        this.reportSsrc = reportSsrc;
+        this.fractionLost = fractionLost;
+        this.cumulativeLost = cumulativeLost;
+        this.extendedHighestSeq = extendedHighestSeq;
+        this.jitter = jitter;
+        this.lastSenderReport = lsr;
+        this.delaySinceLastReport = dlsr;
+    }
+
+    /**
+     * 不附带报告块（还没有收到对方的媒体）
+     */
+    public void clearReport() {
+        this.hasReport = false;
+    }
+
+    /**
+     * 按当前设置写入SR或RR
+     * @param buffer 目标缓冲区（至少 MAX_SIZE 字节）
+     * @param offset 起始偏移
+     * @return 写入的字节数
+     */
+    public int write(byte[] buffer, int offset) {
+        boolean senderReport = packetType == PT_SR;
+        int length = HEADER + (senderReport ? SENDER_INFO : 0) + (hasReport ? REPORT_BLOCK : 0);
+        buffer[offset] = (byte) ((RtpHeader.VERSION << 6) | (hasReport ? 1 : 0));
+        buffer[offset + 1] = (byte) packetType;
+        writeShort(buffer, offset + 2, length / 4 - 1);
+        writeInt(buffer, offset + 4, ssrc);
+        int pos = offset + HEADER;
+        if (senderReport) {
+            writeInt(buffer, pos, (int) (ntpTimestamp >>> 32));
+            writeInt(buffer, pos + 4, (int) ntpTimestamp);
+            writeInt(buffer, pos + 8, (int) rtpTimestamp);
+            writeInt(buffer, pos + 12, (int) senderPackets);
+            writeInt(buffer, pos + 16, (int) senderOctets);
+            pos += SENDER_INFO;
+        }
+        if (hasReport) {
+            writeInt(buffer, pos, reportSsrc);
+            // 丢包数是24位有符号数，超出范围时取极值
+            int lost = Math.max(-0x800000, Math.min(0x7FFFFF, cumulativeLost));
+            writeInt(buffer, pos + 4, (fractionLost << 24) | (lost & 0xFFFFFF));
+            writeInt(buffer, pos + 8, (int) extendedHighestSeq);
+            writeInt(buffer, pos + 12, (int) jitter);
+            writeInt(buffer, pos + 16, (int) lastSenderReport);
+            writeInt(buffer, pos + 20, (int) delaySinceLastReport);
+        }
+        return length;
+    }
+
+    /**
+     * 解析SR或RR（复合包中只处理第一个）
+     * @param buffer 数据包缓冲区
+     * @param offset 起始偏移
+     * @param length 数据包长度
+     * @return true表示是合法的SR或RR
+     */
+    public boolean parse(byte[] buffer, int offset, int length) {
+        if (!isRtcp(buffer, offset, length)) {
+            return false;
+        }
+        int reportCount = buffer[offset] & 0x1F;
+        packetType = buffer[offset + 1] & 0xFF;
+        int packetLength = (readShort(buffer, offset + 2) + 1) * 4;
+        if (packetLength > length || (packetType != PT_SR && packetType != PT_RR)) {
+            return false;
+        }
+        ssrc = readInt(buffer, offset + 4);
+        int pos = offset + HEADER;
+        if (packetType == PT_SR) {
+            if (packetLength < HEADER + SENDER_INFO) {
+                return false;
+            }
+            ntpTimestamp = ((readInt(buffer, pos) & 0xFFFFFFFFL) << 32) | (readInt(buffer, pos + 4) & 0xFFFFFFFFL);
+            rtpTimestamp = readInt(buffer, pos + 8) & 0xFFFFFFFFL;
+            senderPackets = readInt(buffer, pos + 12) & 0xFFFFFFFFL;
+            senderOctets = readInt(buffer, pos + 16) & 0xFFFFFFFFL;
+            pos += SENDER_INFO;
+        }
+        hasReport = reportCount > 0 && pos + REPORT_BLOCK <= offset + packetLength;
+        if (hasReport) {
+            reportSsrc = readInt(buffer, pos);
+            int word = readInt(buffer, pos + 4);
+            fractionLost = word >>> 24;
+            cumulativeLost = (word << 8) >> 8; // 24位有符号数
+            extendedHighestSeq = readInt(buffer, pos + 8) & 0xFFFFFFFFL;
+            jitter = readInt(buffer, pos + 12) & 0xFFFFFFFFL;
+            lastSenderReport = readInt(buffer, pos + 16) & 0xFFFFFFFFL;
+            delaySinceLastReport = readInt(buffer, pos + 20) & 0xFFFFFFFFL;
+        }
+        return true;
+    }
+
+    public boolean isSenderReport() {
+        return packetType == PT_SR;
+    }
+
+    public int getSsrc() {
+        return ssrc;
+    }
+
+    public long getNtpTimestamp() {
+        return ntpTimestamp;
+    }
+
+    public long getRtpTimestamp() {
+        return rtpTimestamp;
+    }
+
+    public long getSenderPackets() {
+        return senderPackets;
+    }
+
+    public long getSenderOctets() {
+        return senderOctets;
+    }
+
+    /**
+     * 是否带有报告块
+     */
+    public boolean hasReport() {
+        return hasReport;
+    }
+
+    public int getReportSsrc() {
+        return reportSsrc;
+    }
+
+    public int getFractionLost() {
+        return fractionLost;
+    }
+
+    public int getCumulativeLost() {
+        return cumulativeLost;
+    }
+
+    public long getExtendedHighestSeq() {
+        return extendedHighestSeq;
+    }
+
+    public long getJitter() {
+        return jitter;
+    }
+
+    public long getLastSenderReport() {
+        return lastSenderReport;
+    }
+
+    public long getDelaySinceLastReport() {
+        return delaySinceLastReport;
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 8);
+        buffer[offset + 1] = (byte) value;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24)
+                | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8)
+                | (buffer[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,202 @@
+import java.nio.ByteBuffer;
+
+/**
+ * RTP数据包头部（RFC 3550 固定头部，12字节）
+ * 写入和解析都直接在调用方提供的缓冲区上进行，每个包不分配内存
+ *
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |V=2|P|X|  CC   |M|     PT      |       sequence number         |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                           timestamp                           |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                             SSRC                              |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ */
+public class RtpHeader {
+    // 固定头部长度
+    public static final int SIZE = 12;
+    // RTP版本号
+    public static final int VERSION = 2;
+    // 动态负载类型：L16 8000Hz 单声道（16位大端序PCM）
+    public static final int PT_L16 = 96;
+
+    // 解析结果
+    private boolean marker;
+    private int payloadType;
+    private int sequence;
+    private long timestamp;   // 32位无符号
+    private int ssrc;
+    private int payloadOffset;
+    private int payloadLength;
+
+    /**
+     * 在缓冲区中写入RTP固定头部
+     * @param buffer 目标缓冲区
+     * @param offset 起始偏移
+     * @param marker 标记位
+     * @param payloadType 负载类型
+     * @param sequence 16位序号
+     * @param timestamp 32位媒体时间戳
+     * @param ssrc 同步源标识
+     */
+    public static void write(byte[] buffer, int offset, boolean marker, int payloadType,
+                             int sequence, long timestamp, int ssrc) {
+        buffer[offset] = (byte) (VERSION << 6);
+        buffer[offset + 1] = (byte) ((marker ? 0x80 : 0) | (payloadType & 0x7F));
+        buffer[offset + 2] = (byte) (sequence >> 8);
+        buffer[offset + 3] = (byte) sequence;
+        buffer[offset + 4] = (byte) (timestamp >> 24);
+        buffer[offset + 5] = (byte) (timestamp >> 16);
+        buffer[offset + 6] = (byte) (timestamp >> 8);
+        buffer[offset + 7] = (byte) timestamp;
+        buffer[offset + 8] = (byte) (ssrc >> 24);
+        buffer[offset + 9] = (byte) (ssrc >> 16);
+        buffer[offset + 10] = (byte) (ssrc >> 8);
+        buffer[offset + 11] = (byte) ssrc;
+    }
+
+    /**
+     * 解析并校验RTP头部
+     * 会跳过CSRC列表、扩展头和填充字节，解析结果通过getter获取
+     * @param buffer 数据包缓冲区
+     * @param offset 起始偏移
+     * @param length 数据包长度
+     * @return true表示是合法的RTP数据包
+     */
+    public boolean parse(byte[] buffer, int offset, int length) {
+        if (length < SIZE) {
+            return false;
+        }
+        int b0 = buffer[offset] & 0xFF;
+        if ((b0 >> 6) != VERSION) {
+            return false;
+        }
+        boolean padding = (b0 & 0x20) != 0;
+        boolean extension = (b0 & 0x10) != 0;
+        int csrcCount = b0 & 0x0F;
+
+        int b1 = buffer[offset + 1] & 0xFF;
+        marker = (b1 & 0x80) != 0;
+        payloadType = b1 & 0x7F;
+        sequence = ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+        timestamp = readInt(buffer, offset + 4) & 0xFFFFFFFFL;
+        ssrc = readInt(buffer, offset + 8);
+
+        int headerLength = SIZE + csrcCount * 4;
+        if (extension) {
+            if (length < headerLength + 4) {
+                return false;
+            }
+            int words = ((buffer[offset + headerLength + 2] & 0xFF) << 8)
+                    | (buffer[offset + headerLength + 3] & 0xFF);
+            headerLength += 4 + words * 4;
+        }
+        int end = length;
+        if (padding) {
+            end -= buffer[offset + length - 1] & 0xFF;
+        }
+        if (end < headerLength) {
+            return false;
+        }
+
+        payloadOffset = offset + headerLength;
+        payloadLength = end - headerLength;
+        return true;
+    }
+
+    /**
+     * 解析并校验 ByteBuffer 中的RTP头部（position 到 limit 之间为一个完整数据包）
+     * 只使用绝对位置读取，不改变缓冲区的 position，适用于直接缓冲区（须为默认的大端序）
+     * @param buffer 数据包缓冲区
+     * @return true表示是合法的RTP数据包，负载偏移为缓冲区中的绝对位置
+     */
+    public boolean parse(ByteBuffer buffer) {
+        int offset = buffer.position();
+        int length = buffer.remaining();
+        if (length < SIZE) {
+            return false;
+        }
+        int b0 = buffer.get(offset) & 0xFF;
+        if ((b0 >> 6) != VERSION) {
+            return false;
+        }
+        boolean padding = (b0 & 0x20) != 0;
+        boolean extension = (b0 & 0x10) != 0;
+        int csrcCount = b0 & 0x0F;
+
+        int b1 = buffer.get(offset + 1) & 0xFF;
+        marker = (b1 & 0x80) != 0;
+        payloadType = b1 & 0x7F;
+        sequence = buffer.getShort(offset + 2) & 0xFFFF;
+        timestamp = buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+        ssrc = buffer.getInt(offset + 8);
+
+        int headerLength = SIZE + csrcCount * 4;
+        if (extension) {
+            if (length < headerLength + 4) {
+                return false;
+            }
+            headerLength += 4 + (buffer.getShort(offset + headerLength + 2) & 0xFFFF) * 4;
+        }
+        int end = length;
+        if (padding) {
+            end -= buffer.get(offset + length - 1) & 0xFF;
+        }
+        if (end < headerLength) {
+            return false;
+        }
+
+        payloadOffset = offset + headerLength;
+        payloadLength = end - headerLength;
+        return true;
+    }
+
+    /**
+     * 读取 ByteBuffer 中RTP数据包的SSRC，不做完整校验（用于快速分流）
+     * @param buffer 数据包缓冲区（position 指向包头）
+     * @return SSRC
+     */
+    public static int peekSsrc(ByteBuffer buffer) {
+        return buffer.getInt(buffer.position() + 8);
+    }
+
+    public boolean isMarker() {
+        return marker;
+    }
+
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getSsrc() {
+        return ssrc;
+    }
+
+    /**
+     * 负载在缓冲区中的绝对偏移
+     */
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24)
+                | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8)
+                | (buffer[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一条二进制信令连接，承载多路通话的信令（多路复用，格式见 BinarySignaling）
+ *
+ * 拨号方：同一对端的所有去电共用一条持久连接，每路通话分配一个通道号；
+ * 可以连续发出多个DIAL而不等待应答（流水线），应答按通道号匹配，可以乱序到达。
+ * 服务端：读取线程收到DIAL后交给信令执行器处理，接听回调再慢也不会阻塞同一连接上的其他通道。
+ * 连接断开时，其上所有未完成的拨号失败、所有通话结束
+ *
+ * 连接由 SignalingPool 管理：定期在通道0上发送 PING，对端回复 PONG；
+ * 对端表现出支持心跳之后，超过期限没有收到任何消息即认为对端已失效并关闭连接
+ */
+public class SignalingConnection implements Closeable {
+    private final Socket socket;
+    private final BinarySignaling signaling;
+    private final CallManager manager;
+    private final boolean outgoing; // true表示本端拨号方
+
+    // 通道号 → 会话，以及等待应答的拨号
+    private final ConcurrentHashMap<Integer, CallSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CompletableFuture<SignalingMessage>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextChannel = new AtomicInteger(1);
+    private volatile boolean open = true;
+
+    // 心跳状态（System.nanoTime）
+    private volatile long lastReceived = System.nanoTime();
+    private volatile long lastUsed = System.nanoTime(); // 最近一次登记通话的时间
+    private volatile boolean heartbeatSeen = false;     // 对端是否发送过 PING/PONG
+    // 借给拨号、还没有登记通道的次数；-1表示已按空闲关闭，不能再借出
+    private final AtomicInteger claims = new AtomicInteger();
+
+    private SignalingConnection(Socket socket, InputStream in, boolean outgoing, CallManager manager)
+            throws IOException {
+        this.socket = socket;
+        this.outgoing = outgoing;
+        this.manager = manager;
+        // 信令消息很小，关闭Nagle算法，流水线上的每条消息立即发出
+        socket.setTcpNoDelay(true);
+        this.signaling = new BinarySignaling(in, new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * 连接对端并发送前导，读取任务在信令执行器上运行
+     * @param address 对端地址
+     * @param timeout 连接超时（毫秒）
+     * @param manager 所属的通话管理器
+     * @throws IOException 连接失败时抛出
+     */
+    static SignalingConnection connect(InetSocketAddress address, int timeout, CallManager manager)
+            throws IOException {
+        Socket socket = new Socket();
+        SignalingConnection connection;
+        try {
+            socket.connect(address, timeout);
+            connection = new SignalingConnection(socket, new BufferedInputStream(socket.getInputStream()),
+                    true, manager);
+            // 前导与第一条消息一起刷新，不单独占用一个报文
+            connection.signaling.writePreface();
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+        CallExecutors.signaling().execute(connection::readLoop);
+        return connection;
+    }
+
+    /**
+     * 接受一条已识别为二进制信令的来电连接，校验前导（调用方随后在本线程运行 readLoop）
+     * @param socket 连接
+     * @param in 输入流（前导尚未读取）
+     * @param manager 所属的通话管理器
+     * @throws IOException 前导不正确时抛出
+     */
+    static SignalingConnection accept(Socket socket, InputStream in, CallManager manager) throws IOException {
+        SignalingConnection connection = new SignalingConnection(socket, in, false, manager);
+        connection.signaling.readPreface();
+        socket.setSoTimeout(0);
+        return connection;
+    }
+
+    /**
+     * 对端地址
+     */
+    public InetAddress getRemoteAddress() {
+        return socket.getInetAddress();
+    }
+
+    /**
+     * 对端的套接字地址（拨号方连接时使用的地址）
+     */
+    public InetSocketAddress getRemoteSocketAddress() {
+        return (InetSocketAddress) socket.getRemoteSocketAddress();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * 连接上当前的通话数（含正在建立的）
+     */
+    public int getCallCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 分配一个新的通道号（拨号方）
+     */
+    int nextChannel() {
+        return nextChannel.getAndIncrement();
+    }
+
+    /**
+     * 登记通道上的会话
+     * @return false表示通道号已被占用
+     */
+    boolean register(int channel, CallSession session) {
+        lastUsed = System.nanoTime();
+        return channel != 0 && sessions.putIfAbsent(channel, session) == null;
+    }
+
+    /**
+     * 会话结束时注销通道（连接保持打开）
+     */
+    void unregister(int channel) {
+        sessions.remove(channel);
+        CompletableFuture<SignalingMessage> response = pending.remove(channel);
+        if (response != null) {
+            response.completeExceptionally(new IOException("会话已结束"));
+        }
+    }
+
+    /**
+     * 发送一条消息，失败时关闭连接
+     * @return false表示连接已断开
+     */
+    boolean send(int channel, SignalingMessage message) {
+        if (!open) {
+            return false;
+        }
+        try {
+            signaling.write(channel, message);
+            return true;
+        } catch (IOException ex) {
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * 发送请求并返回等待应答（ACCEPT/REJECT）的 future，不阻塞
+     * @param channel 通道号
+     * @param message 请求（DIAL）
+     */
+    CompletableFuture<SignalingMessage> request(int channel, SignalingMessage message) {
+        CompletableFuture<SignalingMessage> response = new CompletableFuture<>();
+        pending.put(channel, response);
+        if (!send(channel, message)) {
+            pending.remove(channel);
+            response.completeExceptionally(new IOException("信令连接已断开"));
+        }
+        return response;
+    }
+
+    /**
+     * 心跳检查（由 SignalingPool 定期调用）：对端支持心跳且超过期限没有消息时关闭连接，否则发送 PING
+     * @param timeoutNanos 判定对端失效的期限
+     * @return false表示连接已关闭
+     */
+    boolean heartbeat(long timeoutNanos) {
+        if (heartbeatSeen && System.nanoTime() - lastReceived > timeoutNanos) {
+            close("对方无响应");
+            return false;
+        }
+        return send(0, new SignalingMessage(SignalingMessage.PING));
+    }
+
+    /**
+     * 借出给一次拨号：登记通道之前连接不会被空闲关闭，登记后（或放弃时）调用 unclaim
+     * @return false表示连接已断开或已按空闲关闭
+     */
+    boolean claim() {
+        int count;
+        do {
+            count = claims.get();
+            if (count < 0 || !open) {
+                return false;
+            }
+        } while (!claims.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * 归还 claim 借出的连接，空闲时间从此刻重新计算
+     */
+    void unclaim() {
+        lastUsed = System.nanoTime();
+        claims.decrementAndGet();
+    }
+
+    /**
+     * 没有通话、没有借出且空闲超过期限时，标记为已按空闲关闭（之后 claim 都失败）
+     * @param idleNanos 空闲期限（纳秒）
+     * @return true表示已标记，调用方应关闭连接
+     */
+    boolean retireIfIdle(long idleNanos) {
+        if (idleNanos() <= idleNanos || !claims.compareAndSet(0, -1)) {
+            return false;
+        }
+        if (!sessions.isEmpty()) {
+            // 检查之后、标记之前有拨号登记了通道并已归还
+            claims.set(0);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 没有通话的时间（纳秒），有通话时返回0
+     */
+    long idleNanos() {
+        return sessions.isEmpty() ? System.nanoTime() - lastUsed : 0;
+    }
+
+    /**
+     * 读取循环：按通道号分发消息，连接断开时清理
+     */
+    void readLoop() {
+        try {
+            SignalingMessage message;
+            while (open && (message = signaling.read()) != null) {
+                lastReceived = System.nanoTime();
+                dispatch(signaling.channel(), message);
+            }
+        } catch (IOException ex) {
+            // 连接断开或帧格式错误，关闭连接
+        }
+        close();
+    }
+
+    private void dispatch(int channel, SignalingMessage message) {
+        if (message.is(SignalingMessage.PING)) {
+            heartbeatSeen = true;
+            send(0, new SignalingMessage(SignalingMessage.PONG));
+        } else if (message.is(SignalingMessage.PONG)) {
+            heartbeatSeen = true;
+        } else if (message.is(SignalingMessage.DIAL)) {
+            if (!outgoing) {
+                CallExecutors.signaling().execute(() -> manager.handleDial(this, channel, message));
+            }
+        } else if (message.is(SignalingMessage.ACCEPT) || message.is(SignalingMessage.REJECT)) {
+            CompletableFuture<SignalingMessage> response = pending.remove(channel);
+            if (response != null) {
+                response.complete(message);
+            } else if (outgoing && message.is(SignalingMessage.ACCEPT)) {
+                // 拨号已经放弃（超时或失败），对方却接听了：让对方挂断，避免留下无人结束的通话
+                send(channel, new SignalingMessage(SignalingMessage.HANGUP));
+            }
+        } else if (message.is(SignalingMessage.HANGUP)) {
+            // 结束会话要停止音频设备，不在读取线程中进行
+            CallSession session = sessions.get(channel);
+            if (session != null) {
+                CallExecutors.signaling().execute(() -> session.end("对方挂断"));
+            }
+        }
+    }
+
+    /**
+     * 关闭连接：未完成的拨号失败，所有通话结束（可重复调用）
+     */
+    @Override
+    public void close() {
+        close("连接已断开");
+    }
+
+    /**
+     * 关闭连接
+     * @param reason 连接上通话的结束原因
+     */
+    void close(String reason) {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 关闭时的异常可以忽略
+        }
+        for (CompletableFuture<SignalingMessage> response : pending.values()) {
+            response.completeExceptionally(new IOException("信令连接已断开"));
+        }
+        pending.clear();
+        for (CallSession session : sessions.values()) {
+            session.end(reason);
+        }
+        manager.connectionClosed(this);
+    }
+
+    @Override
+    public String toString() {
+        return "SignalingConnection[" + (outgoing ? "out " : "in ") + socket.getRemoteSocketAddress()
+                + " calls=" + sessions.size() + (open ? "" : " closed") + "]";
+    }
+}
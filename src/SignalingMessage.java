@@ -0,0 +1,111 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TCP信令消息
+ * 一行一条消息：命令后跟可选的 key=value 参数，以空格分隔，例如
+ *   DIAL codecs=PCMU,PCMA,L16 port=6000 fec=red
+ *   ACCEPT codec=PCMU codecs=PCMU,PCMA,L16 port=5001 fec=red
+ * 不带参数的旧格式（DIAL、ACCEPT、HANGUP）同样可以解析，未知参数会被忽略
+ * 通话中双方定期发送 PING，收到后回复 PONG（心跳，见 SignalingPool）；旧版本会忽略这两条消息
+ * 同样的消息也可以用二进制格式在多路复用的连接上传输（见 BinarySignaling）
+ */
+public class SignalingMessage {
+    public static final String DIAL = "DIAL";
+    public static final String ACCEPT = "ACCEPT";
+    public static final String REJECT = "REJECT";
+    public static final String HANGUP = "HANGUP";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+
+    private final String command;
+    private final Map<String, String> params = new LinkedHashMap<>();
+
+    public SignalingMessage(String command) {
+        this.command = command;
+    }
+
+    /**
+     * 解析一行信令
+     * @param line 收到的文本行
+     * @return 信令消息，空行或null时返回null
+     */
+    public static SignalingMessage parse(String line) {
+        if (line == null) {
+            return null;
+        }
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens[0].isEmpty()) {
+            return null;
+        }
+        SignalingMessage message = new SignalingMessage(tokens[0].toUpperCase());
+        for (int i = 1; i < tokens.length; i++) {
+            int eq = tokens[i].indexOf('=');
+            if (eq > 0) {
+                message.params.put(tokens[i].substring(0, eq), tokens[i].substring(eq + 1));
+            }
+        }
+        return message;
+    }
+
+    /**
+     * 添加参数
+     * @return 当前消息，便于链式调用
+     */
+    public SignalingMessage with(String key, String value) {
+        params.put(key, value);
+        return this;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public boolean is(String command) {
+        return this.command.equals(command);
+    }
+
+    /**
+     * 获取参数值
+     * @return 参数值，不存在时返回null
+     */
+    public String get(String key) {
+        return params.get(key);
+    }
+
+    /**
+     * 获取整数参数值
+     * @param defaultValue 参数不存在或格式错误时返回的值
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = params.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 全部参数（只读，按添加顺序），供二进制编码使用
+     */
+    public Map<String, String> getParams() {
+        return Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * 转换成可发送的文本行（不含换行符）
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(command);
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 信令连接管理：复用到各对端的二进制信令连接，并对所有信令连接做心跳检查
+ *
+ * 去电按对端地址复用一条连接，通话结束后连接保持打开，下一路通话省去TCP握手；
+ * 没有通话的连接空闲超过期限后关闭，用 warmUp 预热的对端除外（断开后在下一次心跳时重连）。
+ *
+ * 心跳任务每个间隔向每条二进制连接发送 PING，也向每路文本信令通话发送 PING；
+ * 对端表现出支持心跳（发送过 PING 或 PONG）之后，连续 MISSED_HEARTBEATS 个间隔没有收到任何消息即认为对端失效，
+ * 连接上的通话以"对方无响应"结束，不再无限期地阻塞在读取上。不支持心跳的旧版本对端不受影响
+ *
+ * 建立连接（最长 connectTimeout）不在映射的锁内进行，也不在心跳任务中进行：
+ * 同一对端的并发拨号等待同一次连接，其他对端不受影响；预热对端的重连各自作为独立任务运行，
+ * 不可达的对端不会推迟其他连接的失效检查
+ */
+public final class SignalingPool {
+    public static final int DEFAULT_HEARTBEAT_MILLIS = 5000;
+    public static final int MISSED_HEARTBEATS = 3;
+    public static final int DEFAULT_IDLE_MILLIS = 60000;
+
+    private final CallManager manager;
+    private final int connectTimeout;
+    private final ConcurrentHashMap<InetSocketAddress, SignalingConnection> outgoing = new ConcurrentHashMap<>();
+    // 正在建立的连接：同一对端的并发请求等待同一次连接
+    private final ConcurrentHashMap<InetSocketAddress, CompletableFuture<SignalingConnection>> connecting =
+            new ConcurrentHashMap<>();
+    private final Set<SignalingConnection> incoming = ConcurrentHashMap.newKeySet();
+    private final Set<InetSocketAddress> warm = ConcurrentHashMap.newKeySet();
+
+    private volatile int heartbeatMillis = DEFAULT_HEARTBEAT_MILLIS;
+    private volatile int idleMillis = DEFAULT_IDLE_MILLIS;
+    private volatile boolean running = true;
+    private volatile Future<?> heartbeatTask;
+    private volatile Thread heartbeatThread;
+
+    /**
+     * 构造函数，由 start() 启动心跳
+     * @param manager 所属的通话管理器
+     * @param connectTimeout 连接超时（毫秒）
+     */
+    SignalingPool(CallManager manager, int connectTimeout) {
+        this.manager = manager;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 启动心跳任务，在信令执行器上运行直到 close（由通话管理器在构造完成后调用一次）
+     */
+    void start() {
+        heartbeatTask = CallExecutors.signaling().submit(this::runHeartbeat);
+    }
+
+    /**
+     * 设置心跳间隔，失效判定期限为 MISSED_HEARTBEATS 个间隔；0表示不发送心跳、不检测对端失效
+     */
+    public void setHeartbeatMillis(int heartbeatMillis) {
+        this.heartbeatMillis = Math.max(0, heartbeatMillis);
+        // 唤醒心跳任务，按新的间隔重新等待
+        Thread thread = heartbeatThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public int getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    /**
+     * 对端失效的判定期限（毫秒），不检测时返回0
+     */
+    public int getDeadPeerMillis() {
+        return heartbeatMillis * MISSED_HEARTBEATS;
+    }
+
+    /**
+     * 设置没有通话的连接保留多久后关闭（预热的对端不受限制）
+     */
+    public void setIdleMillis(int idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    public int getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * 预先建立到对端的连接并一直保持（断开后自动重连），适合经常拨打的对端
+     * @throws IOException 连接失败时抛出（对端仍会被记录，之后的心跳会重试）
+     */
+    public void warmUp(String host, int port) throws IOException {
+        warm.add(new InetSocketAddress(host, port));
+        get(host, port).unclaim();
+    }
+
+    /**
+     * 当前的连接数（去电和来电）
+     */
+    public int size() {
+        return outgoing.size() + incoming.size();
+    }
+
+    /**
+     * 取得到对端的连接并借出（claim），没有可用连接时建立一条
+     * 调用方登记通道后必须 unclaim，在此之前心跳不会把连接当作空闲关闭
+     * @throws IOException 连接失败或刚建立就断开时抛出
+     */
+    SignalingConnection get(String host, int port) throws IOException {
+        return get(new InetSocketAddress(host, port));
+    }
+
+    private SignalingConnection get(InetSocketAddress address) throws IOException {
+        while (true) {
+            SignalingConnection connection = outgoing.get(address);
+            if (connection != null && connection.claim()) {
+                return connection;
+            }
+            // 同一对端的并发首次拨号只建立一条连接，其他请求等待它的结果
+            CompletableFuture<SignalingConnection> mine = new CompletableFuture<>();
+            CompletableFuture<SignalingConnection> existing = connecting.putIfAbsent(address, mine);
+            if (existing != null) {
+                connection = await(existing);
+                if (connection.claim()) {
+                    return connection;
+                }
+                continue; // 等到的连接已经断开或被空闲关闭，重新取
+            }
+            try {
+                connection = outgoing.get(address);
+                if (connection == null || !connection.claim()) {
+                    connection = SignalingConnection.connect(address, connectTimeout, manager);
+                    outgoing.put(address, connection);
+                    if (!connection.claim()) {
+                        outgoing.remove(address, connection); // 登记前已经断开
+                        throw new IOException("连接已断开: " + address);
+                    }
+                }
+                mine.complete(connection);
+                return connection;
+            } catch (IOException | RuntimeException ex) {
+                mine.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                connecting.remove(address, mine);
+            }
+        }
+    }
+
+    /**
+     * 等待其他请求正在建立的连接（最长为连接超时）
+     */
+    private static SignalingConnection await(CompletableFuture<SignalingConnection> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("连接失败: " + cause, cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待连接被中断");
+        }
+    }
+
+    /**
+     * 登记一条来电连接（连接关闭时自动移除）
+     */
+    void addIncoming(SignalingConnection connection) {
+        incoming.add(connection);
+    }
+
+    /**
+     * 连接关闭时由 CallManager 回调
+     */
+    void removed(SignalingConnection connection) {
+        outgoing.values().remove(connection);
+        incoming.remove(connection);
+    }
+
+    /**
+     * 停止心跳并关闭所有连接
+     */
+    void close() {
+        running = false;
+        Future<?> task = heartbeatTask;
+        if (task != null) {
+            task.cancel(true);
+        }
+        warm.clear();
+        for (SignalingConnection connection : outgoing.values()) {
+            connection.close();
+        }
+        for (SignalingConnection connection : incoming) {
+            connection.close();
+        }
+    }
+
+    private void runHeartbeat() {
+        heartbeatThread = Thread.currentThread();
+        long last = System.nanoTime();
+        while (running && !Thread.currentThread().isInterrupted()) {
+            int interval = heartbeatMillis;
+            long wait = TimeUnit.MILLISECONDS.toNanos(interval > 0 ? interval : DEFAULT_HEARTBEAT_MILLIS)
+                    - (System.nanoTime() - last);
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue; // 可能是间隔改变或关闭，重新计算
+            }
+            last = System.nanoTime();
+            heartbeat();
+        }
+    }
+
+    /**
+     * 一次心跳：检查并 PING 所有连接和文本信令通话，关闭空闲连接；
+     * 断开的预热对端交给独立的任务重连，心跳本身从不阻塞在建立连接上
+     */
+    private void heartbeat() {
+        int interval = heartbeatMillis;
+        long timeout = TimeUnit.MILLISECONDS.toNanos((long) interval * MISSED_HEARTBEATS);
+        long idle = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        for (Map.Entry<InetSocketAddress, SignalingConnection> entry : outgoing.entrySet()) {
+            SignalingConnection connection = entry.getValue();
+            if (!warm.contains(entry.getKey()) && connection.retireIfIdle(idle)) {
+                // 已标记为空闲关闭，get() 不会再借出它；只移除映射中仍是它的条目
+                outgoing.remove(entry.getKey(), connection);
+                connection.close();
+            } else if (interval > 0) {
+                connection.heartbeat(timeout);
+            }
+        }
+        if (interval > 0) {
+            for (SignalingConnection connection : incoming) {
+                connection.heartbeat(timeout);
+            }
+            for (CallSession session : manager.getCalls()) {
+                session.heartbeat();
+            }
+        }
+        for (InetSocketAddress address : warm) {
+            SignalingConnection connection = outgoing.get(address);
+            if ((connection == null || !connection.isOpen()) && !connecting.containsKey(address)) {
+                CallExecutors.signaling().execute(() -> reconnect(address));
+            }
+        }
+    }
+
+    /**
+     * 重连一个预热的对端（在独立的任务中运行）
+     */
+    private void reconnect(InetSocketAddress address) {
+        if (!running || !warm.contains(address)) {
+            return;
+        }
+        try {
+            get(address).unclaim();
+        } catch (IOException ex) {
+            // 对端暂时不可达，下一次心跳重试
+        }
+    }
+}
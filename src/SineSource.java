@@ -0,0 +1,40 @@
+/**
+ * 正弦波输入，可以用来检查通话两端的音频是否连续（接收端的频率和幅度应保持不变）
+ */
+public class SineSource extends SyntheticSource {
+    private final double frequency;
+    private final int amplitude;
+    private double phase;
+    private double step;
+
+    /**
+     * 构造函数
+     * @param frequency 频率（Hz）
+     * @param amplitude 幅度（0~32767）
+     */
+    public SineSource(double frequency, int amplitude) {
+        this.frequency = frequency;
+        this.amplitude = Math.max(0, Math.min(Short.MAX_VALUE, amplitude));
+    }
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) {
+        super.open(sampleRate, bufferBytes);
+        step = 2 * Math.PI * frequency / sampleRate;
+    }
+
+    @Override
+    protected int nextSample() {
+        int sample = (int) Math.round(amplitude * Math.sin(phase));
+        phase += step;
+        if (phase >= 2 * Math.PI) {
+            phase -= 2 * Math.PI;
+        }
+        return sample;
+    }
+
+    @Override
+    public String name() {
+        return "正弦波输入(" + frequency + "Hz)";
+    }
+}
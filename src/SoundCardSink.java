@@ -0,0 +1,45 @@
+import javax.sound.sampled.*;
+import java.io.IOException;
+
+/**
+ * 声卡扬声器（Java Sound 的 SourceDataLine）
+ * write 在声卡内部缓冲满时阻塞，因此播放节奏由声卡时钟决定
+ */
+public class SoundCardSink implements AudioSink {
+    private SourceDataLine speaker;
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) throws IOException {
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, true);
+        DataLine.Info speakerInfo = new DataLine.Info(SourceDataLine.class, format);
+        if (!AudioSystem.isLineSupported(speakerInfo)) {
+            throw new IOException("系统不支持该音频格式的扬声器");
+        }
+        try {
+            speaker = (SourceDataLine) AudioSystem.getLine(speakerInfo);
+            speaker.open(format, bufferBytes);
+        } catch (LineUnavailableException | IllegalArgumentException ex) {
+            throw new IOException("扬声器不可用: " + ex.getMessage(), ex);
+        }
+        speaker.start();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        speaker.write(buffer, offset, length);
+    }
+
+    @Override
+    public void close() {
+        if (speaker != null) {
+            speaker.drain(); // 等待缓冲区数据播放完
+            speaker.stop();
+            speaker.close();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "扬声器";
+    }
+}
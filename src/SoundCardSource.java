@@ -0,0 +1,45 @@
+import javax.sound.sampled.*;
+import java.io.IOException;
+
+/**
+ * 声卡麦克风（Java Sound 的 TargetDataLine）
+ * read 按声卡时钟阻塞
+ */
+public class SoundCardSource implements AudioSource {
+    private TargetDataLine microphone;
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) throws IOException {
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, true);
+        DataLine.Info micInfo = new DataLine.Info(TargetDataLine.class, format);
+        if (!AudioSystem.isLineSupported(micInfo)) {
+            throw new IOException("系统不支持该音频格式的麦克风");
+        }
+        try {
+            microphone = (TargetDataLine) AudioSystem.getLine(micInfo);
+            microphone.open(format, bufferBytes);
+        } catch (LineUnavailableException | IllegalArgumentException ex) {
+            throw new IOException("麦克风不可用: " + ex.getMessage(), ex);
+        }
+        microphone.start();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        int count = microphone.read(buffer, offset, length);
+        return count > 0 || microphone.isOpen() ? count : -1;
+    }
+
+    @Override
+    public void close() {
+        if (microphone != null) {
+            microphone.stop();
+            microphone.close();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "麦克风";
+    }
+}
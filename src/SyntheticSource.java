@@ -0,0 +1,57 @@
+/**
+ * 生成合成音频的输入设备基类，用于没有声卡和音频文件的负载测试
+ * 子类只负责生成样本，实时节奏由 MediaClock 控制
+ */
+public abstract class SyntheticSource implements AudioSource {
+    private volatile MediaClock clock;
+    protected int sampleRate;
+    private double clockSkewPpm;
+
+    /**
+     * 设置采集时钟相对本机时钟的频率偏差（ppm），在 open 之前调用，模拟晶振有偏差的声卡
+     */
+    public void setClockSkew(double ppm) {
+        this.clockSkewPpm = ppm;
+    }
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) {
+        this.sampleRate = sampleRate;
+        this.clock = new MediaClock(sampleRate, bufferBytes, clockSkewPpm);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        MediaClock c = clock;
+        if (c.isCancelled()) {
+            return -1;
+        }
+        for (int i = 0; i < length; i += 2) {
+            int sample = nextSample();
+            buffer[offset + i] = (byte) (sample >> 8);
+            buffer[offset + i + 1] = (byte) sample;
+        }
+        return c.capture(length / 2) ? length : -1;
+    }
+
+    /**
+     * 生成下一个样本（16位有符号）
+     */
+    protected abstract int nextSample();
+
+    @Override
+    public void close() {
+        MediaClock c = clock;
+        if (c != null) {
+            c.cancel();
+        }
+    }
+
+    /**
+     * 输入溢出（读取落后超过设备缓冲）的次数
+     */
+    public long getOverruns() {
+        MediaClock c = clock;
+        return c == null ? 0 : c.getResyncs();
+    }
+}
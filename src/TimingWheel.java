@@ -0,0 +1,116 @@
+/**
+ * 哈希时间轮（单线程使用）
+ * 把到期时间以"刻"为单位散列到 2 的幂个槽中，每个槽是一条侵入式单链表：
+ * 加入和取出到期项都是 O(1)，不分配对象，适合大量周期性的媒体发送任务
+ *
+ * 到期时间超过一圈的项留在槽中，轮转到它的那一圈才会被取出。
+ * 取消由使用方在到期时自行判断（懒删除）
+ */
+public final class TimingWheel {
+    /**
+     * 时间轮中的一项，使用方继承本类
+     */
+    public abstract static class Timeout {
+        private long deadline; // 到期的刻
+        private Timeout next;
+
+        public long deadline() {
+            return deadline;
+        }
+    }
+
+    private final Timeout[] slots;
+    private final int mask;
+    private long tick; // 当前的刻，小于它的到期时间都已处理
+    private int size;
+
+    /**
+     * 构造函数
+     * @param slots 槽数（向上取整为2的幂），应覆盖最常见的周期，更长的到期时间会多轮转几圈
+     * @param startTick 起始的刻
+     */
+    public TimingWheel(int slots, long startTick) {
+        int n = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.slots = new Timeout[n];
+        this.mask = n - 1;
+        this.tick = startTick;
+    }
+
+    /**
+     * 加入一项（同一项同时只能在时间轮中出现一次）
+     * @param timeout 项
+     * @param deadline 到期的刻，已经过去的按当前刻处理
+     */
+    public void schedule(Timeout timeout, long deadline) {
+        timeout.deadline = Math.max(deadline, tick);
+        int slot = (int) timeout.deadline & mask;
+        timeout.next = slots[slot];
+        slots[slot] = timeout;
+        size++;
+    }
+
+    /**
+     * 取出当前刻到期的所有项，并前进到下一刻
+     * @return 到期项组成的链表（用 next(timeout) 遍历），没有时返回null；
+     *         遍历时可以重新 schedule 这些项，但要先取得下一项再 schedule 当前项
+     */
+    public Timeout advance() {
+        int slot = (int) tick & mask;
+        Timeout expired = null;
+        Timeout kept = null;
+        Timeout t = slots[slot];
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.deadline <= tick) {
+                t.next = expired;
+                expired = t;
+                size--;
+            } else {
+                t.next = kept;
+                kept = t;
+            }
+            t = next;
+        }
+        slots[slot] = kept;
+        tick++;
+        return expired;
+    }
+
+    /**
+     * 取出所有项（不论是否到期），时间轮清空
+     * @return 所有项组成的链表（用 next(timeout) 遍历），没有时返回null
+     */
+    public Timeout drain() {
+        Timeout all = null;
+        for (int slot = 0; slot < slots.length; slot++) {
+            Timeout t = slots[slot];
+            while (t != null) {
+                Timeout next = t.next;
+                t.next = all;
+                all = t;
+                t = next;
+            }
+            slots[slot] = null;
+        }
+        size = 0;
+        return all;
+    }
+
+    /**
+     * 遍历 advance 或 drain 返回的链表
+     */
+    public static Timeout next(Timeout timeout) {
+        return timeout.next;
+    }
+
+    /**
+     * 下一次 advance 处理的刻
+     */
+    public long tick() {
+        return tick;
+    }
+
+    public int size() {
+        return size;
+    }
+}
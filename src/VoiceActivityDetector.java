@@ -0,0 +1,116 @@
+/**
+ * 语音活动检测（VAD）
+ * 按帧计算RMS能量，与自适应的背景噪声电平比较判断是否有语音；
+ * 语音结束后保持一段拖尾时间（hangover），避免把词尾和字间的短暂停顿截掉
+ *
+ * 噪声电平在安静时快速跟随下降、在有声时按固定的分贝速率缓慢上升，
+ * 因此能跟随环境噪声的变化，同时不会被持续说话拉高太多
+ */
+public final class VoiceActivityDetector {
+    // 语音判决的最低门限（RMS），噪声很小时防止把轻微的底噪当作语音
+    private static final double MIN_THRESHOLD = 200;
+    // 语音能量需要超过噪声电平的倍数（约 +10dB）
+    private static final double SPEECH_RATIO = 3.0;
+    // 语音结束后保持活动状态的时长（毫秒）
+    private static final int HANGOVER_MILLIS = 200;
+    // 噪声电平下降的时间常数（毫秒）
+    private static final double FLOOR_DOWN_MILLIS = 100;
+    // 噪声电平上升的最大速率（dB/秒）
+    private static final double FLOOR_RISE_DB_PER_SECOND = 3;
+    // 噪声电平的初始值
+    private static final double INITIAL_FLOOR = MIN_THRESHOLD / SPEECH_RATIO;
+
+    private int hangoverFrames;
+    private double downGain;
+    private double riseFactor;
+
+    private double noiseFloor = INITIAL_FLOOR;
+    private double lastRms;
+    private int hangover;
+    private boolean active;
+
+    /**
+     * 构造函数
+     * @param frameMillis 每帧时长（毫秒），用于把时间常数换算成帧数
+     */
+    public VoiceActivityDetector(int frameMillis) {
+        setFrameMillis(frameMillis);
+    }
+
+    /**
+     * 调整帧时长（通话中改变打包时长时调用），噪声电平保持不变
+     * @param frameMillis 每帧时长（毫秒）
+     */
+    public void setFrameMillis(int frameMillis) {
+        this.hangoverFrames = (HANGOVER_MILLIS + frameMillis - 1) / frameMillis;
+        this.downGain = Math.min(1.0, frameMillis / FLOOR_DOWN_MILLIS);
+        this.riseFactor = Math.pow(10, FLOOR_RISE_DB_PER_SECOND * frameMillis / 1000 / 20);
+        this.hangover = Math.min(hangover, hangoverFrames);
+    }
+
+    /**
+     * 处理一帧音频
+     * @param pcm 16位大端序PCM
+     * @param offset 起始偏移
+     * @param length 数据长度
+     * @return true表示语音活动（包括拖尾期间）
+     */
+    public boolean process(byte[] pcm, int offset, int length) {
+        double rms = rms(pcm, offset, length);
+        lastRms = rms;
+
+        boolean speech = rms > Math.max(MIN_THRESHOLD, noiseFloor * SPEECH_RATIO);
+        if (rms < noiseFloor) {
+            noiseFloor += (rms - noiseFloor) * downGain;
+        } else {
+            noiseFloor = Math.min(rms, noiseFloor * riseFactor);
+        }
+
+        if (speech) {
+            hangover = hangoverFrames;
+            active = true;
+        } else if (hangover > 0) {
+            hangover--;
+        } else {
+            active = false;
+        }
+        return active;
+    }
+
+    /**
+     * 当前是否处于语音活动状态
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 当前背景噪声电平（RMS）
+     */
+    public double getNoiseFloor() {
+        return noiseFloor;
+    }
+
+    /**
+     * 上一帧的RMS能量
+     */
+    public double getLastRms() {
+        return lastRms;
+    }
+
+    /**
+     * 计算16位大端序PCM的RMS值
+     */
+    static double rms(byte[] pcm, int offset, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = offset; i < offset + samples * 2; i += 2) {
+            int sample = (pcm[i] << 8) | (pcm[i + 1] & 0xFF);
+            sum += sample * sample;
+        }
+        return Math.sqrt(sum / (double) samples);
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 写入WAV文件的音频输出（16位单声道），用于无声卡环境和自动化测试
+ * write 由 MediaClock 控制，超前量不超过设备缓冲，模拟扬声器的实时节奏；关闭时补写文件头中的长度
+ */
+public class WavFileSink implements AudioSink {
+    private final Path file;
+    private FileChannel out;
+    private ByteBuffer scratch; // 转换为小端序的工作区
+    private long dataBytes;
+    private int sampleRate;
+    private volatile MediaClock clock;
+    private boolean closed;
+
+    /**
+     * 构造函数
+     * @param file 输出文件（已存在时覆盖）
+     */
+    public WavFileSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void open(int sampleRate, int bufferBytes) throws IOException {
+        this.sampleRate = sampleRate;
+        this.scratch = ByteBuffer.allocate(AudioThread.maxFrameBytes(sampleRate)).order(ByteOrder.LITTLE_ENDIAN);
+        out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        CallRecorder.writeWavHeader(out, sampleRate, 1, 0);
+        clock = new MediaClock(sampleRate, bufferBytes);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (int done = 0; done < length; ) {
+                int n = Math.min(length - done, scratch.capacity());
+                scratch.clear();
+                for (int i = 0; i < n; i += 2) {
+                    int p = offset + done + i;
+                    scratch.putShort((short) ((buffer[p] << 8) | (buffer[p + 1] & 0xFF)));
+                }
+                scratch.flip();
+                while (scratch.hasRemaining()) {
+                    dataBytes += out.write(scratch, 44 + dataBytes);
+                }
+                done += n;
+            }
+        }
+        clock.play(length / 2);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (out == null) {
+            return;
+        }
+        clock.cancel();
+        try {
+            CallRecorder.writeWavHeader(out, sampleRate, 1, dataBytes / 2);
+            out.close();
+        } catch (IOException ex) {
+            System.err.println("写入WAV文件失败: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * 已写入的时长（毫秒）
+     */
+    public synchronized long getWrittenMillis() {
+        return sampleRate == 0 ? 0 : dataBytes / 2 * 1000 / sampleRate;
+    }
+
+    /**
+     * 欠载（播放线程没能及时写入）的次数
+     */
+    public long getUnderruns() {
+        MediaClock c = clock;
+        return c == null ? 0 : c.getResyncs();
+    }
+
+    @Override
+    public String name() {
+        return "WAV输出(" + file.getFileName() + ")";
+    }
+}
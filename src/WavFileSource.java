@@ -0,0 +1,110 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 从WAV文件循环读取的音频输入，用于无声卡环境和自动化测试
+ * 文件在打开时整体转换为通话的采样率（16位单声道大端序）并缓存，同一文件同一采样率的多路通话共享一份数据
+ *
+ * 文件读取本身不阻塞，read 由 MediaClock 控制，等待到这段音频"采集完成"的时刻，模拟麦克风的实时节奏
+ */
+public class WavFileSource implements AudioSource {
+    // 已转换的PCM数据，键为 "路径@采样率"
+    private static final ConcurrentHashMap<String, byte[]> CACHE = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private byte[] pcm;
+    private int position;
+    private volatile MediaClock clock;
+    private volatile boolean closed;
+
+    /**
+     * 构造函数
+     * @param file WAV文件（任意采样率和声道数的PCM）
+     */
+    public WavFileSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void open(int sampleRate, int bufferBytes) throws IOException {
+        this.pcm = load(file, sampleRate);
+        this.clock = new MediaClock(sampleRate, bufferBytes);
+    }
+
+    /**
+     * 读取WAV文件并转换为指定采样率的16位单声道大端序PCM（结果缓存）
+     * @param file WAV文件
+     * @param sampleRate 采样率
+     * @return PCM数据
+     * @throws IOException 文件不存在、格式不支持或为空时抛出
+     */
+    public static byte[] load(Path file, int sampleRate) throws IOException {
+        String key = file.toAbsolutePath().normalize() + "@" + sampleRate;
+        byte[] cached = CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] data;
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file.toFile());
+             AudioInputStream converted = AudioSystem.getAudioInputStream(
+                     new AudioFormat(sampleRate, 16, 1, true, true), in)) {
+            data = converted.readAllBytes();
+        } catch (UnsupportedAudioFileException | IllegalArgumentException ex) {
+            throw new IOException("无法读取音频文件 " + file + ": " + ex.getMessage(), ex);
+        }
+        if (data.length < 2) {
+            throw new IOException("音频文件为空: " + file);
+        }
+        if ((data.length & 1) != 0) {
+            data = Arrays.copyOf(data, data.length - 1);
+        }
+        CACHE.putIfAbsent(key, data);
+        return CACHE.get(key);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (closed) {
+            return -1;
+        }
+        // 循环拷贝文件数据
+        for (int copied = 0; copied < length; ) {
+            int n = Math.min(length - copied, pcm.length - position);
+            System.arraycopy(pcm, position, buffer, offset + copied, n);
+            copied += n;
+            position += n;
+            if (position == pcm.length) {
+                position = 0;
+            }
+        }
+        return clock.capture(length / 2) ? length : -1;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        MediaClock c = clock;
+        if (c != null) {
+            c.cancel();
+        }
+    }
+
+    /**
+     * 输入溢出（读取落后超过设备缓冲）的次数
+     */
+    public long getOverruns() {
+        MediaClock c = clock;
+        return c == null ? 0 : c.getResyncs();
+    }
+
+    @Override
+    public String name() {
+        return "WAV输入(" + file.getFileName() + ")";
+    }
+}